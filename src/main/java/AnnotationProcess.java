@@ -0,0 +1,228 @@
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import edu.wpi.cscore.CvSource;
+import edu.wpi.first.cameraserver.CameraServer;
+
+/**
+ * Draws a camera's targeting Overlay on the frame and sends it to the Contours video stream and
+ * the processed image log - on its own thread at a lower priority than the targeting.
+ *
+ * The PipelineProcess hands over each frame (still shared on the FrameBus, so not copied) with its
+ * overlay after the target data is sent.  Only the newest is kept; if drawing falls behind the older
+ * frames are dropped, never the targeting.  Frames are handed over only while somebody is watching
+ * the stream (CvSource.isEnabled() - a client is connected to the MjpegServer) or images are being
+ * logged; otherwise the targeting doesn't even record the overlay.
+ */
+public class AnnotationProcess implements Runnable
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private final String pId; // such as [BAnnotationProcess]
+
+    private final CameraStage<?> stage;
+
+    // This object is used to send the image to the Dashboard
+    private CvSource outputStream = null;
+
+    // the frame and overlay waiting to be drawn
+    private final Object lock = new Object();
+    private Frame pendingFrame = null;
+    private Overlay pendingOverlay = null;
+    private long pendingSequence;
+    private final ArrayDeque<Overlay> freeOverlays = new ArrayDeque<>();
+
+    // This object is used to store a copy of the camera frame to draw on.
+    private Mat mat;
+
+    // This object samples the histogram every few frames and draws it on every frame.
+    private final Hist hist = new Hist();
+
+    private volatile long framesDrawn = 0;
+    private volatile long framesDropped = 0;
+
+    /**
+     * @param stage the camera's targeting description
+     * @param cameraWidth width of the camera frame
+     * @param cameraHeight height of the camera frame
+     */
+    public AnnotationProcess(CameraStage<?> stage, int cameraWidth, int cameraHeight)
+    {
+        this.pId = "[" + stage.id + "AnnotationProcess]";
+        this.stage = stage;
+        mat = new Mat(cameraHeight, cameraWidth, CvType.CV_8UC3);
+
+        if (stage.displayContours)
+        {
+            outputStream = CameraServer.getInstance().putVideo(stage.name + "Contours", cameraWidth, cameraHeight);
+        }
+    }
+
+    /**
+     * @return true if the frames will be seen - a client is connected to the contours stream or images
+     *         are being logged.  If false don't bother recording an overlay or handing over the frame.
+     */
+    public boolean isWanted()
+    {
+        return (outputStream != null && outputStream.isEnabled()) || Main.logImage;
+    }
+
+    /**
+     * Get an empty overlay for the targeting to record a frame in.
+     *
+     * @return an overlay not being used by anybody else
+     */
+    public Overlay takeOverlay()
+    {
+        synchronized (lock)
+        {
+            Overlay overlay = freeOverlays.poll();
+            return overlay != null ? overlay : new Overlay();
+        }
+    }
+
+    /**
+     * Hand over a frame and its overlay to be drawn.  Never waits.
+     *
+     * @param frame the frame the targeting processed; retained until drawn
+     * @param overlay what the targeting recorded for the frame; the caller gives it up
+     * @param frameSequence camera frame number for the image log file name
+     * @return an empty overlay for the next frame
+     */
+    public Overlay offer(Frame frame, Overlay overlay, long frameSequence)
+    {
+        frame.retain();
+
+        Overlay free;
+        synchronized (lock)
+        {
+            if (pendingFrame != null) // not drawn yet - drop it for the newer one
+            {
+                pendingFrame.release();
+                free = pendingOverlay;
+                framesDropped++;
+            }
+            else
+            {
+                free = freeOverlays.poll();
+            }
+
+            pendingFrame = frame;
+            pendingOverlay = overlay;
+            pendingSequence = frameSequence;
+            lock.notify();
+        }
+
+        return free != null ? free : new Overlay();
+    }
+
+    /**
+     * Give back an overlay that won't be handed over.
+     *
+     * @param overlay an overlay from takeOverlay() or offer()
+     */
+    public void giveBack(Overlay overlay)
+    {
+        synchronized (lock)
+        {
+            freeOverlays.push(overlay);
+        }
+    }
+
+    public void run()
+    {
+        System.out.println(pId + " Starting run");
+
+        while (!Thread.interrupted())
+        {
+            Frame frame;
+            Overlay overlay;
+            long frameSequence;
+            synchronized (lock)
+            {
+                try
+                {
+                    while (pendingFrame == null)
+                    {
+                        lock.wait();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+                frame = pendingFrame;
+                overlay = pendingOverlay;
+                frameSequence = pendingSequence;
+                pendingFrame = null;
+                pendingOverlay = null;
+            }
+
+            try
+            {
+                frame.getMat().copyTo(mat); // private copy since the frame is shared
+                frame.release();
+                frame = null;
+
+                if (overlay.draw(mat, hist) && Main.displayHistogramValues)
+                {
+                    System.out.println(pId + " histogram " + hist);
+                }
+
+                if (Main.logImage)
+                {
+                    String filename = String.format("%s/%06d.jpg", stage.getImageDirectory(), frameSequence);
+                    if (!Imgcodecs.imwrite(filename, mat))
+                    {
+                        System.out.println(pId + " Error writing " + filename);
+                    }
+                }
+
+                if (outputStream != null)
+                {
+                    // Display the camera frame in the output stream.
+                    Imgproc.putText(mat, stage.name + " Contours", stage.contoursTitleLocation, Core.FONT_HERSHEY_SIMPLEX, 0.5,
+                            stage.contoursTitleColor, 1);
+                    outputStream.putFrame(mat);
+                }
+
+                framesDrawn++;
+            }
+            catch (Exception e)
+            {
+                System.out.println(pId + " Error drawing frame " + e.toString());
+            }
+            finally
+            {
+                if (frame != null)
+                {
+                    frame.release();
+                }
+                giveBack(overlay);
+            }
+        }
+
+        synchronized (lock)
+        {
+            if (pendingFrame != null)
+            {
+                pendingFrame.release();
+                pendingFrame = null;
+            }
+        }
+        mat.release();
+
+        System.out.println(pId + " " + this + " Interrupted and Ended Thread");
+    }
+
+    public String toString()
+    {
+        return String.format("drawn %d, dropped %d", framesDrawn, framesDropped);
+    }
+}
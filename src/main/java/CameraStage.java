@@ -0,0 +1,79 @@
+import java.lang.invoke.MethodHandles;
+import java.util.function.Supplier;
+
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+
+/**
+ * This class describes the targeting for one camera named in frc.json.
+ * 
+ * Main registers one for each camera that has targeting.  The generic CameraProcess and
+ * PipelineProcess use it to make the camera's own TargetSelection and TargetData and to name
+ * the threads, messages, video streams and image log directories.
+ * 
+ * To add a camera: add it to frc.json, write its TargetSelection and TargetData classes,
+ * and register a CameraStage for it in Main.registerCameraStages().
+ * A camera in frc.json without a CameraStage is started and streamed but not processed.
+ * 
+ * @author FRC Team 4237
+ */
+public class CameraStage<T extends TargetData<T>>
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    // NOTE: No modifier means visible to both the class and package.
+
+    final String name; // camera name in frc.json; also the message prefix to the roboRIO such as "Turret"
+    final String id; // short id for threads, messages and image log directories such as "B"
+    final Supplier<TargetSelection<T>> targetSelection; // makes the camera's target selection
+    final Supplier<T> targetData; // makes the camera's target data
+
+    boolean startCamera = true; // control camera
+    boolean createContours = true; // control targeting process for the camera
+    boolean displayContours = true; // false for match play // control display but still use the contours
+
+    Point contoursTitleLocation = new Point(25, 30); // where to write the title on the contours video stream
+    Scalar contoursTitleColor = new Scalar(255, 255, 0);
+
+    int workers = 1; // 1 for processing on the pipeline thread; more to process successive frames in parallel
+    int maxInFlight = 2; // frames being processed at once by the workers; at least workers to keep them all busy
+
+    int exposure = -1; // manual exposure set when the camera starts; -1 leaves it as frc.json set it
+
+    Main.CameraWidget widget = null; // Shuffleboard widget to display the camera automatically; null for none
+
+    /**
+     * @param name camera name in frc.json such as "Turret"
+     * @param id short id for threads, messages and image log directories such as "B"
+     * @param targetSelection makes the target selection such as TargetSelectionB::new
+     * @param targetData makes the target data such as TargetDataB::new
+     */
+    public CameraStage(String name, String id, Supplier<TargetSelection<T>> targetSelection, Supplier<T> targetData)
+    {
+        this.name = name;
+        this.id = id;
+        this.targetSelection = targetSelection;
+        this.targetData = targetData;
+    }
+
+    /**
+     * @return directory on the USB flash drive for the processed images such as /mnt/usb/B
+     */
+    public String getImageDirectory()
+    {
+        return "/mnt/usb/" + id;
+    }
+
+    /**
+     * @return directory on the USB flash drive for the raw camera images such as /mnt/usb/BR
+     */
+    public String getRawImageDirectory()
+    {
+        return "/mnt/usb/" + id + "R";
+    }
+
+    public String toString()
+    {
+        return String.format("%s camera as %s%s, start %b, contours %b, display %b, workers %d", name, name, id, startCamera, createContours, displayContours, workers);
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which target data to send to the roboRIO so a steady target isn't sent every frame.
+ *
+ * Target data is sent if it changed beyond the deadbands of its class (TargetData.isChangedFrom())
+ * from the last target data sent - not the last frame, so a slow drift is still sent once it adds
+ * up - or if the last was sent a heartbeat interval ago so the roboRIO can tell the RPi is alive.
+ *
+ * Not thread safe - only call from one thread at a time (PipelineProcess.publish()).
+ */
+public class ChangeSuppressor<T extends TargetData<T>>
+{
+    private final T lastSent;
+    private final long heartbeatInterval; // nanoseconds
+    private boolean isAnySent = false;
+    private long lastSentTime = 0;
+
+    // racy counts but good enough for statistics
+    private volatile long changed = 0; // sent since changed
+    private volatile long heartbeats = 0; // sent since not sent for the heartbeat interval
+    private volatile long suppressed = 0;
+
+    /**
+     * @param lastSent an unused target data object for the copy of the last sent
+     * @param heartbeatMillis longest time between sends
+     */
+    public ChangeSuppressor(T lastSent, int heartbeatMillis)
+    {
+        this.lastSent = lastSent;
+        this.heartbeatInterval = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+    }
+
+    /**
+     * Decide whether to send target data; if so it's remembered as the last sent.
+     *
+     * @param targetData the target data of the frame
+     * @return true to send it
+     */
+    public boolean isToBeSent(T targetData)
+    {
+        long now = System.nanoTime();
+        if (isAnySent && !targetData.isChangedFrom(lastSent))
+        {
+            if (now - lastSentTime < heartbeatInterval)
+            {
+                suppressed++;
+                return false;
+            }
+            heartbeats++;
+        }
+        else
+        {
+            changed++;
+        }
+
+        lastSent.set(targetData);
+        lastSentTime = now;
+        isAnySent = true;
+        return true;
+    }
+
+    public long getChanged()
+    {
+        return changed;
+    }
+
+    public long getHeartbeats()
+    {
+        return heartbeats;
+    }
+
+    public long getSuppressed()
+    {
+        return suppressed;
+    }
+
+    public String toString()
+    {
+        long total = changed + heartbeats + suppressed;
+        return String.format("sent changed %d, heartbeat %d, suppressed %d (%.0f%%)",
+            changed, heartbeats, suppressed, total == 0 ? 0. : 100. * suppressed / total);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.Mat;
+
+/**
+ * A pooled, reference-counted camera frame handed out by the FrameBus.
+ *
+ * The Mat is shared by all the subscribers that got this frame so it must be treated as read-only.
+ * A subscriber that wants to draw on the image must copy it first.
+ *
+ * Every holder calls release() exactly once when done; the last release returns the frame to the pool
+ * to be captured into again.
+ */
+public class Frame
+{
+    private final FrameBus bus; // pool to return to
+    private final Mat mat;
+
+    private long sequence; // monotonically increasing number assigned by the bus as the frame is published
+    private long captureTime; // frame time returned by CvSink.grabFrame (microseconds)
+
+    private final AtomicInteger references = new AtomicInteger(0);
+
+    Frame next; // intrusive link for the FrameBus free list
+
+    Frame(FrameBus bus, Mat mat)
+    {
+        this.bus = bus;
+        this.mat = mat;
+    }
+
+    /**
+     * @return the image - read-only since other subscribers may be using it at the same time
+     */
+    public Mat getMat()
+    {
+        return mat;
+    }
+
+    /**
+     * @return the bus sequence number of the frame, starting at 1 and incrementing by 1 for each captured frame
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return the frame time of the capture (microseconds)
+     */
+    public long getCaptureTime()
+    {
+        return captureTime;
+    }
+
+    void stamp(long sequence, long captureTime)
+    {
+        this.sequence = sequence;
+        this.captureTime = captureTime;
+    }
+
+    /**
+     * Add a holder of this frame.  Each retain() must be matched by a release().
+     */
+    public void retain()
+    {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Done with this frame.  The last holder to release it returns it to the pool.
+     */
+    public void release()
+    {
+        int remaining = references.decrementAndGet();
+
+        if (remaining == 0)
+        {
+            bus.recycle(this);
+        }
+        else if (remaining < 0)
+        {
+            throw new IllegalStateException("Frame " + sequence + " released more times than retained");
+        }
+    }
+
+    void setReferences(int count)
+    {
+        references.set(count);
+    }
+}
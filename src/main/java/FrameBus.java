@@ -0,0 +1,268 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opencv.core.Mat;
+
+/**
+ * Hands camera frames from one camera capture thread to any number of subscribers without copying them.
+ *
+ * The camera process acquires a pooled Frame, grabs the camera image directly into it and publishes it.
+ * Each subscriber has a single newest-frame slot.  Publishing puts the frame in every slot and drops
+ * (releases) whatever frame the subscriber hadn't taken yet so a slow subscriber doesn't slow the
+ * camera or the other subscribers.  Subscribers see how many frames they skipped from the sequence numbers.
+ *
+ * Frames are reference counted and go back to the pool when the last subscriber releases them.
+ * The pool grows only until it has enough frames for every subscriber's slot plus the one each is
+ * working on plus the one being captured; after that no Mats are allocated.
+ *
+ * Only the camera thread may acquire() and publish().  Subscribe before the camera starts publishing.
+ */
+public class FrameBus
+{
+    private static final String pId = new String("[FrameBus]");
+
+    private final String name;
+    private final int rows;
+    private final int cols;
+    private final int type;
+
+    private final AtomicReference<Frame> freeList = new AtomicReference<>(); // pool of unused frames
+    private volatile int framesAllocated = 0; // only changed by the camera thread
+
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    private long sequence = 0; // only changed by the camera thread
+
+    /**
+     * @param name the name of the bus for messages, typically the camera name
+     * @param rows height of the camera frame
+     * @param cols width of the camera frame
+     * @param type OpenCV type of the camera frame such as CvType.CV_8UC3
+     */
+    public FrameBus(String name, int rows, int cols, int type)
+    {
+        this.name = name;
+        this.rows = rows;
+        this.cols = cols;
+        this.type = type;
+    }
+
+    /**
+     * Add a subscriber.  Each subscriber gets its own newest-frame slot.
+     *
+     * @param subscriberName name of the subscriber for messages
+     * @return the subscription to take frames from
+     */
+    public synchronized Subscription subscribe(String subscriberName)
+    {
+        Subscription subscription = new Subscription(subscriberName);
+        Subscription[] more = new Subscription[subscriptions.length + 1];
+        System.arraycopy(subscriptions, 0, more, 0, subscriptions.length);
+        more[subscriptions.length] = subscription;
+        subscriptions = more;
+        return subscription;
+    }
+
+    /**
+     * Get an unused frame to capture into.  Camera thread only.
+     *
+     * @return a frame owned by the caller until it is published
+     */
+    public Frame acquire()
+    {
+        // only the camera thread takes frames from the free list so there is no ABA problem with this pop
+        Frame frame;
+        Frame nextFree;
+        do
+        {
+            frame = freeList.get();
+            if (frame == null)
+            {
+                framesAllocated++;
+                System.out.println(pId + " " + name + " pool growing to " + framesAllocated + " frames");
+                return new Frame(this, new Mat(rows, cols, type));
+            }
+            nextFree = frame.next;
+        } while (!freeList.compareAndSet(frame, nextFree));
+
+        frame.next = null;
+        return frame;
+    }
+
+    /**
+     * Publish a captured frame to every subscriber.  Never blocks.  Camera thread only.
+     * The caller gives up its ownership of the frame.
+     *
+     * @param frame the frame from acquire() with the camera image in it
+     * @param captureTime the frame time returned by CvSink.grabFrame (microseconds)
+     */
+    public void publish(Frame frame, long captureTime)
+    {
+        frame.stamp(++sequence, captureTime);
+        frame.setReferences(1); // the bus holds it while handing it out
+
+        Subscription[] current = subscriptions;
+        for (int idx = 0; idx < current.length; idx++)
+        {
+            current[idx].offer(frame);
+        }
+
+        frame.release(); // the bus is done with it; back to the pool if there are no subscribers
+    }
+
+    void recycle(Frame frame)
+    {
+        Frame head;
+        do
+        {
+            head = freeList.get();
+            frame.next = head;
+        } while (!freeList.compareAndSet(head, frame));
+    }
+
+    /**
+     * @return number of frames (and Mats) allocated for the pool
+     */
+    public int getFramesAllocated()
+    {
+        return framesAllocated;
+    }
+
+    /**
+     * @return sequence number of the last frame published
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(pId).append(" ").append(name).append(" published ").append(sequence)
+            .append(", pool ").append(framesAllocated);
+        for (Subscription subscription : subscriptions)
+        {
+            sb.append("; ").append(subscription);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One subscriber's view of the bus - the newest frame it hasn't taken yet.
+     * Only one thread may take frames from a subscription.
+     */
+    public static class Subscription
+    {
+        private final String subscriberName;
+        private final AtomicReference<Frame> newest = new AtomicReference<>();
+        private volatile Thread waiting = null;
+
+        private volatile long lastSequence = 0; // sequence of the last frame taken
+        private volatile long framesTaken = 0;
+        private volatile long framesSkipped = 0;
+
+        private Subscription(String subscriberName)
+        {
+            this.subscriberName = subscriberName;
+        }
+
+        private void offer(Frame frame)
+        {
+            frame.retain();
+            Frame dropped = newest.getAndSet(frame);
+            if (dropped != null)
+            {
+                dropped.release(); // subscriber didn't get to it
+            }
+
+            Thread thread = waiting;
+            if (thread != null)
+            {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Wait for a frame newer than the last one taken.  The caller must release() the frame when done.
+         *
+         * @return the newest frame or null if the waiting thread was interrupted
+         */
+        public Frame take()
+        {
+            waiting = Thread.currentThread();
+            try
+            {
+                Frame frame;
+                while ((frame = newest.getAndSet(null)) == null)
+                {
+                    LockSupport.park(this);
+
+                    if (Thread.currentThread().isInterrupted())
+                    {
+                        // the subscriber is stopping; give back a frame offered meanwhile so its Mat returns to the pool
+                        Frame left = newest.getAndSet(null);
+                        if (left != null)
+                        {
+                            left.release();
+                        }
+                        return null;
+                    }
+                }
+
+                count(frame);
+                return frame;
+            }
+            finally
+            {
+                waiting = null;
+            }
+        }
+
+        /**
+         * Take the newest frame if there is one.  The caller must release() the frame when done.
+         *
+         * @return the newest frame or null if there isn't a new one
+         */
+        public Frame poll()
+        {
+            Frame frame = newest.getAndSet(null);
+            if (frame != null)
+            {
+                count(frame);
+            }
+            return frame;
+        }
+
+        private void count(Frame frame)
+        {
+            if (lastSequence > 0)
+            {
+                framesSkipped += frame.getSequence() - lastSequence - 1;
+            }
+            lastSequence = frame.getSequence();
+            framesTaken++;
+        }
+
+        /**
+         * @return number of frames this subscriber took
+         */
+        public long getFramesTaken()
+        {
+            return framesTaken;
+        }
+
+        /**
+         * @return number of frames published that this subscriber never took
+         */
+        public long getFramesSkipped()
+        {
+            return framesSkipped;
+        }
+
+        public String toString()
+        {
+            return String.format("%s taken %d, skipped %d", subscriberName, framesTaken, framesSkipped);
+        }
+    }
+}
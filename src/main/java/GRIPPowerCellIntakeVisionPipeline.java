@@ -4,6 +4,9 @@ import java.util.List;
 import org.opencv.core.*;
 import org.opencv.imgproc.*;
 
+import contourUtils.ContourFilter;
+import lut.ColorThresholdLUT;
+
 /**
 * PowerCellIntakeVisionPipeline class.
 *
@@ -19,46 +22,72 @@ public class GRIPPowerCellIntakeVisionPipeline {
 	private ArrayList<MatOfPoint> findContoursOutput = new ArrayList<MatOfPoint>();
 	private ArrayList<MatOfPoint> filterContoursOutput = new ArrayList<MatOfPoint>();
 
+	// Workspace reused every frame.  The output Mats above are kept (not released) between frames
+	// so OpenCV reuses their memory once they are sized by the first camera frame.
+	private Mat findContoursHierarchy = new Mat();
+
+	// Step settings computed once instead of every frame.  Change the values here as in the GRIP step.
+
+	// Step Blur0:
+	private final BlurType blurType = BlurType.get("Box Blur");
+	private final double blurRadius = 2.;//0.0;
+	private final Size blurKernelSize = kernelSize(blurType, blurRadius);
+
+	// Step HSV_Threshold0:
+	private final double[] hsvThresholdHue = {20.0, 45.0};
+	private final double[] hsvThresholdSaturation = {55., 255.};
+	private final double[] hsvThresholdValue = {15., 255};
+	private final Scalar hsvThresholdLow = new Scalar(hsvThresholdHue[0], hsvThresholdSaturation[0], hsvThresholdValue[0]);
+	private final Scalar hsvThresholdHigh = new Scalar(hsvThresholdHue[1], hsvThresholdSaturation[1], hsvThresholdValue[1]);
+	private final int hsvThresholdLUTBits = 6; // BGR bits per channel of the lookup table; 5 is smaller but less accurate
+	private final ColorThresholdLUT hsvThresholdLUT = new ColorThresholdLUT(hsvThresholdLUTBits, hsvThresholdLow, hsvThresholdHigh);
+
+	// Step Find_Contours0:
+	private final boolean findContoursExternalOnly = false;
+
+	// Step Filter_Contours0:
+	private final double filterContoursMinArea = 6.0;//100
+	private final double filterContoursMinPerimeter = 0.0;
+	private final double filterContoursMinWidth = 5.0;
+	private final double filterContoursMaxWidth = 200.0;
+	private final double filterContoursMinHeight = 5.0;
+	private final double filterContoursMaxHeight = 120.0;
+	private final double[] filterContoursSolidity = {0, 100};
+	private final double filterContoursMaxVertices = 1000000;
+	private final double filterContoursMinVertices = 0.0;
+	private final double filterContoursMinRatio = 0.2;//.1
+	private final double filterContoursMaxRatio = 1.;//.8
+	private final ContourFilter contourFilter = new ContourFilter(filterContoursMinArea, filterContoursMinPerimeter,
+		filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity,
+		filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio);
+
 	static {
 		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
 	}
 
 	/**
 	 * This is the primary method that runs the entire pipeline and updates the outputs.
+	 * 
+	 * Nothing is allocated in steady state except the MatOfPoint for each contour that the
+	 * Java Imgproc.findContours always makes.  The outputs belong to this pipeline until the
+	 * next process() - don't release them.
 	 */
 	public void process(Mat source0) {
 		// Step Blur0:
 		Mat blurInput = source0;
-		BlurType blurType = BlurType.get("Box Blur");
-		double blurRadius = 2.;//0.0;
-		blur(blurInput, blurType, blurRadius, blurOutput);
+		blur(blurInput, blurType, blurRadius, blurKernelSize, blurOutput);
 
 		// Step HSV_Threshold0:
 		Mat hsvThresholdInput = blurOutput;
-		double[] hsvThresholdHue = {20.0, 45.0};
-		double[] hsvThresholdSaturation = {55., 255.};
-		double[] hsvThresholdValue = {15., 255};
-		hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
+		hsvThreshold(hsvThresholdInput, hsvThresholdLUT, hsvThresholdOutput);
 
 		// Step Find_Contours0:
 		Mat findContoursInput = hsvThresholdOutput;
-		boolean findContoursExternalOnly = false;
 		findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
 
 		// Step Filter_Contours0:
 		ArrayList<MatOfPoint> filterContoursContours = findContoursOutput;
-		double filterContoursMinArea = 6.0;//100
-		double filterContoursMinPerimeter = 0.0;
-		double filterContoursMinWidth = 5.0;
-		double filterContoursMaxWidth = 200.0;
-		double filterContoursMinHeight = 5.0;
-		double filterContoursMaxHeight = 120.0;
-		double[] filterContoursSolidity = {0, 100};
-		double filterContoursMaxVertices = 1000000;
-		double filterContoursMinVertices = 0.0;
-		double filterContoursMinRatio = 0.2;//.1
-		double filterContoursMaxRatio = 1.;//.8
-		filterContours(filterContoursContours, filterContoursMinArea, filterContoursMinPerimeter, filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity, filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio, filterContoursOutput);
+		contourFilter.filter(filterContoursContours, filterContoursOutput);
 
 	}
 
@@ -78,6 +107,25 @@ public class GRIPPowerCellIntakeVisionPipeline {
 		return hsvThresholdOutput;
 	}
 
+	/**
+	 * Change the HSV_Threshold ranges.  Rebuilds the lookup table so don't call it every frame.
+	 * @param hue the min and max hue
+	 * @param saturation the min and max saturation
+	 * @param value the min and max value
+	 */
+	public void setHsvThreshold(double[] hue, double[] saturation, double[] value) {
+		hsvThresholdLUT.setThresholds(new Scalar(hue[0], saturation[0], value[0]), new Scalar(hue[1], saturation[1], value[1]));
+	}
+
+	/**
+	 * Compare the HSV_Threshold lookup table to the exact HSV conversion on the last blurred frame.
+	 * Allocates so only use it for occasional reports.
+	 * @return fraction of the pixels thresholded the same as the exact HSV conversion.
+	 */
+	public double hsvThresholdAccuracy() {
+		return hsvThresholdLUT.accuracy(blurOutput);
+	}
+
 	/**
 	 * This method is a generated getter for the output of a Find_Contours.
 	 * @return ArrayList<MatOfPoint> output from Find_Contours.
@@ -94,6 +142,15 @@ public class GRIPPowerCellIntakeVisionPipeline {
 		return filterContoursOutput;
 	}
 
+	/**
+	 * This method is a getter for the filter of Filter_Contours to see how many contours
+	 * each criterion rejects.
+	 * @return ContourFilter of Filter_Contours.
+	 */
+	public ContourFilter contourFilter() {
+		return contourFilter;
+	}
+
 
 	/**
 	 * An indication of which type of filter to use for a blur.
@@ -136,24 +193,21 @@ public class GRIPPowerCellIntakeVisionPipeline {
 	 * @param input The image on which to perform the blur.
 	 * @param type The blurType to perform.
 	 * @param doubleRadius The radius for the blur.
+	 * @param kernelSize The kernel size from kernelSize().
 	 * @param output The image in which to store the output.
 	 */
-	private void blur(Mat input, BlurType type, double doubleRadius,
+	private void blur(Mat input, BlurType type, double doubleRadius, Size kernelSize,
 		Mat output) {
 		int radius = (int)(doubleRadius + 0.5);
-		int kernelSize;
 		switch(type){
 			case BOX:
-				kernelSize = 2 * radius + 1;
-				Imgproc.blur(input, output, new Size(kernelSize, kernelSize));
+				Imgproc.blur(input, output, kernelSize);
 				break;
 			case GAUSSIAN:
-				kernelSize = 6 * radius + 1;
-				Imgproc.GaussianBlur(input,output, new Size(kernelSize, kernelSize), radius);
+				Imgproc.GaussianBlur(input,output, kernelSize, radius);
 				break;
 			case MEDIAN:
-				kernelSize = 2 * radius + 1;
-				Imgproc.medianBlur(input, output, kernelSize);
+				Imgproc.medianBlur(input, output, (int)kernelSize.width);
 				break;
 			case BILATERAL:
 				Imgproc.bilateralFilter(input, output, -1, radius, radius);
@@ -161,20 +215,38 @@ public class GRIPPowerCellIntakeVisionPipeline {
 		}
 	}
 
+	/**
+	 * The kernel size for a blur so it can be computed once.
+	 * @param type The blurType to perform.
+	 * @param doubleRadius The radius for the blur.
+	 * @return The kernel size.
+	 */
+	private static Size kernelSize(BlurType type, double doubleRadius) {
+		int radius = (int)(doubleRadius + 0.5);
+		int kernelSize;
+		switch(type){
+			case GAUSSIAN:
+				kernelSize = 6 * radius + 1;
+				break;
+			default:
+				kernelSize = 2 * radius + 1;
+				break;
+		}
+		return new Size(kernelSize, kernelSize);
+	}
+
 	/**
 	 * Segment an image based on hue, saturation, and value ranges.
 	 *
+	 * The ranges are in a BGR lookup table so the image isn't converted to HSV.
+	 *
 	 * @param input The image on which to perform the HSL threshold.
-	 * @param hue The min and max hue
-	 * @param sat The min and max saturation
-	 * @param val The min and max value
+	 * @param lut The lookup table of the min and max hue, saturation and value
 	 * @param output The image in which to store the output.
 	 */
-	private void hsvThreshold(Mat input, double[] hue, double[] sat, double[] val,
+	private void hsvThreshold(Mat input, ColorThresholdLUT lut,
 	    Mat out) {
-		Imgproc.cvtColor(input, out, Imgproc.COLOR_BGR2HSV);
-		Core.inRange(out, new Scalar(hue[0], sat[0], val[0]),
-			new Scalar(hue[1], sat[1], val[1]), out);
+		lut.apply(input, out);
 	}
 
 	/**
@@ -186,7 +258,11 @@ public class GRIPPowerCellIntakeVisionPipeline {
 	 */
 	private void findContours(Mat input, boolean externalOnly,
 		List<MatOfPoint> contours) {
-		Mat hierarchy = new Mat();
+		// Imgproc.findContours makes a new MatOfPoint for each contour so free the last
+		// frame's contours now rather than waiting for the garbage collector.
+		for (int i = 0; i < contours.size(); i++) {
+			contours.get(i).release();
+		}
 		contours.clear();
 		int mode;
 		if (externalOnly) {
@@ -196,60 +272,10 @@ public class GRIPPowerCellIntakeVisionPipeline {
 			mode = Imgproc.RETR_LIST;
 		}
 		int method = Imgproc.CHAIN_APPROX_SIMPLE;
-		Imgproc.findContours(input, contours, hierarchy, mode, method);
-		hierarchy.release();
+		Imgproc.findContours(input, contours, findContoursHierarchy, mode, method);
 	}
 
 
-	/**
-	 * Filters out contours that do not meet certain criteria.
-	 * @param inputContours is the input list of contours
-	 * @param output is the the output list of contours
-	 * @param minArea is the minimum area of a contour that will be kept
-	 * @param minPerimeter is the minimum perimeter of a contour that will be kept
-	 * @param minWidth minimum width of a contour
-	 * @param maxWidth maximum width
-	 * @param minHeight minimum height
-	 * @param maxHeight maximimum height
-	 * @param Solidity the minimum and maximum solidity of a contour
-	 * @param minVertexCount minimum vertex Count of the contours
-	 * @param maxVertexCount maximum vertex Count
-	 * @param minRatio minimum ratio of width to height
-	 * @param maxRatio maximum ratio of width to height
-	 */
-	private void filterContours(List<MatOfPoint> inputContours, double minArea,
-		double minPerimeter, double minWidth, double maxWidth, double minHeight, double
-		maxHeight, double[] solidity, double maxVertexCount, double minVertexCount, double
-		minRatio, double maxRatio, List<MatOfPoint> output) {
-		final MatOfInt hull = new MatOfInt();
-		output.clear();
-		//operation
-		for (int i = 0; i < inputContours.size(); i++) {
-			final MatOfPoint contour = inputContours.get(i);
-			final Rect bb = Imgproc.boundingRect(contour);
-			if (bb.width < minWidth || bb.width > maxWidth) continue;
-			if (bb.height < minHeight || bb.height > maxHeight) continue;
-			final double area = Imgproc.contourArea(contour);
-			if (area < minArea) continue;
-			if (Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true) < minPerimeter) continue;
-			Imgproc.convexHull(contour, hull);
-			MatOfPoint mopHull = new MatOfPoint();
-			mopHull.create((int) hull.size().height, 1, CvType.CV_32SC2);
-			for (int j = 0; j < hull.size().height; j++) {
-				int index = (int)hull.get(j, 0)[0];
-				double[] point = new double[] { contour.get(index, 0)[0], contour.get(index, 0)[1]};
-				mopHull.put(j, 0, point);
-			}
-			final double solid = 100 * area / Imgproc.contourArea(mopHull);
-			if (solid < solidity[0] || solid > solidity[1]) continue;
-			if (contour.rows() < minVertexCount || contour.rows() > maxVertexCount)	continue;
-			final double ratio = bb.width / (double)bb.height;
-			if (ratio < minRatio || ratio > maxRatio) continue;
-			output.add(contour);
-		}
-		hull.release();
-	}
-
 public void releaseAll() {
 
 	blurOutput.release();
@@ -8,6 +8,9 @@ import java.util.List;
 import org.opencv.core.*;
 import org.opencv.imgproc.*;
 
+import contourUtils.ContourFilter;
+import lut.ColorThresholdLUT;
+
 /**
 * GRIPPowerPortVisionPipeline class.
 *
@@ -19,7 +22,6 @@ public class GRIPPowerPortVisionPipeline {
 
 	//Outputs
 	private Mat blurOutput = new Mat();
-	private Mat outHSV = new Mat();
 	private Mat hsvThresholdOutput = new Mat();
 	// private Mat cvErode0Output = new Mat();
 	// private Mat cvDilateOutput = new Mat();
@@ -31,52 +33,159 @@ public class GRIPPowerPortVisionPipeline {
 	private ArrayList<MatOfPoint> findContoursOutput = new ArrayList<MatOfPoint>();
 	private ArrayList<MatOfPoint> filterContoursOutput = new ArrayList<MatOfPoint>();
 
+	// Workspace reused every frame.  The output Mats above are kept (not released) between frames
+	// so OpenCV reuses their memory once they are sized by the first camera frame.
+	private Mat findContoursHierarchy = new Mat();
+	private Point findContoursOffset = new Point(0, 0);
+
+	// Step settings computed once instead of every frame.  Change the values here as in the GRIP step.
+
+	// Step Blur0:
+	private final BlurType blurType = BlurType.get("Box Blur");
+	private final double blurRadius = 1.8018018018018014;
+	private final Size blurKernelSize = kernelSize(blurType, blurRadius);
+
+	// Step HSV_Threshold0:
+	private final double[] hsvThresholdHue = {63.12949640287769, 98.60068259385666}; // good, actual in basement 75-85
+	private final double[] hsvThresholdSaturation = {160, 255.0}; // good actual 150-255 mostly 160 to 240 ,255
+	//private final double[] hsvThresholdValue = {16.052158273381295, 220.1877133105802}; // good actual 22-139
+	//private final double[] hsvThresholdValue = {73.0, 255.0}; // Annika measured this at St Joe GRIP and what is here in code worked so leave it be
+	private final double[] hsvThresholdValue = {17.51798561151079, 255.0}; // 17 needed at great distance in rkt basement
+	private final Scalar hsvThresholdLow = new Scalar(hsvThresholdHue[0], hsvThresholdSaturation[0], hsvThresholdValue[0]);
+	private final Scalar hsvThresholdHigh = new Scalar(hsvThresholdHue[1], hsvThresholdSaturation[1], hsvThresholdValue[1]);
+	private final int hsvThresholdLUTBits = 6; // BGR bits per channel of the lookup table; 5 is smaller but less accurate
+	private final ColorThresholdLUT hsvThresholdLUT = new ColorThresholdLUT(hsvThresholdLUTBits, hsvThresholdLow, hsvThresholdHigh);
+
+	// Step CV_morph0:
+	private final int cvMorph0op = Imgproc.MORPH_CLOSE; // close - dilate then erode
+	private final Mat cvMorph0Kernel = new Mat();
+	private final Point cvMorph0Anchor = new Point(-1, -1);
+	private final double cvMorph0Iterations = 2.0;
+	private final int cvMorph0Bordertype = Core.BORDER_CONSTANT;
+	private final Scalar cvMorph0Bordervalue = new Scalar(-1);
+
+	// Step CV_morph1:
+	private final int cvMorph1op = Imgproc.MORPH_OPEN; // Open - erode then dilate
+	private final Mat cvMorph1Kernel = new Mat();
+	private final Point cvMorph1Anchor = new Point(-1, -1);
+	private final double cvMorph1Iterations = 2.0;
+	private final int cvMorph1Bordertype = Core.BORDER_CONSTANT;
+	private final Scalar cvMorph1Bordervalue = new Scalar(-1);
+
+	// Step Find_Contours0:
+	private final boolean findContoursExternalOnly = true;
+
+	// Step Filter_Contours0:
+	//private final double filterContoursMinArea = 1000.0; // good
+	private final double filterContoursMinArea = 100.0; // rkt basement
+	private final double filterContoursMinPerimeter = 0.0;
+	private final double filterContoursMinWidth = 0.0;
+	private final double filterContoursMaxWidth = 1000.0;
+	private final double filterContoursMinHeight = 0.0;
+	private final double filterContoursMaxHeight = 1000.0;
+	private final double[] filterContoursSolidity = {20, 60};  // highly useful for the mostly open trapezoid
+	private final double filterContoursMaxVertices = 1000000.0;
+	private final double filterContoursMinVertices = 0.0;
+	private final double filterContoursMinRatio = 0.0;
+	private final double filterContoursMaxRatio = 1000.0;
+	private final ContourFilter contourFilter = new ContourFilter(filterContoursMinArea, filterContoursMinPerimeter,
+		filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity,
+		filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio);
+
+	// Coarse-to-fine search of the full frame - see setDownscale()
+	private int downscale = 1; // 1 is off
+	private final int coarseWindowMargin = 8; // full resolution pixels around the coarse contours for the blur and morphology to reach
+	private ContourFilter coarseContourFilter = contourFilter; // size limits scaled to the coarse frame
+	private double coarseCvMorph0Iterations = cvMorph0Iterations; // close scaled to the coarse frame
+	private Mat coarseFrame = new Mat();
+	private Mat coarseHsvThresholdOutput = new Mat();
+	private Mat coarseCvMorph0Output = new Mat();
+	private ArrayList<MatOfPoint> coarseFindContoursOutput = new ArrayList<MatOfPoint>();
+	private ArrayList<MatOfPoint> coarseFilterContoursOutput = new ArrayList<MatOfPoint>();
+	private Size coarseSize = new Size();
+	private Rect coarseWindow = new Rect();
+
 	static {
 		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
 	}
 
 	/**
 	 * This is the primary method that runs the entire pipeline and updates the outputs.
+	 * 
+	 * Nothing is allocated in steady state except the MatOfPoint for each contour that the
+	 * Java Imgproc.findContours always makes.  The outputs belong to this pipeline until the
+	 * next process() - don't release them.
 	 */
 	public void process(Mat source0) {
+		process(source0, null);
+	}
+
+	/**
+	 * Run the pipeline on only a region of interest of the frame.
+	 * 
+	 * The steps work on views of the region in full frame size outputs so nothing is reallocated
+	 * as the region changes.  Outside the region the outputs are left from earlier frames.
+	 * The contours are offset to full frame coordinates.
+	 * 
+	 * @param source0 the camera frame
+	 * @param roi the region to search or null for the full frame
+	 */
+	public void process(Mat source0, Rect roi) {
+		if (roi == null && downscale > 1) {
+			roi = coarseSearch(source0);
+			if (roi == null) {
+				// nothing at the coarse scale so nothing to refine
+				releaseContours(findContoursOutput);
+				filterContoursOutput.clear();
+				return;
+			}
+		}
+
+		Mat source = source0;
+		Mat blurOut = blurOutput;
+		Mat hsvThresholdOut = hsvThresholdOutput;
+		Mat cvMorph0Out = cvMorph0Output;
+		Mat cvMorph1Out = cvMorph1Output;
+		int borderIsolated = 0;
+
+		if (roi != null) {
+			blurOutput.create(source0.size(), source0.type());
+			hsvThresholdOutput.create(source0.size(), CvType.CV_8UC1);
+			cvMorph0Output.create(source0.size(), CvType.CV_8UC1);
+			cvMorph1Output.create(source0.size(), CvType.CV_8UC1);
+
+			source = source0.submat(roi);
+			blurOut = blurOutput.submat(roi);
+			hsvThresholdOut = hsvThresholdOutput.submat(roi);
+			cvMorph0Out = cvMorph0Output.submat(roi);
+			cvMorph1Out = cvMorph1Output.submat(roi);
+			// the masks outside the region are stale so the morphology must not look past its edge
+			borderIsolated = Core.BORDER_ISOLATED;
+			findContoursOffset.x = roi.x;
+			findContoursOffset.y = roi.y;
+		}
+		else {
+			findContoursOffset.x = 0;
+			findContoursOffset.y = 0;
+		}
+
 		// Step Blur0:
-		Mat blurInput = source0;
-		BlurType blurType = BlurType.get("Box Blur");
-		double blurRadius = 1.8018018018018014;
-		blur(blurInput, blurType, blurRadius, blurOutput);
+		Mat blurInput = source;
+		blur(blurInput, blurType, blurRadius, blurKernelSize, blurOut);
 
 		// Step HSV_Threshold0:
-		Mat hsvThresholdInput = blurOutput;
-		double[] hsvThresholdHue = {63.12949640287769, 98.60068259385666}; // good, actual in basement 75-85
-		double[] hsvThresholdSaturation = {160, 255.0}; // good actual 150-255 mostly 160 to 240 ,255
-		//double[] hsvThresholdValue = {16.052158273381295, 220.1877133105802}; // good actual 22-139
-		//double[] hsvThresholdValue = {73.0, 255.0}; // Annika measured this at St Joe GRIP and what is here in code worked so leave it be
-		double[] hsvThresholdValue = {17.51798561151079, 255.0}; // 17 needed at great distance in rkt basement
-		hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
+		Mat hsvThresholdInput = blurOut;
+		hsvThreshold(hsvThresholdInput, hsvThresholdLUT, hsvThresholdOut);
 
 		// Step CV_morph0:
-		int cvMorph0op = Imgproc.MORPH_CLOSE; // close - dilate then erode
-		Mat cvMorph0Src = hsvThresholdOutput;
-		Mat cvMorph0Kernel = new Mat();
-		Point cvMorph0Anchor = new Point(-1, -1);
-		double cvMorph0Iterations = 2.0;
-		int cvMorph0Bordertype = Core.BORDER_CONSTANT;
-		Scalar cvMorph0Bordervalue = new Scalar(-1);
-		cvMorph(cvMorph0Src, cvMorph0Kernel, cvMorph0op, cvMorph0Anchor, cvMorph0Iterations, cvMorph0Bordertype,
-				cvMorph0Bordervalue, cvMorph0Output);
-		cvMorph0Kernel.release();
+		Mat cvMorph0Src = hsvThresholdOut;
+		cvMorph(cvMorph0Src, cvMorph0Kernel, cvMorph0op, cvMorph0Anchor, cvMorph0Iterations, cvMorph0Bordertype | borderIsolated,
+				cvMorph0Bordervalue, cvMorph0Out);
 
 		// Step CV_morph1:
-		int cvMorph1op = Imgproc.MORPH_OPEN; // Open - erode then dilate
-		Mat cvMorph1Src = cvMorph0Output;
-		Mat cvMorph1Kernel = new Mat();
-		Point cvMorph1Anchor = new Point(-1, -1);
-		double cvMorph1Iterations = 2.0;
-		int cvMorph1Bordertype = Core.BORDER_CONSTANT;
-		Scalar cvMorph1Bordervalue = new Scalar(-1);
-		cvMorph(cvMorph1Src, cvMorph1Kernel, cvMorph1op, cvMorph1Anchor, cvMorph1Iterations, cvMorph1Bordertype,
-				cvMorph1Bordervalue, cvMorph1Output);
-		cvMorph1Kernel.release();
+		Mat cvMorph1Src = cvMorph0Out;
+		cvMorph(cvMorph1Src, cvMorph1Kernel, cvMorph1op, cvMorph1Anchor, cvMorph1Iterations, cvMorph1Bordertype | borderIsolated,
+				cvMorph1Bordervalue, cvMorph1Out);
 
 		// // Step CV_erode0:
 		// Mat cvErode0Src = hsvThresholdOutput;
@@ -129,25 +238,90 @@ public class GRIPPowerPortVisionPipeline {
 		// cvMorph2Kernel.release();
 
 		// Step Find_Contours0:
-		Mat findContoursInput = cvMorph1Output;
-		boolean findContoursExternalOnly = true;
-		findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
+		Mat findContoursInput = cvMorph1Out;
+		findContours(findContoursInput, findContoursExternalOnly, findContoursOffset, findContoursOutput);
 
 		// Step Filter_Contours0:
 		ArrayList<MatOfPoint> filterContoursContours = findContoursOutput;
-		//double filterContoursMinArea = 1000.0; // good
-		double filterContoursMinArea = 100.0; // rkt basement
-		double filterContoursMinPerimeter = 0.0;
-		double filterContoursMinWidth = 0.0;
-		double filterContoursMaxWidth = 1000.0;
-		double filterContoursMinHeight = 0.0;
-		double filterContoursMaxHeight = 1000.0;
-		double[] filterContoursSolidity = {20, 60};  // highly useful for the mostly open trapezoid
-		double filterContoursMaxVertices = 1000000.0;
-		double filterContoursMinVertices = 0.0;
-		double filterContoursMinRatio = 0.0;
-		double filterContoursMaxRatio = 1000.0;
-		filterContours(filterContoursContours, filterContoursMinArea, filterContoursMinPerimeter, filterContoursMinWidth, filterContoursMaxWidth, filterContoursMinHeight, filterContoursMaxHeight, filterContoursSolidity, filterContoursMaxVertices, filterContoursMinVertices, filterContoursMinRatio, filterContoursMaxRatio, filterContoursOutput);
+		contourFilter.filter(filterContoursContours, filterContoursOutput);
+
+		if (roi != null) {
+			// release the views; the full frame outputs stay for the next frame
+			source.release();
+			blurOut.release();
+			hsvThresholdOut.release();
+			cvMorph0Out.release();
+			cvMorph1Out.release();
+		}
+	}
+
+	/**
+	 * Search the full frame coarse-to-fine.  The pipeline runs on the frame shrunk by the factor and
+	 * then again at full resolution in only the window around the contours found so the outputs have
+	 * the full resolution accuracy.  Searches of a region of interest are always at full resolution.
+	 * 
+	 * @param factor 1 for off; 2 for 320x240 from 640x480; 4 for 160x120
+	 */
+	public void setDownscale(int factor) {
+		downscale = Math.max(factor, 1);
+		// The coarse search only finds candidates so it keeps only the size limits, scaled to the coarse frame
+		// (areas by the square).  Thin tape changes shape when shrunk so the shape limits are left for the
+		// full resolution pass.
+		double areaScale = downscale * downscale;
+		coarseContourFilter = new ContourFilter(filterContoursMinArea / areaScale, filterContoursMinPerimeter / downscale,
+			filterContoursMinWidth / downscale, filterContoursMaxWidth / downscale, filterContoursMinHeight / downscale,
+			filterContoursMaxHeight / downscale, new double[] {0., 100.}, Double.MAX_VALUE, 0.,
+			0., Double.MAX_VALUE);
+		// Tape only a coarse pixel or two wide would be erased by the open so only the close is done and
+		// it reaches as far in full resolution pixels as at full resolution.  The area limit removes the
+		// specks the open would have.  The shrinking averages the pixels so there's no coarse blur.
+		coarseCvMorph0Iterations = Math.floor(cvMorph0Iterations / downscale);
+	}
+
+	/**
+	 * Run the pipeline on the shrunk frame and find the window around the contours found.
+	 * 
+	 * @param source0 the camera frame
+	 * @return the window at full resolution around all the contours or null if none were found
+	 */
+	private Rect coarseSearch(Mat source0) {
+		coarseSize.width = source0.cols() / downscale;
+		coarseSize.height = source0.rows() / downscale;
+		Imgproc.resize(source0, coarseFrame, coarseSize, 0., 0., Imgproc.INTER_AREA);
+
+		hsvThreshold(coarseFrame, hsvThresholdLUT, coarseHsvThresholdOutput);
+		Mat coarseMask = coarseHsvThresholdOutput;
+		if (coarseCvMorph0Iterations >= 1.) {
+			cvMorph(coarseMask, cvMorph0Kernel, cvMorph0op, cvMorph0Anchor, coarseCvMorph0Iterations, cvMorph0Bordertype,
+					cvMorph0Bordervalue, coarseCvMorph0Output);
+			coarseMask = coarseCvMorph0Output;
+		}
+		findContoursOffset.x = 0;
+		findContoursOffset.y = 0;
+		findContours(coarseMask, findContoursExternalOnly, findContoursOffset, coarseFindContoursOutput);
+		coarseContourFilter.filter(coarseFindContoursOutput, coarseFilterContoursOutput);
+
+		if (coarseFilterContoursOutput.isEmpty()) {
+			return null;
+		}
+
+		int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+		for (int i = 0; i < coarseFilterContoursOutput.size(); i++) {
+			Rect box = Imgproc.boundingRect(coarseFilterContoursOutput.get(i));
+			left = Math.min(left, box.x);
+			top = Math.min(top, box.y);
+			right = Math.max(right, box.x + box.width);
+			bottom = Math.max(bottom, box.y + box.height);
+		}
+
+		// faint parts of the tape may be missing at the coarse scale so allow for some of the contour beyond its box
+		int marginX = coarseWindowMargin + downscale * (1 + (right - left) / 4);
+		int marginY = coarseWindowMargin + downscale * (1 + (bottom - top) / 4);
+		coarseWindow.x = Math.max(0, left * downscale - marginX);
+		coarseWindow.y = Math.max(0, top * downscale - marginY);
+		coarseWindow.width = Math.min(source0.cols(), right * downscale + marginX) - coarseWindow.x;
+		coarseWindow.height = Math.min(source0.rows(), bottom * downscale + marginY) - coarseWindow.y;
+		return coarseWindow;
 	}
 
 	/**
@@ -157,14 +331,6 @@ public class GRIPPowerPortVisionPipeline {
 	public Mat blurOutput() {
 		return blurOutput;
 	}
-/**
-	 * This method is a generated getter for the output of a HSV.
-	 * @return Mat output from HSV.
-	 */
-	public Mat outHSV() {
-		return outHSV;
-	}
-
 	/**
 	 * This method is a generated getter for the output of a HSV_Threshold.
 	 * @return Mat output from HSV_Threshold.
@@ -173,6 +339,25 @@ public class GRIPPowerPortVisionPipeline {
 		return hsvThresholdOutput;
 	}
 
+	/**
+	 * Change the HSV_Threshold ranges.  Rebuilds the lookup table so don't call it every frame.
+	 * @param hue the min and max hue
+	 * @param saturation the min and max saturation
+	 * @param value the min and max value
+	 */
+	public void setHsvThreshold(double[] hue, double[] saturation, double[] value) {
+		hsvThresholdLUT.setThresholds(new Scalar(hue[0], saturation[0], value[0]), new Scalar(hue[1], saturation[1], value[1]));
+	}
+
+	/**
+	 * Compare the HSV_Threshold lookup table to the exact HSV conversion on the last blurred frame.
+	 * Allocates so only use it for occasional reports.
+	 * @return fraction of the pixels thresholded the same as the exact HSV conversion.
+	 */
+	public double hsvThresholdAccuracy() {
+		return hsvThresholdLUT.accuracy(blurOutput);
+	}
+
 	// /**
 	//  * This method is a generated getter for the output of a CV_erode.
 	//  * @return Mat output from CV_erode.
@@ -245,6 +430,15 @@ public class GRIPPowerPortVisionPipeline {
 		return filterContoursOutput;
 	}
 
+	/**
+	 * This method is a getter for the filter of Filter_Contours to see how many contours
+	 * each criterion rejects.
+	 * @return ContourFilter of Filter_Contours.
+	 */
+	public ContourFilter contourFilter() {
+		return contourFilter;
+	}
+
 
 	/**
 	 * An indication of which type of filter to use for a blur.
@@ -286,24 +480,21 @@ public class GRIPPowerPortVisionPipeline {
 	 * @param input The image on which to perform the blur.
 	 * @param type The blurType to perform.
 	 * @param doubleRadius The radius for the blur.
+	 * @param kernelSize The kernel size from kernelSize().
 	 * @param output The image in which to store the output.
 	 */
-	private void blur(Mat input, BlurType type, double doubleRadius,
+	private void blur(Mat input, BlurType type, double doubleRadius, Size kernelSize,
 		Mat output) {
 		int radius = (int)(doubleRadius + 0.5);
-		int kernelSize;
 		switch(type){
 			case BOX:
-				kernelSize = 2 * radius + 1;
-				Imgproc.blur(input, output, new Size(kernelSize, kernelSize));
+				Imgproc.blur(input, output, kernelSize);
 				break;
 			case GAUSSIAN:
-				kernelSize = 6 * radius + 1;
-				Imgproc.GaussianBlur(input,output, new Size(kernelSize, kernelSize), radius);
+				Imgproc.GaussianBlur(input,output, kernelSize, radius);
 				break;
 			case MEDIAN:
-				kernelSize = 2 * radius + 1;
-				Imgproc.medianBlur(input, output, kernelSize);
+				Imgproc.medianBlur(input, output, (int)kernelSize.width);
 				break;
 			case BILATERAL:
 				Imgproc.bilateralFilter(input, output, -1, radius, radius);
@@ -311,20 +502,38 @@ public class GRIPPowerPortVisionPipeline {
 		}
 	}
 
+	/**
+	 * The kernel size for a blur so it can be computed once.
+	 * @param type The blurType to perform.
+	 * @param doubleRadius The radius for the blur.
+	 * @return The kernel size.
+	 */
+	private static Size kernelSize(BlurType type, double doubleRadius) {
+		int radius = (int)(doubleRadius + 0.5);
+		int kernelSize;
+		switch(type){
+			case GAUSSIAN:
+				kernelSize = 6 * radius + 1;
+				break;
+			default:
+				kernelSize = 2 * radius + 1;
+				break;
+		}
+		return new Size(kernelSize, kernelSize);
+	}
+
 	/**
 	 * Segment an image based on hue, saturation, and value ranges.
 	 *
+	 * The ranges are in a BGR lookup table so the image isn't converted to HSV.
+	 *
 	 * @param input The image on which to perform the HSL threshold.
-	 * @param hue The min and max hue
-	 * @param sat The min and max saturation
-	 * @param val The min and max value
+	 * @param lut The lookup table of the min and max hue, saturation and value
 	 * @param output The image in which to store the output.
 	 */
-	private void hsvThreshold(Mat input, double[] hue, double[] sat, double[] val,
+	private void hsvThreshold(Mat input, ColorThresholdLUT lut,
 	    Mat out) {
-		Imgproc.cvtColor(input, outHSV, Imgproc.COLOR_BGR2HSV);
-		Core.inRange(outHSV, new Scalar(hue[0], sat[0], val[0]),
-			new Scalar(hue[1], sat[1], val[1]), out);
+		lut.apply(input, out);
 	}
 
 	// /**
@@ -444,10 +653,9 @@ public class GRIPPowerPortVisionPipeline {
 	 * @param maskSize the size of the mask.
 	 * @param output The image in which to store the output.
 	 */
-	private void findContours(Mat input, boolean externalOnly,
+	private void findContours(Mat input, boolean externalOnly, Point offset,
 		List<MatOfPoint> contours) {
-		Mat hierarchy = new Mat();
-		contours.clear();
+		releaseContours(contours);
 		int mode;
 		if (externalOnly) {
 			mode = Imgproc.RETR_EXTERNAL;
@@ -456,72 +664,35 @@ public class GRIPPowerPortVisionPipeline {
 			mode = Imgproc.RETR_LIST;
 		}
 		int method = Imgproc.CHAIN_APPROX_SIMPLE;
-		Imgproc.findContours(input, contours, hierarchy, mode, method);
-		hierarchy.release();
+		Imgproc.findContours(input, contours, findContoursHierarchy, mode, method, offset);
 	}
 
 
 	/**
-	 * Filters out contours that do not meet certain criteria.
-	 * @param inputContours is the input list of contours
-	 * @param output is the the output list of contours
-	 * @param minArea is the minimum area of a contour that will be kept
-	 * @param minPerimeter is the minimum perimeter of a contour that will be kept
-	 * @param minWidth minimum width of a contour
-	 * @param maxWidth maximum width
-	 * @param minHeight minimum height
-	 * @param maxHeight maximum height
-	 * @param Solidity the minimum and maximum solidity of a contour
-	 * @param minVertexCount minimum vertex Count of the contours
-	 * @param maxVertexCount maximum vertex Count
-	 * @param minRatio minimum ratio of width to height
-	 * @param maxRatio maximum ratio of width to height
+	 * Imgproc.findContours makes a new MatOfPoint for each contour so free the last
+	 * frame's contours now rather than waiting for the garbage collector.
+	 * @param contours the contours to release and clear
 	 */
-	private void filterContours(List<MatOfPoint> inputContours, double minArea,
-		double minPerimeter, double minWidth, double maxWidth, double minHeight, double
-		maxHeight, double[] solidity, double maxVertexCount, double minVertexCount, double
-		minRatio, double maxRatio, List<MatOfPoint> output) {
-		final MatOfInt hull = new MatOfInt();
-		output.clear();
-		//operation
-		for (int i = 0; i < inputContours.size(); i++) {
-			final MatOfPoint contour = inputContours.get(i);
-			final Rect bb = Imgproc.boundingRect(contour);
-			if (bb.width < minWidth || bb.width > maxWidth) continue;
-			if (bb.height < minHeight || bb.height > maxHeight) continue;
-			final double area = Imgproc.contourArea(contour);
-			if (area < minArea) continue;
-			// NOT! /** Commented to improve processing time
-			if (Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true) < minPerimeter) continue;
-			Imgproc.convexHull(contour, hull);
-			MatOfPoint mopHull = new MatOfPoint();
-			mopHull.create((int) hull.size().height, 1, CvType.CV_32SC2);
-			for (int j = 0; j < hull.size().height; j++) {
-				int index = (int)hull.get(j, 0)[0];
-				double[] point = new double[] { contour.get(index, 0)[0], contour.get(index, 0)[1]};
-				mopHull.put(j, 0, point);
-			}
-			final double solid = 100 * area / Imgproc.contourArea(mopHull);
-			//System.out.println("solid " + solid);
-			if (solid < solidity[0] || solid > solidity[1]) continue;
-			if (contour.rows() < minVertexCount || contour.rows() > maxVertexCount)	continue;
-			final double ratio = bb.width / (double)bb.height;
-			if (ratio < minRatio || ratio > maxRatio) continue;
-			//*/
-			output.add(contour);
+	private static void releaseContours(List<MatOfPoint> contours) {
+		for (int i = 0; i < contours.size(); i++) {
+			contours.get(i).release();
 		}
-		//hull.release();
+		contours.clear();
 	}
 
 	public void releaseAll() {
 		blurOutput.release();
-		outHSV.release();
 		hsvThresholdOutput.release();
 		// cvErode0Output.release();
 		// cvDilateOutput.release();
 		// cvErode1Output.release();
 		cvMorph0Output.release();
 		cvMorph1Output.release();
+		coarseFrame.release();
+		coarseHsvThresholdOutput.release();
+		coarseCvMorph0Output.release();
+		releaseContours(coarseFindContoursOutput);
+		coarseFilterContoursOutput.clear();
 		// cvMorph2Output.release();
 		// cvCannyOutput.release();
 		while(!findContoursOutput.isEmpty()) {
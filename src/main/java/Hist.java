@@ -1,130 +1,227 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfFloat;
-import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
-class Hist {
 /**
- * 
- * @param mat Assume 3 channels that can be BGR, HSV, etc since any 3 channel data are displayed.
- *   Histogram is overlaid in the corner of the input image.
+ * Histograms of the 3 channels of an image region overlaid in the corner of a frame, and the
+ * mean, min and max of each channel as numbers.
+ *
+ * All 3 channels are counted in one pass over the pixels read once from the Mat instead of splitting
+ * the channels and calling calcHist for each.  The drawing of the histograms is kept and blended
+ * into each frame until the next sample so sampling every few frames saves the counting and the
+ * drawing.  All the buffers are reused.
+ *
+ * Not thread safe - one per AnnotationProcess.
  */
+class Hist {
+    static final int BINS = 128; // 2 values per bin of the 0 to 255 channel values
+
+    private static final int HIST_W = 128;
+    private static final int HIST_H = 99;
+    private static final int BAND_H = HIST_H/3; // each channel has its own space
+    private static final Scalar[] COLORS = { new Scalar(255, 0, 0), new Scalar(0, 255, 0), new Scalar(0, 0, 255) };
+
+    // one sample
+    private final int[][] counts = new int[3][BINS];
+    private final long[] sum = new long[3];
+    private final int[] min = new int[3];
+    private final int[] max = new int[3];
+    private int pixelCount = 0;
+    private String[] label = { "0", "1", "2" };
+
+    // reused buffers
+    private byte[] pixels = new byte[0];
+    private byte[] maskPixels = new byte[0];
+    private final int[] tracePoints = new int[2 * BINS];
+    private final List<MatOfPoint> trace = new ArrayList<>();
+
+    // the drawing of the last sample
+    private final Mat histImage = new Mat(HIST_H, HIST_W, CvType.CV_8UC3, new Scalar(0, 0, 0));
+    private final Mat[] bands = new Mat[3];
+    private boolean sampled = false;
+    private int framesSinceSample = 0;
+
+    Hist() {
+        for (int channel = 0; channel < 3; channel++) {
+            bands[channel] = histImage.submat(channel * BAND_H, (channel + 1) * BAND_H, 0, HIST_W);
+        }
+        trace.add(new MatOfPoint());
+    }
+
+    /**
+     * @return true if it's time to sample again - never sampled or Main.histogramSampleInterval
+     *         frames have been displayed since the last sample
+     */
+    public boolean isTimeToSample() {
+        return !sampled || framesSinceSample >= Main.histogramSampleInterval;
+    }
+
+    /**
+     * Count the pixels of an image region and draw the histograms to display until the next sample.
+     *
+     * @param mat Assume 3 channels of 8 bits that can be BGR, HSV, etc since any 3 channel data are displayed.
+     * @param mask pixels to count are non-zero; the same size as mat; empty or null to count them all
+     * @param label name of each channel
+     */
+    public void sample(Mat mat, Mat mask, String[] label) {
+        this.label = label;
+
+        int count = (int) mat.total();
+        if (pixels.length < 3 * count) {
+            pixels = new byte[3 * count];
+        }
+        mat.get(0, 0, pixels); // all the pixels in one call
+
+        boolean masked = mask != null && !mask.empty();
+        if (masked) {
+            if (maskPixels.length < count) {
+                maskPixels = new byte[count];
+            }
+            mask.get(0, 0, maskPixels);
+        }
+
+        for (int channel = 0; channel < 3; channel++) {
+            Arrays.fill(counts[channel], 0);
+            sum[channel] = 0;
+            min[channel] = 255;
+            max[channel] = 0;
+        }
+        pixelCount = 0;
+
+        int[] counts0 = counts[0], counts1 = counts[1], counts2 = counts[2];
+        for (int idx = 0, pixel = 0; idx < count; idx++, pixel += 3) {
+            if (masked && maskPixels[idx] == 0) {
+                continue;
+            }
+            int v0 = pixels[pixel] & 0xFF;
+            int v1 = pixels[pixel + 1] & 0xFF;
+            int v2 = pixels[pixel + 2] & 0xFF;
+            counts0[v0 >> 1]++;
+            counts1[v1 >> 1]++;
+            counts2[v2 >> 1]++;
+            sum[0] += v0; sum[1] += v1; sum[2] += v2;
+            if (v0 < min[0]) min[0] = v0;
+            if (v0 > max[0]) max[0] = v0;
+            if (v1 < min[1]) min[1] = v1;
+            if (v1 > max[1]) max[1] = v1;
+            if (v2 < min[2]) min[2] = v2;
+            if (v2 > max[2]) max[2] = v2;
+            pixelCount++;
+        }
+
+        render();
+        sampled = true;
+        framesSinceSample = 0;
+    }
+
+    /**
+     * Draw the histograms of the last sample - the same as calcHist, normalize NORM_MINMAX to each
+     * channel's space and a line between each bin.
+     */
+    private void render() {
+        histImage.setTo(new Scalar(0, 0, 0));
+
+        Imgproc.putText(histImage, label[0], new Point(10, BAND_H), Core.FONT_HERSHEY_SIMPLEX, 0.5, new Scalar(255, 255, 255), 1);
+        Imgproc.putText(histImage, label[1], new Point(10, BAND_H*2), Core.FONT_HERSHEY_SIMPLEX, 0.5, new Scalar(255, 255, 255), 1);
+        Imgproc.putText(histImage, label[2], new Point(10, HIST_H), Core.FONT_HERSHEY_SIMPLEX, 0.5, new Scalar(255, 255, 255), 1);
+
+        int binW = (int) Math.round((double) HIST_W / BINS);
+        for (int channel = 0; channel < 3; channel++) {
+            int[] bins = counts[channel];
+            int smallest = Integer.MAX_VALUE, largest = Integer.MIN_VALUE;
+            for (int bin = 0; bin < BINS; bin++) {
+                smallest = Math.min(smallest, bins[bin]);
+                largest = Math.max(largest, bins[bin]);
+            }
+            double scale = largest > smallest ? (double) BAND_H / (largest - smallest) : 0.;
+
+            for (int bin = 0; bin < BINS; bin++) {
+                tracePoints[2 * bin] = binW * bin;
+                tracePoints[2 * bin + 1] = BAND_H - Math.round((float) ((bins[bin] - smallest) * scale));
+            }
+            MatOfPoint points = trace.get(0);
+            points.create(BINS, 1, CvType.CV_32SC2);
+            points.put(0, 0, tracePoints);
+            Imgproc.polylines(bands[channel], trace, false, COLORS[channel], 2, Imgproc.LINE_4, 0);
+        }
+
+        // draw grid
+        for (int idxC = 0; idxC <= 250; idxC += 25) {
+            Imgproc.line(histImage, new Point(idxC, 0), new Point(idxC, histImage.rows()), new Scalar(255, 255, 255), 1, Imgproc.LINE_4, 0);
+        }
+    }
+
+    /**
+     * Blend the histograms of the last sample into the corner of a frame.
+     *
+     * @param dst the frame
+     */
+    public void display(Mat dst) {
+        framesSinceSample++;
+        if (!sampled) {
+            return;
+        }
+
+        Mat subMat = dst.submat(0, histImage.rows(), 0, histImage.cols()); // the insert area on the main image
+        Core.addWeighted(subMat, .20, histImage, .80, 0, subMat);
+        subMat.release();
+    }
+
+    /**
+     * Sample and display in one call.
+     *
+     * @param mat Assume 3 channels that can be BGR, HSV, etc since any 3 channel data are displayed.
+     *   Histogram is overlaid in the corner of the input image.
+     */
     public void displayHist(Mat mat, Mat dst, Mat mask, String[] label) {
-    Mat histImage = new Mat();
-
-    //////////////////////////////////////
-    // RGB HISTOGRAM OF IMAGE
-    // Or HSV histogram
-    //
-    // histogram of image mat before any other drawing on mat
-    //! [Separate the image in 3 places ( B, G and R )]
-    List<Mat> bgrPlanes = new ArrayList<>();
-    // try converts
-    //Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
-    //Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2HLS);
-    Core.split(mat, bgrPlanes);
-    //! [Separate the image in 3 planes ( B, G and R or H, S, V, or any 3 planes)]
-
-    //! [Establish the number of bins]
-    int histSize = 128;
-    //! [Establish the number of bins]
-
-    //! [Set the ranges ( for B,G,R) )]
-    float[] range = {0, 256}; // includes lower boundary; the upper boundary is exclusive
-    MatOfFloat histRange = new MatOfFloat(range);
-    //! [Set the ranges ( for B,G,R) )]
-
-    //! [Set histogram param]
-    boolean accumulate = false;
-    //! [Set histogram param]
-
-    //! [Compute the histograms - one each for the 3 channels]
-    Mat bHist = new Mat(), gHist = new Mat(), rHist = new Mat();
-
-    Imgproc.calcHist(bgrPlanes, new MatOfInt(0), mask, bHist, new MatOfInt(histSize), histRange, accumulate);
-    Imgproc.calcHist(bgrPlanes, new MatOfInt(1), mask, gHist, new MatOfInt(histSize), histRange, accumulate);
-    Imgproc.calcHist(bgrPlanes, new MatOfInt(2), mask, rHist, new MatOfInt(histSize), histRange, accumulate);
-
-    //System.out.println("bHist = " + bHist + "gHist = " + gHist + "rHist = " + rHist);
-    //! [Compute the histograms]
-
-    //! [Draw the histograms for B, G and R]
-
-    int histW = 128;
-    int histH = 99;
-    histImage = new Mat( histH, histW, CvType.CV_8UC3, new Scalar( 0,0,0) );
-
-    int binW = (int) Math.round((double) histW / histSize);
-
-    //! [Draw the histograms for B, G and R]
-
-    //! [Normalize the result in each channel to ( 0, histImage.rows/3 )]
-    Core.normalize(bHist, bHist, 0, histImage.rows()/3, Core.NORM_MINMAX);
-    Core.normalize(gHist, gHist, 0, histImage.rows()/3, Core.NORM_MINMAX);
-    Core.normalize(rHist, rHist, 0, histImage.rows()/3, Core.NORM_MINMAX);
-    //! [Normalize the result to ( 0, histImage.rows )]
-
-    //! [Draw for each channel - each channel has its own space]
-    float[] bHistData = new float[(int) (bHist.total() * bHist.channels())];
-    bHist.get(0, 0, bHistData);
-    float[] gHistData = new float[(int) (gHist.total() * gHist.channels())];
-    gHist.get(0, 0, gHistData); 
-    float[] rHistData = new float[(int) (rHist.total() * rHist.channels())];
-    rHist.get(0, 0, rHistData);
-
-    Imgproc.putText(histImage, label[0], new Point(10, histH/3), Core.FONT_HERSHEY_SIMPLEX, 0.5, new Scalar(255, 255, 255), 1);
-    Imgproc.putText(histImage, label[1], new Point(10, histH*2/3), Core.FONT_HERSHEY_SIMPLEX, 0.5, new Scalar(255, 255, 255), 1);
-    Imgproc.putText(histImage, label[2], new Point(10, histH), Core.FONT_HERSHEY_SIMPLEX, 0.5, new Scalar(255, 255, 255), 1);
-    
-    for( int i = 1; i < histSize; i++ ) {
-    Imgproc.line(histImage.submat(0, histH/3, 0, histW), new Point(binW * (i - 1), histH/3 - Math.round(bHistData[i - 1])),
-    new Point(binW * (i), histH/3 - Math.round(bHistData[i])), new Scalar(255, 0, 0), 2, Imgproc.LINE_4);
-
-    Imgproc.line(histImage.submat(histH/3, histH*2/3, 0, histW), new Point(binW * (i - 1), histH/3 - Math.round(gHistData[i - 1])),
-    new Point(binW * (i), histH/3 - Math.round(gHistData[i])), new Scalar(0, 255, 0), 2, Imgproc.LINE_4);
-
-    Imgproc.line(histImage.submat(histH*2/3, histH, 0, histW), new Point(binW * (i - 1), histH/3 - Math.round(rHistData[i - 1])),
-    new Point(binW * (i), histH/3 - Math.round(rHistData[i])), new Scalar(0, 0, 255), 2, Imgproc.LINE_4);
-
-    // System.out.print(
-    // binW * (i - 1) + " " +
-    // (histH - Math.round(rHistData[i - 1])) + " ");
+        sample(mat, mask, label);
+        display(dst);
     }
 
-    // draw grid
-    for (int idxC = 0; idxC <=250; idxC+=25) {
-        Imgproc.line (histImage, new Point(idxC, 0), new Point(idxC, histImage.rows()), new Scalar(255, 255, 255), 1, Imgproc.LINE_4);
+    /**
+     * @return pixels counted in the last sample
+     */
+    public int getPixelCount() {
+        return pixelCount;
+    }
 
+    /**
+     * @param channel 0, 1 or 2
+     * @return mean of the channel in the last sample
+     */
+    public double getMean(int channel) {
+        return pixelCount == 0 ? 0. : (double) sum[channel] / pixelCount;
     }
-    //! [Draw for each channel]
-    // end histogram of image mat before any other drawing on mat
-
-    Mat subMat = new Mat(); // place for small image inserted into large image
-    subMat = dst.submat(0, histImage.rows(), 0, histImage.cols()); // define the
-    // insert area on the main image
-    if( ! histImage.empty() )
-    {
-    Core.addWeighted(subMat, .20, histImage, .80, 0, subMat);
+
+    /**
+     * @param channel 0, 1 or 2
+     * @return smallest value of the channel in the last sample
+     */
+    public int getMin(int channel) {
+        return pixelCount == 0 ? 0 : min[channel];
     }
 
-    histImage.release();
-    histRange.release();
-    subMat.release();
-    while(!bgrPlanes.isEmpty()) {
-        bgrPlanes.get(0).release();
-        bgrPlanes.remove(0);
+    /**
+     * @param channel 0, 1 or 2
+     * @return largest value of the channel in the last sample
+     */
+    public int getMax(int channel) {
+        return pixelCount == 0 ? 0 : max[channel];
     }
 
-    //
-    // END RGB HISTOGRAM OF IMAGE - except the presentation of it a couple of lines below
-    //////////////////////////////////////
+    public String toString() {
+        return String.format("%s mean %5.1f [%3d, %3d], %s mean %5.1f [%3d, %3d], %s mean %5.1f [%3d, %3d], %d pixels",
+            label[0], getMean(0), getMin(0), getMax(0),
+            label[1], getMean(1), getMin(1), getMax(1),
+            label[2], getMean(2), getMin(2), getMax(2), pixelCount);
     }
 }
 /*
@@ -135,4 +232,4 @@ hist:L Output histogram, which is a dense or sparse dims -dimensional array.
 histSize: Array of histogram sizes in each dimension.
 ranges: Array of the dims arrays of the histogram bin boundaries in each dimension. When the histogram is uniform (uniform =true), then for each dimension i it is enough to specify the lower (inclusive) boundary L_0 of the 0-th histogram bin and the upper (exclusive) boundary U_(histSize[i]-1) for the last histogram bin histSize[i]-1. That is, in case of a uniform histogram each of ranges[i] is an array of 2 elements. When the histogram is not uniform (uniform=false), then each of ranges[i] contains histSize[i]+1 elements: L_0, U_0=L_1, U_1=L_2,..., U_(histSize[i]-2)=L_(histSize[i]-1), U_(histSize[i]-1). The array elements, that are not between L_0 and U_(histSize[i]-1), are not counted in the histogram.
 accumulate: Accumulation flag. If it is set, the histogram is not cleared in the beginning when it is allocated. This feature enables you to compute a single histogram from several sets of arrays, or to update the histogram in time.
-*/
\ No newline at end of file
+*/
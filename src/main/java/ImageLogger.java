@@ -0,0 +1,62 @@
+import java.lang.invoke.MethodHandles;
+
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Subscriber to a camera FrameBus that saves the raw camera images to the USB flash drive.
+ *
+ * It runs in its own thread so slow flash drive writes never hold up the targeting pipeline.
+ * If it can't keep up it skips frames; the file names are the frame sequence numbers so the gaps show.
+ */
+public class ImageLogger implements Runnable
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final String pId = new String("[ImageLogger]");
+
+    private final FrameBus.Subscription frames;
+    private final String directory;
+
+    /**
+     * @param bus the camera frames to log
+     * @param directory where to save the images such as "/mnt/usb/BR"
+     */
+    public ImageLogger(FrameBus bus, String directory)
+    {
+        this.directory = directory;
+        frames = bus.subscribe("ImageLogger " + directory);
+    }
+
+    public void run()
+    {
+        System.out.println(pId + " Starting run " + directory);
+
+        while (!Thread.interrupted())
+        {
+            Frame frame = frames.take();
+            if (frame == null)
+            {
+                continue;
+            }
+
+            try
+            {
+                String filename = String.format("%s/%06d.jpg", directory, frame.getSequence());
+                if (!Imgcodecs.imwrite(filename, frame.getMat()))
+                {
+                    System.out.println(pId + " Error writing " + filename);
+                }
+            }
+            catch (Exception e)
+            {
+                System.out.println(pId + " Error saving image file " + e.toString());
+            }
+            finally
+            {
+                frame.release();
+            }
+        }
+
+        System.out.println(pId + " " + frames + " Interrupted and Ended Thread");
+    }
+}
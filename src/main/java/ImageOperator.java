@@ -1,5 +1,6 @@
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import java.util.ArrayList;
 import java.lang.invoke.MethodHandles;
@@ -54,6 +55,7 @@ public class ImageOperator implements Runnable {
 
         Mat mat; // Mat to draw on
         Mat targetIconTemp = new Mat(); // Mat for target to display
+        int lastFrameNumber = 0; // of the last turret result drawn
         
         // The following single statement does correctly define a camera server for the OpenCV image to be displayed in ShuffleBoard
         // The limitation is there is no visibility to the MjpegSever parameters such as Quality (compression)
@@ -102,25 +104,23 @@ public class ImageOperator implements Runnable {
                 boolean isTargetFound;
                 double shapeQuality;
 
-                // could consider black & white mat to save network bandwidth but it's pretty small even with color
-                mat = Mat.zeros(height, width, CvType.CV_8UC3); // blank color Mat to draw on
-
-                synchronized (Main.tapeLock)
+                // get the data to draw the "cartoon" image - wait for a newer frame's but not forever
+                TurretResult result = Main.turretResults.await(lastFrameNumber, 1, TimeUnit.SECONDS);
+                if (result == null)
                 {
-                    // get the data to draw the "cartoon" image
-                    if (!Main.isDistanceAngleFresh)
-                    {
-                       Main.tapeLock.wait();
-                    }
-
-                    portDistance = Main.tapeDistance;
-                    angleToTurn = Main.tapeAngle;
-                    contourIndex = Main.tapeContours; // 0 is the index of the first contour; should be the only one; not checking for more than 1 contour if the best is the first checking
-                    isTargetFound = Main.isTargetFound;
-                    shapeQuality = Main.shapeQuality;
-                    Main.targetIcon.copyTo(targetIconTemp);
-                    Main.isDistanceAngleFresh = false; // these data captured to be processed so mark them as used
+                    continue; // turret targeting not running; nothing new to draw
                 }
+                lastFrameNumber = result.frameNumber;
+
+                portDistance = result.portDistance;
+                angleToTurn = result.angleToTurn;
+                contourIndex = result.contourIndex; // 0 is the index of the first contour; should be the only one; not checking for more than 1 contour if the best is the first checking
+                isTargetFound = result.isTargetFound;
+                shapeQuality = result.shapeQuality;
+                result.copyIconTo(targetIconTemp);
+
+                // could consider black & white mat to save network bandwidth but it's pretty small even with color
+                mat = Mat.zeros(height, width, CvType.CV_8UC3); // blank color Mat to draw on
 
                 Core.transpose(targetIconTemp, targetIconTemp); // camera is rotated so make image look right for humans
                 Core.flip(targetIconTemp, targetIconTemp, 1);
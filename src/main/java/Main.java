@@ -57,16 +57,14 @@ scp -o UserKnownHostsFile=/dev/null -o StrictHostKeyChecking=no pi@wpilibpi.loca
 
 This program below starts execution in Main.java - main.java
 
-The Bcamera and Ecamera are optionally started to capture camera images and serve them.
+The cameras in frc.json are optionally started to capture camera images and serve them.
 
 Threads are spawned (optionally) for processing and serving
-    CameraProcessB (TurretB camera) to process image contours
-    CameraProcessE (IntakeE camera) to process image contours
+    CameraProcess for each camera with a CameraStage registered (TurretB and IntakeE cameras) to process image contours
     UdpReceive (test receive data if no roboRIO - note that the PowerShell UDP monitor can also be used)
 
 Image processing threads are then spawned overlap camera capture with image processing
-    PipelineProcessB
-    PipelineProcessE
+    PipelineProcess for each CameraProcess with the camera's TargetSelection (TargetSelectionB, TargetSelectionE)
     ImageOperator (show cartoon of the location of the high target)
 --
 
@@ -88,6 +86,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import com.google.gson.Gson;
@@ -98,7 +97,8 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
 
 import edu.wpi.cscore.MjpegServer;
 import edu.wpi.cscore.UsbCamera;
@@ -237,21 +237,20 @@ public final class Main
         }
     }
 
-    static UsbCamera cameraB;
-    static UsbCamera cameraE;
+    // targeting for each camera by camera name in frc.json - see registerCameraStages()
+    private static Map<String, CameraStage<?>> cameraStages = new LinkedHashMap<>();
 
-    private static CameraProcessB cpB;
-    private static CameraProcessE cpE;
+    private static List<CameraProcess> cameraProcesses = new ArrayList<>();
     private static ImageOperator imageOperator;
 
-    private static Thread visionThreadB;
-    private static Thread visionThreadE;
+    private static List<Thread> visionThreads = new ArrayList<>();
     private static Thread imageOperatorThread;
 
     // TODO:
     // all messages go to one UDP sender defined for one port but could have two
     // senders on different ports if that makes it easier to separate the messages
     protected static UdpSend sendMessage;
+    private static Thread sendMessageThread;
 
     private static UdpReceive testUDPreceive; // test UDP receiver in place of a roboRIO
     private static Thread UDPreceiveThread; // remove these or at least don't start this thread if using the roboRIO - see parameter below skull
@@ -260,20 +259,12 @@ public final class Main
     static Object tabLock;
     static ShuffleboardTab cameraTab;
 
-    static double tapeDistance = -1.;
-    static double tapeAngle = -1.;
-    static int tapeContours = -1;
-    static double shapeQuality = Double.MAX_VALUE;
-    static boolean isTargetFound = false;
-    static Object tapeLock;
-    static boolean isDistanceAngleFresh = false;
-    static double calibrateAngle;
-    // note that the targetIcon below is sourced from the mat that has the original camera image
-    // plus any "debug" information written on it such as the HSV histogram, contour outline,
-    // bounding box, rotated bounding box, and text titles.  This causes a slightly noisy image to
-    // appear as that extraneous information (to targeting) encroaches.
+    // the turret target found in the newest frame for the ImageOperator - distance, angle, shape and icon
+    // note that the target icon is sourced from the original camera image; the "debug" information
+    // such as the HSV histogram and contour outline is drawn on a copy by the AnnotationProcess.
     // Severe jpg image compression also can introduce various strange distorting artifacts.
-    static Mat targetIcon = new Mat();
+    static final TurretResultExchange turretResults = new TurretResultExchange();
+    static double calibrateAngle;
 
     static CircularBuffer angleHistory = new CircularBuffer(100);
     
@@ -315,6 +306,17 @@ public final class Main
 
     static final int MAXIMUM_MESSAGE_LENGTH = 1024; // max length (or more) of UDP message from RPi to roboRIO.  Not normally changed but here for visibility
 
+    static boolean sendBinaryTargetData = true; // binary TargetMessage to the roboRIO; false for the "Turret {json}" text messages such as to watch with receiveUDP.ps1
+
+    static int coalesceMessagesMillis = 0; // 0 sends each camera's message when it's made; 20 sends the newest of every camera together every 20 ms for the 50 Hz roboRIO loop (not for receiveUDP.ps1)
+
+    static boolean suppressUnchangedTargetData = false; // send target data only if changed beyond the deadbands below or for the heartbeat; false sends every frame
+    static int targetDataHeartbeatMillis = 250; // longest time between target data sent even if unchanged; keep under 1000 if coalescing messages
+    static double turretAngleDeadband = 0.1; // degrees angleToTurn must change to be sent
+    static double turretDistanceDeadband = 1.; // inches portDistance must change to be sent
+    static double intakeCenterDeadband = 2.; // pixels the nearest Power Cell center must change to be sent
+    static double intakeDistanceDeadband = 1.; // inches the nearest Power Cell distance must change to be sent
+
     static boolean runTestUDPreceiver = false; // Self run UDP tester or pick another computer to send the target data to
 
 // URL where driving messages are to be sent
@@ -333,6 +335,7 @@ public final class Main
     // "0.0.0.0" should be any computer but doesn't work anymore for other computers - they don't see any packets
 
     // cameras and contour processing for targeting and generated video streams can be switched on/off here
+    // (each camera's targeting is registered in registerCameraStages() below)
    
     static boolean startTurretCamera = true; // control turret camera
     static boolean createTurretContours = true; // control targeting process for turret
@@ -348,7 +351,20 @@ public final class Main
 
     static boolean displayTurretPixelDistance = false; // false for match play // print calibration info for pixels to inches distance to target
     static boolean displayTurretHistogram = true; // false for match play // a small insert for turret contour HSV values found in the contour
+    static int histogramSampleInterval = 5; // frames displayed between histogram samples; the last one is shown in between
+    static boolean displayHistogramValues = false; // print the HSV mean, min and max found in the contour each time the histogram is sampled
  
+    static int turretPipelineWorkers = 1; // 1 for single thread; more to target successive frames in parallel on the other cores
+    static int turretPipelineMaxInFlight = 2; // frames targeted at once by the workers; at least the number of workers
+    static boolean displayPipelineStatistics = false; // print throughput and latency every 10 seconds to compare the number of workers
+
+    static boolean turretRoiTracking = true; // search only around where the turret target is predicted to be once it's found; turned off if turretPipelineWorkers > 1
+    static int turretRoiMargin = 40; // pixels searched around the predicted target bounding box on each side
+    static double turretRoiMotionGain = 2.; // ROI also enlarged by this times the target motion per frame
+    static int turretRoiHitsToTrack = 2; // frames in a row the target must be found in the full frame to start tracking
+    static int turretRoiMissesToSearch = 3; // frames in a row the target can be missed before searching the full frame again
+    static int turretPyramidDownscale = 1; // 1 off; 2 or 4 to search the full frame shrunk by that factor then refine at full resolution
+
     static boolean debug = false;
     static boolean logImage = false;
    
@@ -368,6 +384,58 @@ public final class Main
     {
     }
 
+    /**
+     * Register the targeting for each camera by its name in frc.json.
+     * 
+     * To add a camera, add it to frc.json, write its TargetSelection and TargetData classes,
+     * and register a CameraStage for it here.  A camera in frc.json without a CameraStage is
+     * started and streamed but not processed.
+     */
+    private static void registerCameraStages()
+    {
+        CameraStage<TargetDataB> turret = new CameraStage<>("Turret", "B", TargetSelectionB::new, TargetDataB::new);
+        turret.startCamera = startTurretCamera;
+        turret.createContours = createTurretContours;
+        turret.displayContours = displayTurretContours;
+        turret.contoursTitleLocation = new Point(100, 30);
+        turret.contoursTitleColor = new Scalar(100, 100, 255);
+        turret.workers = turretPipelineWorkers;
+        if (turretPipelineWorkers > 1 && turretRoiTracking)
+        {
+            // each worker has its own TargetSelectionB and tracker that would only see some of the frames
+            System.out.println(pId + " Turret ROI tracking turned off - it needs every frame in order and there are "
+                + turretPipelineWorkers + " pipeline workers");
+            turretRoiTracking = false;
+        }
+        turret.maxInFlight = turretPipelineMaxInFlight;
+        turret.exposure = 10; // once in awhile the exposure isn't set on camera start up so make sure
+        // No Shuffleboard Widget to display automatically Turret Camera
+        // It can still be displayed manually by dragging from Sources to the Shuffleboard display area
+        // Normally this camera shows only the reflected tape rotated 90 deg - confusing to humans
+        // turret.widget = new CameraWidget();
+        // turret.widget.setLocation(0, 20, 13, 13);
+        // turret.widget.setProperties(false, "white", false, "NONE");
+        registerCameraStage(turret);
+
+        CameraStage<TargetDataE> intake = new CameraStage<>("Intake", "E", TargetSelectionE::new, TargetDataE::new);
+        intake.startCamera = startIntakeCamera;
+        intake.createContours = createIntakeContours;
+        intake.displayContours = displayIntakeContours;
+        intake.contoursTitleLocation = new Point(25, 30);
+        intake.contoursTitleColor = new Scalar(255, 255, 0);
+        intake.widget = new CameraWidget();
+        intake.widget.setLocation(0, 0, 17, 20);
+        intake.widget.setProperties(false, "white", false, "NONE");
+        registerCameraStage(intake);
+    }
+
+    private static void registerCameraStage(CameraStage<?> stage)
+    {
+        // assume each camera name appears only once in the list - that is a requirement
+        System.out.println(pId + " Registering " + stage);
+        cameraStages.put(stage.name.toLowerCase(), stage);
+    }
+
     /**
      * Report parse error.
      */
@@ -664,12 +732,18 @@ public final class Main
                 // mkdir in case they don't exist. Don't bother checking for existence - just do
                 // it.
 
+                StringBuilder directories = new StringBuilder();
+                for (CameraStage<?> stage : cameraStages.values())
+                {
+                    directories.append(" ").append(stage.getImageDirectory()).append(" ").append(stage.getRawImageDirectory());
+                }
+
                 command.add("bash");
                 command.add("-c");
-                command.add("sudo mkdir /mnt/usb/B /mnt/usb/BR /mnt/usb/E /mnt/usb/ER");
+                command.add("sudo mkdir" + directories);
 
                 // execute command
-                System.out.println(pId + " Run mkdir B BR E ER command");
+                System.out.println(pId + " Run mkdir" + directories + " command");
                 ProcessBuilder pb2 = new ProcessBuilder(command);
                 Process process2 = pb2.start();
                 int errCode2 = process2.waitFor();
@@ -814,7 +888,6 @@ public final class Main
         }
 
         tabLock = new Object(); // synchronizing lock between this program and the related Shuffleboard tab
-        tapeLock = new Object(); // synchronizing lock between ImageOperator and TargetSelectionB
        
         // sleep needed on RPi 4 before datagram address resolution and also RPi 3 before mount
         // and maybe for some other unknown reason after a power on boot up of the RPi 4
@@ -824,7 +897,9 @@ public final class Main
         //     e.printStackTrace();
         // }
 
-        sendMessage = new UdpSend(5800, UDPreceiverName);
+        sendMessage = new UdpSend(5800, UDPreceiverName, coalesceMessagesMillis);
+        sendMessageThread = new Thread(sendMessage, "4237UDPsend");
+        sendMessageThread.start();
         
         if(runTestUDPreceiver)
         {
@@ -854,6 +929,8 @@ public final class Main
             cameraTab = Shuffleboard.getTab("Camera");
         }
  
+        registerCameraStages();
+
         // If requested, see if USB Flash Drive mounted and if so, log the images
         if (logImage) mountUSBFlashDrive(); 
 
@@ -865,48 +942,38 @@ public final class Main
             // assume each camera name appears only once in the list - that is a requirement
             System.out.println(pId + " " + config.name + " in list of cameras");
 
-            if (config.name.equalsIgnoreCase("Turret") && startTurretCamera)
+            CameraStage<?> stage = cameraStages.get(config.name.toLowerCase());
+
+            if (stage == null)
             {
-                System.out.println(pId + " Starting Turret camera as TurretB");
-
-                cameraB = startCamera(config); //start the turret camera
-                VideoSource Bcamera = cameraB;
-                // Widget in Shuffleboard Tab
-                CameraWidget cw = new CameraWidget();
-                cw.name = config.name;
-                cw.setLocation(0, 20, 13, 13);
-                cw.setProperties(false, "white", false, "NONE");
-                // comment or not this Shuffleboard Widget to display automatically Turret Camera
-                // It can still be displayed manually by dragging from Sources to the Shuffleboard display area
-                // Normally this camera shows only the reflected tape rotated 90 deg - confusing to humans
-                // createCameraShuffleboardWidget(Bcamera, cw);                
-                if( createTurretContours ) {
-                    cpB = new CameraProcessB(Bcamera, config); // start turret targeting contour process
-                    visionThreadB = new Thread(cpB, "4237TurretB Camera");
-                    visionThreadB.start(); 
-                }
+                System.out.println(pId + " No targeting registered for camera " + config.name + "; streaming it only");
+                startCamera(config);
             }
-            else if (config.name.equalsIgnoreCase("Intake") && startIntakeCamera)
+            else if (stage.startCamera)
             {
-                System.out.println(pId + " Starting Intake camera as IntakeE");
-
-                cameraE = startCamera(config); // start the intake camera
-                VideoSource Ecamera = cameraE;
-                // Widget in Shuffleboard Tab
-                CameraWidget cw = new CameraWidget();
-                cw.name = config.name;
-                cw.setLocation(0, 0, 17, 20);
-                cw.setProperties(false, "white", false, "NONE");
-                createCameraShuffleboardWidget(Ecamera, cw);
-                if( createIntakeContours ) {
-                    cpE = new CameraProcessE(Ecamera, config); // start intake targeting contour process
-                    visionThreadE = new Thread(cpE, "4237IntakeECamera");
-                    visionThreadE.start();
+                System.out.println(pId + " Starting " + config.name + " camera as " + config.name + stage.id);
+
+                UsbCamera camera = startCamera(config);
+
+                if (stage.widget != null)
+                {
+                    // Widget in Shuffleboard Tab
+                    stage.widget.name = config.name;
+                    createCameraShuffleboardWidget(camera, stage.widget);
+                }
+
+                if (stage.createContours)
+                {
+                    CameraProcess cameraProcess = new CameraProcess(camera, config, stage); // start targeting contour process
+                    Thread visionThread = new Thread(cameraProcess, "4237" + config.name + stage.id + "Camera");
+                    cameraProcesses.add(cameraProcess);
+                    visionThreads.add(visionThread);
+                    visionThread.start();
                 }
             }
             else
             {
-                System.out.println(pId + " Unknown camera in cameraConfigs; camera may be disabled in code or misspelled in config file. " + config.name);
+                System.out.println(pId + " Camera disabled in code " + config.name);
             }
         }
         
@@ -977,9 +1044,11 @@ public final class Main
                 
                 if(!sendMessage.isConnected()) // if using an IP number address, this will not fail; only checking name resolution
                     {
-                    System.out.println(pId + " Warning - robot driving messages not being sent anywhere - trying to connect");
-                    sendMessage.Connect(); // keep trying to connect if it isn't
+                    System.out.println(pId + " Warning - robot driving messages not being sent anywhere - UdpSend keeps trying to connect");
                     }
+
+                if (displayPipelineStatistics)
+                    System.out.println(pId + " UDP send " + sendMessage);
  
                 calibrateAngle = calibrate.getDouble(0.0); // get the camera calibration from the Shuffleboard
 
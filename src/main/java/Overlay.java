@@ -0,0 +1,357 @@
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * What a TargetSelection found in a frame, recorded for display instead of drawn on the frame.
+ *
+ * The targeting records the lines, boxes, text and so on it wants shown with the same arguments it
+ * would give Imgproc; that only appends a few numbers to arrays.  The AnnotationProcess draws them
+ * later on its own copy of the frame on its own thread so the targeting never waits for drawing.
+ *
+ * When nobody is watching the contours stream and images aren't being logged the overlay is disabled
+ * and recording does nothing, so the targeting takes the same time however much display is enabled.
+ *
+ * The arrays grow to the most ever recorded in a frame and are reused.  Not thread safe - the
+ * PipelineProcess hands each overlay between the targeting and the annotation threads.
+ */
+public class Overlay
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final int LINE = 0;
+    private static final int RECTANGLE = 1;
+    private static final int CIRCLE = 2;
+    private static final int ARROW = 3;
+    private static final int TEXT = 4;
+    private static final int MARKER = 5;
+    private static final int POLYGON = 6;
+    private static final int HISTOGRAM = 7;
+
+    private boolean enabled = false;
+
+    private int[] ops = new int[64];
+    private int opCount = 0;
+    private double[] args = new double[1024];
+    private int argCount = 0;
+    private List<String> texts = new ArrayList<>();
+    private int textCount = 0;
+
+    // workspace for drawing
+    private int[] points = new int[128];
+    private MatOfPoint polygon = new MatOfPoint();
+    private List<MatOfPoint> polygons = new ArrayList<>();
+    private Mat histogramHSV = new Mat(); // HSV of the histogram region taken before any drawing
+    private Mat histogramMask = new Mat();
+
+    /**
+     * Forget everything recorded and start a new frame.
+     *
+     * @param enabled false to ignore everything recorded for this frame
+     */
+    public void clear(boolean enabled)
+    {
+        this.enabled = enabled;
+        opCount = 0;
+        argCount = 0;
+        textCount = 0;
+    }
+
+    /**
+     * @return true if what's recorded will be drawn; false if recording does nothing
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @return true if nothing has been recorded for this frame
+     */
+    public boolean isEmpty()
+    {
+        return opCount == 0;
+    }
+
+    public void line(Point pt1, Point pt2, Scalar color, int thickness, int lineType)
+    {
+        if (!enabled) return;
+        op(LINE);
+        arg(pt1.x); arg(pt1.y); arg(pt2.x); arg(pt2.y); color(color); arg(thickness); arg(lineType);
+    }
+
+    public void rectangle(Point pt1, Point pt2, Scalar color, int thickness, int lineType)
+    {
+        if (!enabled) return;
+        op(RECTANGLE);
+        arg(pt1.x); arg(pt1.y); arg(pt2.x); arg(pt2.y); color(color); arg(thickness); arg(lineType);
+    }
+
+    public void circle(Point center, int radius, Scalar color, int thickness)
+    {
+        if (!enabled) return;
+        op(CIRCLE);
+        arg(center.x); arg(center.y); arg(radius); color(color); arg(thickness);
+    }
+
+    public void arrowedLine(Point pt1, Point pt2, Scalar color, int thickness, double tipLength)
+    {
+        if (!enabled) return;
+        op(ARROW);
+        arg(pt1.x); arg(pt1.y); arg(pt2.x); arg(pt2.y); color(color); arg(thickness); arg(tipLength);
+    }
+
+    public void putText(String text, Point org, int fontFace, double fontScale, Scalar color, int thickness)
+    {
+        if (!enabled) return;
+        op(TEXT);
+        arg(org.x); arg(org.y); arg(fontFace); arg(fontScale); color(color); arg(thickness);
+        if (textCount < texts.size())
+        {
+            texts.set(textCount, text);
+        }
+        else
+        {
+            texts.add(text);
+        }
+        textCount++;
+    }
+
+    public void drawMarker(Point position, Scalar color, int markerType, int markerSize)
+    {
+        if (!enabled) return;
+        op(MARKER);
+        arg(position.x); arg(position.y); color(color); arg(markerType); arg(markerSize);
+    }
+
+    /**
+     * The same as Imgproc.drawContours.
+     *
+     * @param contours the contours
+     * @param contourIdx the one to draw or -1 for all of them
+     * @param color color
+     * @param thickness line thickness or -1 for filled
+     */
+    public void drawContours(List<MatOfPoint> contours, int contourIdx, Scalar color, int thickness)
+    {
+        if (!enabled) return;
+        for (int idx = contourIdx < 0 ? 0 : contourIdx; idx < (contourIdx < 0 ? contours.size() : contourIdx + 1); idx++)
+        {
+            op(POLYGON);
+            color(color);
+            arg(thickness);
+            contour(contours.get(idx));
+        }
+    }
+
+    /**
+     * The HSV histograms of the pixels inside a contour drawn in the corner of the frame.  Only the
+     * first one recorded in a frame is drawn since they'd all be drawn in the same place.
+     *
+     * @param contour the contour
+     * @param region the contour's bounding box
+     */
+    public void histogram(MatOfPoint contour, Rect region)
+    {
+        if (!enabled) return;
+        op(HISTOGRAM);
+        arg(region.x); arg(region.y); arg(region.width); arg(region.height);
+        contour(contour);
+    }
+
+    private void op(int op)
+    {
+        if (opCount == ops.length)
+        {
+            int[] more = new int[2 * ops.length];
+            System.arraycopy(ops, 0, more, 0, opCount);
+            ops = more;
+        }
+        ops[opCount++] = op;
+    }
+
+    private void arg(double arg)
+    {
+        if (argCount == args.length)
+        {
+            double[] more = new double[2 * args.length];
+            System.arraycopy(args, 0, more, 0, argCount);
+            args = more;
+        }
+        args[argCount++] = arg;
+    }
+
+    private void color(Scalar color)
+    {
+        arg(color.val[0]); arg(color.val[1]); arg(color.val[2]);
+    }
+
+    private void contour(MatOfPoint contour)
+    {
+        int count = contour.rows();
+        if (points.length < 2 * count)
+        {
+            points = new int[4 * count];
+        }
+        contour.get(0, 0, points); // all the points in one call
+        arg(count);
+        for (int idx = 0; idx < 2 * count; idx++)
+        {
+            arg(points[idx]);
+        }
+    }
+
+    /**
+     * Draw everything recorded on a frame in the order it was recorded.
+     *
+     * @param mat the frame; histograms are of its pixels before anything is drawn
+     * @param hist samples and draws the histogram; it keeps the last sample to draw between samples
+     * @return true if the histogram was sampled from this frame
+     */
+    public boolean draw(Mat mat, Hist hist)
+    {
+        // the histogram is of the image, not the drawing, so take its pixels first
+        boolean sampled = false;
+        for (int op = 0, arg = 0; op < opCount; op++)
+        {
+            if (ops[op] == HISTOGRAM)
+            {
+                if (hist.isTimeToSample())
+                {
+                    takeHistogramRegion(mat, arg);
+                    hist.sample(histogramHSV, histogramMask, new String[]{"H", "S", "V"});
+                    sampled = true;
+                }
+                break;
+            }
+            arg = skip(ops[op], arg);
+        }
+
+        boolean histogramDrawn = false;
+        int text = 0;
+        int a = 0;
+        for (int op = 0; op < opCount; op++)
+        {
+            switch (ops[op])
+            {
+            case LINE:
+                Imgproc.line(mat, new Point(args[a], args[a + 1]), new Point(args[a + 2], args[a + 3]), color(a + 4),
+                    (int) args[a + 7], (int) args[a + 8], 0);
+                break;
+            case RECTANGLE:
+                Imgproc.rectangle(mat, new Point(args[a], args[a + 1]), new Point(args[a + 2], args[a + 3]), color(a + 4),
+                    (int) args[a + 7], (int) args[a + 8], 0);
+                break;
+            case CIRCLE:
+                Imgproc.circle(mat, new Point(args[a], args[a + 1]), (int) args[a + 2], color(a + 3), (int) args[a + 6]);
+                break;
+            case ARROW:
+                Imgproc.arrowedLine(mat, new Point(args[a], args[a + 1]), new Point(args[a + 2], args[a + 3]), color(a + 4),
+                    (int) args[a + 7], Imgproc.LINE_8, 0, args[a + 8]);
+                break;
+            case TEXT:
+                Imgproc.putText(mat, texts.get(text++), new Point(args[a], args[a + 1]), (int) args[a + 2], args[a + 3],
+                    color(a + 4), (int) args[a + 7]);
+                break;
+            case MARKER:
+                Imgproc.drawMarker(mat, new Point(args[a], args[a + 1]), color(a + 2), (int) args[a + 5], (int) args[a + 6], 1, Imgproc.LINE_8);
+                break;
+            case POLYGON:
+                polygon(a + 4);
+                if (args[a + 3] < 0)
+                {
+                    Imgproc.fillPoly(mat, polygons, color(a));
+                }
+                else
+                {
+                    Imgproc.polylines(mat, polygons, true, color(a), (int) args[a + 3]);
+                }
+                break;
+            case HISTOGRAM:
+                if (!histogramDrawn)
+                {
+                    hist.display(mat);
+                    histogramDrawn = true;
+                }
+                break;
+            default:
+                break;
+            }
+            a = skip(ops[op], a);
+        }
+
+        return sampled;
+    }
+
+    private void takeHistogramRegion(Mat mat, int a)
+    {
+        Rect region = new Rect((int) args[a], (int) args[a + 1], (int) args[a + 2], (int) args[a + 3]);
+        Mat bgr = mat.submat(region);
+        Imgproc.cvtColor(bgr, histogramHSV, Imgproc.COLOR_BGR2HSV);
+        bgr.release();
+
+        // mask of the pixels inside the contour, relative to the region
+        histogramMask.create(region.height, region.width, CvType.CV_8UC1);
+        histogramMask.setTo(new Scalar(0));
+        polygon(a + 4);
+        Imgproc.fillPoly(histogramMask, polygons, new Scalar(255), Imgproc.LINE_8, 0, new Point(-region.x, -region.y));
+    }
+
+    /**
+     * Load a recorded contour into the polygon list for drawing.
+     */
+    private void polygon(int a)
+    {
+        int count = (int) args[a];
+        if (points.length < 2 * count)
+        {
+            points = new int[4 * count];
+        }
+        for (int idx = 0; idx < 2 * count; idx++)
+        {
+            points[idx] = (int) args[a + 1 + idx];
+        }
+        polygon.create(count, 1, CvType.CV_32SC2);
+        polygon.put(0, 0, points);
+        polygons.clear();
+        polygons.add(polygon);
+    }
+
+    private Scalar color(int a)
+    {
+        return new Scalar(args[a], args[a + 1], args[a + 2]);
+    }
+
+    /**
+     * @return the index of the next op's arguments
+     */
+    private int skip(int op, int a)
+    {
+        switch (op)
+        {
+        case LINE:
+        case RECTANGLE:
+        case ARROW:
+            return a + 9;
+        case CIRCLE:
+        case MARKER:
+            return a + 7;
+        case TEXT:
+            return a + 8;
+        case POLYGON:
+            return a + 4 + 1 + 2 * (int) args[a + 4];
+        case HISTOGRAM:
+            return a + 4 + 1 + 2 * (int) args[a + 4];
+        default:
+            return a;
+        }
+    }
+}
@@ -0,0 +1,562 @@
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpiutil.WPIUtilJNI;
+
+import visionClient.TargetDataExchange;
+import visionClient.TargetMessage;
+
+/**
+ * This class creates a camera thread to process camera frames. DO NOT MODIFY
+ * this class. The user must create a new GripPipeline class using GRIP, modify
+ * the TargetData class, and modify the TargetSelection class for the camera
+ * and register them as a CameraStage in Main.
+ * 
+ * The same class runs the targeting for every camera; the CameraStage supplies
+ * the camera's own TargetSelection and TargetData.
+ * 
+ * @author FRC Team 4237
+ * @version 2019.01.28.14.20
+ */
+public class PipelineProcess<T extends TargetData<T>> implements Runnable
+{
+	static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+	private final String pId; // such as [BPipelineProcess]
+
+	// This object is used to call its process() method if a target is found in the
+	// new camera frame.
+	// The process() method must be created by the user.
+	private TargetSelection<T> targetSelection;
+
+	// This object is used to hand the current target data to other threads without a lock.
+	private TargetDataExchange<T> currentTargetData;
+
+	// This object is used to store the next target data.
+	private T nextTargetData;
+
+	// This object describes the camera's targeting - names, log directories and display
+	private CameraStage<T> stage;
+
+	// the binary or text message to the roboRIO; reused and posted to the mailbox the UdpSend thread sends from
+	private final ByteBuffer message = ByteBuffer.allocate(Main.MAXIMUM_MESSAGE_LENGTH);
+	private UdpSend.Mailbox mailbox;
+	private int messageSequence = 0;
+	private ChangeSuppressor<T> suppressor; // if Main.suppressUnchangedTargetData
+	private final TargetJsonWriter jsonMessage = new TargetJsonWriter(message);
+	private byte[] messagePrefix; // such as "Turret "
+
+	// This object is used to capture frames from the camera.
+	// The captured image is stored to a Mat
+	private CvSink inputStream;
+
+	// This object is used to get the camera frames from the camera process frame bus.
+	// The frames from the bus are shared with other subscribers so they are read-only; the targeting
+	// records what it wants drawn in an Overlay instead of drawing on them.
+	private FrameBus.Subscription cameraFrames;
+
+	// This object draws the overlays and sends the frames to the Dashboard and the image log on its own thread.
+	private AnnotationProcess annotationProcess;
+	private Thread annotationThread;
+
+	// This object is used to record what the targeting found in a frame for display.
+	private Overlay overlay;
+
+	// This field is used to determine if debugging information should be displayed.
+	// Use the setDebuggingEnabled() method to set this value.
+	private boolean debuggingEnabled = false;
+
+	// These fields are used to set the camera resolution and camera name.
+	// Use the set...() method to set these values.
+	private int cameraWidth;
+	private int cameraHeight;
+	private String cameraName;
+
+	private VideoSource camera;
+	private CameraProcess cameraProcess;
+
+	// These fields are used for the frame-parallel mode of more than one worker.
+	private List<Slot> slots = new ArrayList<>(); // frames in flight by frame number modulo the number of slots
+	private Semaphore slotsFree;
+	private BlockingQueue<Slot> work; // frames for the workers to process
+	private Object resequencerLock = new Object();
+	private int nextFrameNumber = 1; // frame number to be published next
+
+	// This object is used to measure the throughput and latency to compare single thread and frame-parallel modes.
+	private PipelineStatistics statistics;
+
+	protected PipelineProcess(CameraProcess cameraProcess, Main.CameraConfig cameraConfig, CameraStage<T> stage)
+	{
+		this.pId = "[" + stage.id + "PipelineProcess]";
+		this.stage = stage;
+		this.targetSelection = stage.targetSelection.get();
+		this.currentTargetData = new TargetDataExchange<>(stage.targetData.get());
+		this.nextTargetData = stage.targetData.get();
+		this.messagePrefix = (stage.name + " ").getBytes(StandardCharsets.US_ASCII);
+		this.mailbox = Main.sendMessage.openMailbox(stage.name);
+		this.suppressor = new ChangeSuppressor<>(stage.targetData.get(), Main.targetDataHeartbeatMillis);
+		this.cameraProcess = cameraProcess;
+		this.cameraName = cameraConfig.name;
+		this.cameraWidth = cameraConfig.width;
+		this.cameraHeight = cameraConfig.height;
+		cameraFrames = cameraProcess.cameraFrames.subscribe(pId);
+	}
+
+	/**
+	 * This method sets the field to display debugging information.
+	 * 
+	 * @param enabled
+	 *                    Set to true to display debugging information.
+	 */
+	public void setDebuggingEnabled(boolean enabled)
+	{
+		debuggingEnabled = enabled;
+		targetSelection.setDebuggingEnabled(enabled);
+	}
+
+	/**
+	 * This method sets the camera resolution.
+	 */
+	public void setCameraResolution(int width, int height)
+	{
+		cameraWidth = width;
+		cameraHeight = height;
+	}
+
+	/**
+	 * This method sets the camera name.
+	 */
+	public void setCameraName(String name)
+	{
+		cameraName = name;
+	}
+
+	// TODO: write the method
+	public void setExposure(int exposure)
+	{
+
+	}
+
+	// TODO: write the method
+	public void setAutoExposure(boolean enabled)
+	{
+
+	}
+
+	/**
+	 * This method is the ONLY method that can be used outside of the package to get
+	 * the target data.  Copy it out with read() into the caller's own target data.
+	 * 
+	 * @return The target data set based on the GripPipeline and TargetSelection.
+	 */
+	public TargetDataExchange<T> getTargetData()
+	{
+		return currentTargetData;
+	}
+
+	/**
+	 * This method is required in order to run this class as a thread, it is part of
+	 * the Runnable interface. The start() method outside this class, calls this
+	 * run() method to run as a separate thread.
+	 */
+	public void run()
+	{
+		System.out.println(pId + " Starting run");
+
+		this.setDebuggingEnabled(Main.debug);
+
+		// Set up the input stream to get frames from the camera.
+		// inputStream = CameraServer.getInstance().getVideo();
+		inputStream = new CvSink("cvsink");
+		inputStream.setSource(camera);
+
+		// The drawing runs below the targeting's priority so it never slows the target data.
+		annotationProcess = new AnnotationProcess(stage, cameraWidth, cameraHeight);
+		overlay = annotationProcess.takeOverlay();
+		annotationThread = new Thread(annotationProcess, "4237" + stage.id + "annotation");
+		annotationThread.setPriority(Math.max(Thread.MIN_PRIORITY, Thread.currentThread().getPriority() - 2));
+		annotationThread.start();
+
+        // //////////////////
+        // // Widget in Shuffleboard Tab
+		// Map<String, Object> mapVideo = new HashMap<String, Object>();
+		// mapVideo.put("Show crosshair", false);
+		// mapVideo.put("Show controls", false);
+
+		// synchronized(Main.tabLock)
+		// {
+		// Main.cameraTab.add(stage.name + "Contours", outputStream)
+		// .withWidget(BuiltInWidgets.kCameraStream)
+		// .withProperties(mapVideo)
+		// //.withSize(12, 8)
+		// //.withPosition(1, 2)
+		// ;
+		//
+		// Shuffleboard.update();
+ 		// }
+        // //////////////////
+
+		statistics = new PipelineStatistics(pId, stage.workers);
+
+		if (stage.workers > 1)
+		{
+			runWorkers(); // frame-parallel
+		}
+		else
+		{
+			runSingleThread();
+		}
+
+		// The thread loop was interrupted so reset the target data.
+		nextTargetData.reset();
+
+		// The target data is ONLY written from publish() and here after the thread
+		// loop is terminated.
+		currentTargetData.write(nextTargetData);
+
+		annotationThread.interrupt();
+		try
+		{
+			annotationThread.join();
+		}
+		catch (InterruptedException e)
+		{
+		}
+
+		System.out.println(pId + " " + statistics.report());
+		System.out.println(pId + " Camera Frame Grab Interrupted and Ended Thread");
+	}
+
+	/**
+	 * The normal thread loop - process each frame on this thread.
+	 */
+	private void runSingleThread()
+	{
+		// This variable will be used to time each iteration of the thread loop.
+		double loopTotalTime = -999.0;
+		double loopTargetTime = -999.0;
+		double loopWaitTime = -999.0;
+
+		// This is the thread loop. It can be stopped by calling the interrupt() method.
+		while (!Thread.interrupted())
+		{
+			if (debuggingEnabled)
+			{
+				loopTotalTime = Timer.getFPGATimestamp();
+			}
+
+			// Reset the next target data and bump up the frame number
+			nextTargetData.reset();
+			nextTargetData.incrFrameNumber();
+
+			// Tell the input stream to grab a frame from the camera and store it to the
+			// mat.
+			// Check if there was an error with the frame grab.
+			if (debuggingEnabled)
+			{
+				loopWaitTime = Timer.getFPGATimestamp();
+			}
+
+			Frame frame = cameraFrames.take(); // newest frame; skip any older ones
+
+			long frameSequence = 0; // camera frame number for the image log file names matching the raw image log
+			long takenTime = System.nanoTime();
+
+			if (frame != null)
+			{
+				frameSequence = frame.getSequence();
+				nextTargetData.setCaptureTime(frame.getCaptureTime());
+			}
+
+			if (debuggingEnabled)
+			{
+				loopWaitTime = Timer.getFPGATimestamp() - loopWaitTime;
+			}
+
+			if (frame == null) // threads start at different times so skip problems that might happen at the beginning
+			{
+				System.out.println(pId + " Skipping null mat");
+				continue;
+			}
+			
+			if (frame.getMat().empty()) // threads start at different times so skip problems that might happen at the beginning
+			{
+				System.out.println(pId + " Skipping empty mat");
+				frame.release();
+				continue;
+			}
+
+			// Scaling if needed to reduce Ethernet load might go here
+			// input mat must not be output mat
+			// Imgproc.resize(mat, differentmat, new Size(), 0.8, 0.8, Imgproc.INTER_AREA);
+
+			// The raw camera images are logged by the ImageLogger subscriber to the camera frames.
+
+			// Call the process() method that was created by the user to process the camera
+			// frame.
+			if (debuggingEnabled)
+			{
+				loopTargetTime = Timer.getFPGATimestamp();
+			}
+
+			// the targeting only reads the shared frame; what it finds to display goes in the overlay
+			overlay.clear(annotationProcess.isWanted());
+			targetSelection.process(frame.getMat(), nextTargetData, overlay);
+
+			nextTargetData.setProcessedTime(WPIUtilJNI.now());
+
+			long processTime = System.nanoTime() - takenTime;
+
+			if (debuggingEnabled)
+			{
+				loopTargetTime = Timer.getFPGATimestamp() - loopTargetTime;
+			}
+
+			overlay = publish(nextTargetData, frame, overlay, frameSequence, takenTime, processTime);
+			frame.release();
+
+			if (debuggingEnabled)
+			{
+				loopTotalTime = Timer.getFPGATimestamp() - loopTotalTime;
+				System.out.format("%s %6.2f FPS, loop time %5.3f, target time %5.3f, image wait time %5.3f, skipped frames %d\n", pId, 1.0/loopTotalTime,
+				 loopTotalTime,	loopTargetTime, loopWaitTime, cameraFrames.getFramesSkipped());
+			}
+		} // End of the thread loop
+	}
+
+	/**
+	 * Frame-parallel thread loop - hand successive frames to the worker threads.
+	 * 
+	 * Each worker has its own TargetSelection (and GRIP pipeline) so they don't share any image
+	 * processing state.  Each frame in flight has a slot with its own target data and overlay so the
+	 * workers never wait for each other; the slot number is the frame number modulo the number of slots.
+	 * The results are published in frame number order by whichever worker finishes the oldest frame.
+	 * 
+	 * When all the slots are in flight this thread waits and the frame bus drops the frames not taken.
+	 */
+	private void runWorkers()
+	{
+		System.out.println(pId + " Starting " + stage.workers + " workers, " + stage.maxInFlight + " frames in flight");
+
+		for (int idx = 0; idx < stage.maxInFlight; idx++)
+		{
+			slots.add(new Slot());
+		}
+
+		slotsFree = new Semaphore(stage.maxInFlight);
+		work = new ArrayBlockingQueue<>(stage.maxInFlight);
+
+		List<Thread> workers = new ArrayList<>();
+		for (int idx = 0; idx < stage.workers; idx++)
+		{
+			Thread worker = new Thread(new Worker(), "4237" + stage.id + "pipeline" + idx);
+			workers.add(worker);
+			worker.start();
+		}
+
+		int frameNumber = 0;
+
+		// This is the thread loop. It can be stopped by calling the interrupt() method.
+		try
+		{
+			while (!Thread.interrupted())
+			{
+				slotsFree.acquire(); // wait for the oldest frame to be published if all are in flight
+
+				Frame frame = cameraFrames.take(); // newest frame; skip any older ones
+
+				if (frame == null) // interrupted
+				{
+					break;
+				}
+
+				frameNumber++;
+				Slot slot = slots.get(frameNumber % slots.size());
+				slot.frame = frame;
+				slot.frameNumber = frameNumber;
+				slot.takenTime = System.nanoTime();
+				slot.targetData.reset();
+				slot.targetData.setFrameNumber(frameNumber);
+
+				work.put(slot);
+			}
+		}
+		catch (InterruptedException e)
+		{
+		}
+
+		for (Thread worker : workers)
+		{
+			worker.interrupt();
+		}
+
+		for (Thread worker : workers)
+		{
+			try
+			{
+				worker.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		for (Slot slot : slots)
+		{
+			if (slot.frame != null)
+			{
+				slot.frame.release();
+			}
+			annotationProcess.giveBack(slot.overlay);
+		}
+	}
+
+	/**
+	 * Frame-parallel worker thread - process the frames handed out by runWorkers().
+	 */
+	private class Worker implements Runnable
+	{
+		// This worker's own TargetSelection so the workers don't share image processing state.
+		private TargetSelection<T> targetSelection = stage.targetSelection.get();
+
+		public void run()
+		{
+			targetSelection.setDebuggingEnabled(debuggingEnabled);
+
+			while (!Thread.interrupted())
+			{
+				Slot slot;
+				try
+				{
+					slot = work.take();
+				}
+				catch (InterruptedException e)
+				{
+					break;
+				}
+
+				slot.frameSequence = slot.frame.getSequence();
+				slot.targetData.setCaptureTime(slot.frame.getCaptureTime());
+
+				// the targeting only reads the shared frame; what it finds to display goes in the overlay
+				slot.overlay.clear(annotationProcess.isWanted());
+				targetSelection.process(slot.frame.getMat(), slot.targetData, slot.overlay);
+
+				slot.targetData.setProcessedTime(WPIUtilJNI.now());
+
+				slot.processTime = System.nanoTime() - slot.takenTime;
+
+				publishInOrder(slot);
+			}
+		}
+	}
+
+	/**
+	 * A frame in flight in the frame-parallel mode and its results.
+	 */
+	private class Slot
+	{
+		private T targetData = stage.targetData.get();
+		private Overlay overlay = annotationProcess.takeOverlay();
+
+		private Frame frame; // until published
+		private int frameNumber;
+		private long frameSequence;
+		private long takenTime;
+		private long processTime;
+		private boolean done; // processed but not yet published
+	}
+
+	/**
+	 * Publish the results of the frames processed by the workers in frame number order.
+	 * The oldest frame in flight holds up the publishing of any newer ones that finish before it.
+	 * 
+	 * @param slot the frame the worker finished
+	 */
+	private void publishInOrder(Slot slot)
+	{
+		synchronized (resequencerLock)
+		{
+			slot.done = true;
+
+			while (true)
+			{
+				Slot next = slots.get((nextFrameNumber) % slots.size());
+				if (!next.done || next.frameNumber != nextFrameNumber)
+				{
+					break;
+				}
+
+				next.overlay = publish(next.targetData, next.frame, next.overlay, next.frameSequence, next.takenTime, next.processTime);
+				next.frame.release();
+				next.frame = null;
+
+				next.done = false;
+				nextFrameNumber++;
+				slotsFree.release();
+			}
+		}
+	}
+
+	/**
+	 * Make the target data for a frame current and send it to the roboRIO, then hand the frame
+	 * to the annotation process to be drawn, logged and displayed.
+	 * 
+	 * @param targetData the target data found in the frame
+	 * @param frame the frame processed; still owned by the caller
+	 * @param overlay what the targeting found to display in the frame
+	 * @param frameSequence camera frame number for the image log file name
+	 * @param takenTime System.nanoTime() when the frame was taken from the camera frames
+	 * @param processTime nanoseconds taken to process the frame
+	 * @return the overlay to use for the next frame
+	 */
+	private Overlay publish(T targetData, Frame frame, Overlay overlay, long frameSequence, long takenTime, long processTime)
+	{
+		targetData.setSendTime(WPIUtilJNI.now());
+
+		// The target data is ONLY written here and after the thread loop is terminated.
+		currentTargetData.write(targetData); // sets currentTargetData from nextTargetData
+
+		// A steady target isn't sent every frame if suppressing; the sequence number counts only the messages sent.
+		if (!Main.suppressUnchangedTargetData || suppressor.isToBeSent(targetData))
+		{
+			if (Main.sendBinaryTargetData)
+			{
+				TargetMessage.encode(message, (byte) stage.id.charAt(0), ++messageSequence, targetData);
+			}
+			else
+			{
+				message.clear();
+				message.put(messagePrefix);
+				targetData.writeJson(jsonMessage.reset());
+				message.flip();
+			}
+			mailbox.post(message);
+		}
+
+		// The image log and the contours stream are drawn on another thread.
+		if (overlay.isEnabled())
+		{
+			overlay = annotationProcess.offer(frame, overlay, frameSequence);
+		}
+
+		statistics.add(System.nanoTime() - takenTime, processTime);
+
+		if (Main.displayPipelineStatistics && statistics.isTimeToReport())
+		{
+			System.out.println(pId + " " + statistics.report() + ", skipped frames " + cameraFrames.getFramesSkipped()
+				+ ", annotation " + annotationProcess + (Main.suppressUnchangedTargetData ? ", " + suppressor : ""));
+		}
+
+		return overlay;
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Throughput and latency of a PipelineProcess to compare the single thread and frame-parallel modes.
+ * 
+ * Latency is from when the pipeline took the frame from the camera frames until its target data
+ * was sent.  Process time is the part of that spent copying and processing the frame; the rest is
+ * waiting for a worker or for an older frame to be published first.
+ * 
+ * Not thread safe - only call from one thread at a time (PipelineProcess.publish()).
+ */
+public class PipelineStatistics
+{
+    private static final double REPORT_INTERVAL = 10.; // seconds between reports
+
+    private final String pId;
+    private final int workers;
+
+    private long intervalStart = System.nanoTime();
+    private long frames = 0;
+    private long latencySum = 0;
+    private long latencyMax = 0;
+    private long processTimeSum = 0;
+
+    private long totalFrames = 0;
+
+    /**
+     * @param pId name of the pipeline for messages
+     * @param workers number of worker threads; 1 for single thread
+     */
+    public PipelineStatistics(String pId, int workers)
+    {
+        this.pId = pId;
+        this.workers = workers;
+    }
+
+    /**
+     * Add the times for one published frame.
+     * 
+     * @param latency nanoseconds from taking the frame until its target data was sent
+     * @param processTime nanoseconds spent copying and processing the frame
+     */
+    public void add(long latency, long processTime)
+    {
+        frames++;
+        totalFrames++;
+        latencySum += latency;
+        latencyMax = Math.max(latencyMax, latency);
+        processTimeSum += processTime;
+    }
+
+    /**
+     * @return true if it's been long enough since the last report
+     */
+    public boolean isTimeToReport()
+    {
+        return System.nanoTime() - intervalStart >= (long)(REPORT_INTERVAL * 1.e9);
+    }
+
+    /**
+     * Summarize the frames since the last report and start a new interval.
+     * 
+     * @return the summary
+     */
+    public String report()
+    {
+        long now = System.nanoTime();
+        double seconds = (now - intervalStart) / 1.e9;
+        double count = Math.max(frames, 1);
+
+        String report = String.format("%d worker%s: %6.2f FPS, latency avg %6.1f ms max %6.1f ms, process avg %6.1f ms, wait avg %6.1f ms, %d frames",
+            workers, workers == 1 ? "" : "s", frames / seconds,
+            latencySum / count / 1.e6, latencyMax / 1.e6, processTimeSum / count / 1.e6,
+            (latencySum - processTimeSum) / count / 1.e6, totalFrames);
+
+        intervalStart = now;
+        frames = 0;
+        latencySum = 0;
+        latencyMax = 0;
+        processTimeSum = 0;
+
+        return report;
+    }
+}
@@ -0,0 +1,323 @@
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Tracks the Power Cells seen by the intake camera from frame to frame.
+ *
+ * Each frame's detections (center and radius in pixels) are matched to the tracks by predicting where
+ * each tracked ball is now from its velocity and taking the closest pairs first.  A matched track is
+ * corrected by an alpha-beta filter - the position moves alpha of the way to the detection and the
+ * velocity by beta of the error per second.  A detection that matches no track starts a new track with
+ * a new id.  A track that isn't matched coasts along its velocity until it's missed too many frames.
+ *
+ * The tracks are kept in fixed arrays, largest (nearest) first.  Frames must be given in order so use
+ * one tracker with one pipeline worker.
+ *
+ * Not thread safe - one per TargetSelection.
+ */
+public class PowerCellTracker
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final double DEFAULT_FRAME_TIME = 1. / 30.; // seconds if the frames have no time
+    private static final double GATE_RADII = 2.5; // a detection can be this many radii from the prediction
+    private static final double MIN_GATE = 10.; // pixels
+
+    private final double alpha; // position correction 0 to 1
+    private final double beta; // velocity correction 0 to 1
+    private final int maxMisses; // frames a track coasts before it's dropped
+
+    private final int capacity;
+    private int count = 0;
+    private final int[] id;
+    private final double[] x;
+    private final double[] y;
+    private final double[] velocityX; // pixels per second
+    private final double[] velocityY;
+    private final double[] radius;
+    private final int[] age; // frames since the track started
+    private final int[] misses; // frames in a row not matched
+
+    private int nextId = 1;
+    private long lastTime = 0; // microseconds of the last frame
+
+    // workspace for matching
+    private final boolean[] trackMatched;
+    private boolean[] detectionMatched = new boolean[0];
+
+    /**
+     * @param capacity most balls tracked at once
+     * @param alpha position correction 0 to 1; larger follows the detections more closely
+     * @param beta velocity correction 0 to 1; larger responds faster to changes in speed
+     * @param maxMisses frames a ball can be missed before its track is dropped
+     */
+    public PowerCellTracker(int capacity, double alpha, double beta, int maxMisses)
+    {
+        this.capacity = capacity;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.maxMisses = maxMisses;
+
+        id = new int[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        radius = new double[capacity];
+        age = new int[capacity];
+        misses = new int[capacity];
+        trackMatched = new boolean[capacity];
+    }
+
+    /**
+     * Update the tracks with the balls detected in a frame.
+     *
+     * @param detectionX centers of the balls detected
+     * @param detectionY centers of the balls detected
+     * @param detectionRadius radii of the balls detected
+     * @param detections number of balls detected
+     * @param time frame time in microseconds; 0 if unknown
+     */
+    public void update(double[] detectionX, double[] detectionY, double[] detectionRadius, int detections, long time)
+    {
+        double dt = lastTime == 0 || time <= lastTime ? DEFAULT_FRAME_TIME : (time - lastTime) / 1.e6;
+        if (time != 0)
+        {
+            lastTime = time;
+        }
+
+        // predict where each ball is now
+        for (int track = 0; track < count; track++)
+        {
+            x[track] += velocityX[track] * dt;
+            y[track] += velocityY[track] * dt;
+            trackMatched[track] = false;
+        }
+
+        if (detectionMatched.length < detections)
+        {
+            detectionMatched = new boolean[detections];
+        }
+        for (int detection = 0; detection < detections; detection++)
+        {
+            detectionMatched[detection] = false;
+        }
+
+        // match the closest track and detection pairs first
+        while (true)
+        {
+            int bestTrack = -1;
+            int bestDetection = -1;
+            double bestDistance = Double.MAX_VALUE;
+            for (int track = 0; track < count; track++)
+            {
+                if (trackMatched[track]) continue;
+                double gate = Math.max(MIN_GATE, GATE_RADII * radius[track]);
+                for (int detection = 0; detection < detections; detection++)
+                {
+                    if (detectionMatched[detection]) continue;
+                    double distance = Math.hypot(detectionX[detection] - x[track], detectionY[detection] - y[track]);
+                    if (distance <= gate && distance < bestDistance)
+                    {
+                        bestDistance = distance;
+                        bestTrack = track;
+                        bestDetection = detection;
+                    }
+                }
+            }
+
+            if (bestTrack < 0)
+            {
+                break;
+            }
+
+            correct(bestTrack, detectionX[bestDetection], detectionY[bestDetection], detectionRadius[bestDetection], dt);
+            trackMatched[bestTrack] = true;
+            detectionMatched[bestDetection] = true;
+        }
+
+        // coast the tracks not seen and drop those missed too long
+        for (int track = count - 1; track >= 0; track--)
+        {
+            if (!trackMatched[track])
+            {
+                age[track]++;
+                if (++misses[track] > maxMisses)
+                {
+                    remove(track);
+                }
+            }
+        }
+
+        // start tracks for new balls, largest (nearest) first while there's room
+        while (count < capacity)
+        {
+            int largest = -1;
+            for (int detection = 0; detection < detections; detection++)
+            {
+                if (!detectionMatched[detection] && (largest < 0 || detectionRadius[detection] > detectionRadius[largest]))
+                {
+                    largest = detection;
+                }
+            }
+            if (largest < 0)
+            {
+                break;
+            }
+
+            detectionMatched[largest] = true;
+            id[count] = nextId++;
+            x[count] = detectionX[largest];
+            y[count] = detectionY[largest];
+            velocityX[count] = 0.;
+            velocityY[count] = 0.;
+            radius[count] = detectionRadius[largest];
+            age[count] = 1;
+            misses[count] = 0;
+            count++;
+        }
+
+        sortByRadius();
+    }
+
+    private void correct(int track, double measuredX, double measuredY, double measuredRadius, double dt)
+    {
+        double errorX = measuredX - x[track];
+        double errorY = measuredY - y[track];
+        x[track] += alpha * errorX;
+        y[track] += alpha * errorY;
+        velocityX[track] += beta * errorX / dt;
+        velocityY[track] += beta * errorY / dt;
+        radius[track] += alpha * (measuredRadius - radius[track]);
+        age[track]++;
+        misses[track] = 0;
+    }
+
+    private void remove(int track)
+    {
+        count--;
+        for (int idx = track; idx < count; idx++)
+        {
+            copy(idx + 1, idx);
+        }
+    }
+
+    private void copy(int from, int to)
+    {
+        id[to] = id[from];
+        x[to] = x[from];
+        y[to] = y[from];
+        velocityX[to] = velocityX[from];
+        velocityY[to] = velocityY[from];
+        radius[to] = radius[from];
+        age[to] = age[from];
+        misses[to] = misses[from];
+    }
+
+    private void swap(int a, int b)
+    {
+        int tempId = id[a]; id[a] = id[b]; id[b] = tempId;
+        double tempX = x[a]; x[a] = x[b]; x[b] = tempX;
+        double tempY = y[a]; y[a] = y[b]; y[b] = tempY;
+        double tempVelocityX = velocityX[a]; velocityX[a] = velocityX[b]; velocityX[b] = tempVelocityX;
+        double tempVelocityY = velocityY[a]; velocityY[a] = velocityY[b]; velocityY[b] = tempVelocityY;
+        double tempRadius = radius[a]; radius[a] = radius[b]; radius[b] = tempRadius;
+        int tempAge = age[a]; age[a] = age[b]; age[b] = tempAge;
+        int tempMisses = misses[a]; misses[a] = misses[b]; misses[b] = tempMisses;
+    }
+
+    private void sortByRadius()
+    {
+        // insertion sort - only a few tracks
+        for (int idx = 1; idx < count; idx++)
+        {
+            for (int j = idx; j > 0 && radius[j] > radius[j - 1]; j--)
+            {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    /**
+     * @return number of balls tracked; index the getters 0 (nearest) to count - 1
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    public int getId(int track)
+    {
+        return id[track];
+    }
+
+    /**
+     * @return center in pixels - as detected or predicted if missed this frame
+     */
+    public double getX(int track)
+    {
+        return x[track];
+    }
+
+    public double getY(int track)
+    {
+        return y[track];
+    }
+
+    /**
+     * @return pixels per second
+     */
+    public double getVelocityX(int track)
+    {
+        return velocityX[track];
+    }
+
+    public double getVelocityY(int track)
+    {
+        return velocityY[track];
+    }
+
+    public double getRadius(int track)
+    {
+        return radius[track];
+    }
+
+    /**
+     * @return frames since the ball was first seen
+     */
+    public int getAge(int track)
+    {
+        return age[track];
+    }
+
+    /**
+     * @return frames in a row the ball wasn't seen; 0 if seen in the last frame
+     */
+    public int getMisses(int track)
+    {
+        return misses[track];
+    }
+
+    /**
+     * Where the ball will be if it keeps moving the same.
+     *
+     * @param track index of the ball
+     * @param seconds time after the last frame
+     * @return predicted center x in pixels
+     */
+    public double predictX(int track, double seconds)
+    {
+        return x[track] + velocityX[track] * seconds;
+    }
+
+    /**
+     * Where the ball will be if it keeps moving the same.
+     *
+     * @param track index of the ball
+     * @param seconds time after the last frame
+     * @return predicted center y in pixels
+     */
+    public double predictY(int track, double seconds)
+    {
+        return y[track] + velocityY[track] * seconds;
+    }
+}
@@ -0,0 +1,101 @@
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * How closely the coarse-to-fine (pyramid) search matches searching the whole frame at full resolution.
+ *
+ * Each full resolution contour is matched to the pyramid contour whose bounding box overlaps it the most.
+ * The bounding box edges of the matches are compared since they are what angleToTurn and the
+ * pixelsToInchesTable distance are computed from.  Contours found only at full resolution are missed;
+ * those found only by the pyramid are extra.
+ *
+ * Not thread safe - one per TargetSelection.
+ */
+public class PyramidAccuracy
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private long frames = 0;
+    private long matched = 0;
+    private long missed = 0;
+    private long extra = 0;
+    private double edgeErrorSum = 0.; // pixels summed over the 4 edges of the matched bounding boxes
+    private int edgeErrorMax = 0;
+
+    /**
+     * Compare the contours of one frame.
+     *
+     * @param pyramid contours found by the coarse-to-fine search
+     * @param fullResolution contours found by searching the whole frame at full resolution
+     */
+    public void compare(List<MatOfPoint> pyramid, List<MatOfPoint> fullResolution)
+    {
+        frames++;
+
+        Rect[] pyramidBoxes = new Rect[pyramid.size()];
+        for (int idx = 0; idx < pyramidBoxes.length; idx++)
+        {
+            pyramidBoxes[idx] = Imgproc.boundingRect(pyramid.get(idx));
+        }
+
+        long matchedFrame = 0;
+        for (MatOfPoint contour : fullResolution)
+        {
+            Rect box = Imgproc.boundingRect(contour);
+            Rect best = null;
+            double bestOverlap = 0.;
+            for (Rect pyramidBox : pyramidBoxes)
+            {
+                double overlap = overlap(box, pyramidBox);
+                if (overlap > bestOverlap)
+                {
+                    bestOverlap = overlap;
+                    best = pyramidBox;
+                }
+            }
+
+            if (best == null)
+            {
+                missed++;
+                continue;
+            }
+
+            matchedFrame++;
+            int[] edgeErrors = {Math.abs(box.x - best.x), Math.abs(box.y - best.y),
+                Math.abs(box.x + box.width - best.x - best.width), Math.abs(box.y + box.height - best.y - best.height)};
+            for (int edgeError : edgeErrors)
+            {
+                edgeErrorSum += edgeError;
+                edgeErrorMax = Math.max(edgeErrorMax, edgeError);
+            }
+        }
+
+        matched += matchedFrame;
+        extra += Math.max(0, pyramidBoxes.length - matchedFrame);
+    }
+
+    private static double overlap(Rect a, Rect b)
+    {
+        double width = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+        double height = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+        return width > 0. && height > 0. ? width * height : 0.;
+    }
+
+    /**
+     * @return average pixels a matched bounding box edge is off from full resolution
+     */
+    public double getEdgeErrorAverage()
+    {
+        return matched == 0 ? 0. : edgeErrorSum / (4. * matched);
+    }
+
+    public String toString()
+    {
+        return String.format("pyramid vs full resolution %d frames: contours matched %d, missed %d, extra %d, bounding box edge error avg %.2f max %d pixels",
+            frames, matched, missed, extra, getEdgeErrorAverage(), edgeErrorMax);
+    }
+}
@@ -0,0 +1,204 @@
+import java.lang.invoke.MethodHandles;
+
+import org.opencv.core.Rect;
+
+/**
+ * Predicts where the target will be in the next frame so the pipeline only has to search a small
+ * region of interest (ROI) around it instead of the whole frame.
+ *
+ * Once the target is found in hitsToTrack frames in a row the tracker locks on.  While locked the ROI
+ * is the last bounding box moved by the recent motion and enlarged by a margin plus the motion so a
+ * fast moving target stays inside.  A miss doesn't lose the lock; the ROI coasts along the motion and
+ * grows by another margin for each miss.  After missesToSearch misses in a row it goes back to
+ * searching the full frame.
+ *
+ * It keeps the fraction of frames searched by ROI and the pipeline time saved compared to the average
+ * full frame search.
+ *
+ * The tracker has to see every frame in order - its motion, its prediction of missed frames and its
+ * hits and misses are counted per frame.  With more than one pipeline worker each worker's
+ * TargetSelectionB would have a tracker seeing only some of the frames, so Main turns ROI tracking
+ * off when Main.turretPipelineWorkers > 1.
+ *
+ * Not thread safe - one per TargetSelection.
+ */
+public class RoiTracker
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final double VELOCITY_SMOOTHING = 0.5; // weight of the newest motion in the smoothed velocity
+
+    private final int margin; // pixels added around the predicted bounding box on each side
+    private final double motionGain; // the ROI is also enlarged by this times the predicted motion
+    private final int hitsToTrack; // consecutive hits in the full frame to lock on
+    private final int missesToSearch; // consecutive misses to go back to the full frame
+
+    private boolean tracking = false;
+    private int hits = 0;
+    private int misses = 0;
+
+    // last target bounding box found and its smoothed motion per frame
+    private double centerX;
+    private double centerY;
+    private double width;
+    private double height;
+    private double velocityX = 0.;
+    private double velocityY = 0.;
+
+    private final Rect roi = new Rect(); // reused for every frame
+    private boolean roiMode = false; // the last nextRoi() was an ROI, not the full frame
+
+    private long frames = 0;
+    private long roiFrames = 0;
+    private long fullFrameTime = 0; // nanoseconds in full frame searches
+    private long fullFramesTimed = 0;
+    private long roiTime = 0; // nanoseconds in ROI searches
+
+    /**
+     * @param margin pixels added around the predicted bounding box on each side
+     * @param motionGain the ROI is also enlarged by this times the predicted motion
+     * @param hitsToTrack consecutive frames the target must be found in the full frame to start tracking
+     * @param missesToSearch consecutive frames the target can be missed before searching the full frame again
+     */
+    public RoiTracker(int margin, double motionGain, int hitsToTrack, int missesToSearch)
+    {
+        this.margin = margin;
+        this.motionGain = motionGain;
+        this.hitsToTrack = Math.max(hitsToTrack, 1);
+        this.missesToSearch = Math.max(missesToSearch, 1);
+    }
+
+    /**
+     * The region to search in the next frame.
+     *
+     * @param frameWidth width of the camera frame
+     * @param frameHeight height of the camera frame
+     * @return the ROI or null to search the full frame; the Rect is reused for the next frame
+     */
+    public Rect nextRoi(int frameWidth, int frameHeight)
+    {
+        frames++;
+        roiMode = false;
+
+        if (!tracking)
+        {
+            return null;
+        }
+
+        // predict the box from the motion since the last hit and widen it for each frame of uncertainty
+        int framesAhead = misses + 1;
+        double predictedX = centerX + velocityX * framesAhead;
+        double predictedY = centerY + velocityY * framesAhead;
+        double halfWidth = width / 2. + margin * framesAhead + motionGain * Math.abs(velocityX) * framesAhead;
+        double halfHeight = height / 2. + margin * framesAhead + motionGain * Math.abs(velocityY) * framesAhead;
+
+        int left = Math.max(0, (int)Math.floor(predictedX - halfWidth));
+        int top = Math.max(0, (int)Math.floor(predictedY - halfHeight));
+        int right = Math.min(frameWidth, (int)Math.ceil(predictedX + halfWidth));
+        int bottom = Math.min(frameHeight, (int)Math.ceil(predictedY + halfHeight));
+
+        if (right - left <= 0 || bottom - top <= 0 || (right - left) * (bottom - top) >= frameWidth * frameHeight)
+        {
+            return null; // predicted off the frame or no smaller than the frame
+        }
+
+        roi.x = left;
+        roi.y = top;
+        roi.width = right - left;
+        roi.height = bottom - top;
+        roiMode = true;
+        roiFrames++;
+        return roi;
+    }
+
+    /**
+     * Record the result of the search of the region from the last nextRoi().
+     *
+     * @param target bounding box of the target found in full frame coordinates or null if it wasn't found
+     * @param searchTime nanoseconds the pipeline took to search the region
+     */
+    public void update(Rect target, long searchTime)
+    {
+        if (roiMode)
+        {
+            roiTime += searchTime;
+        }
+        else
+        {
+            fullFrameTime += searchTime;
+            fullFramesTimed++;
+        }
+
+        if (target == null)
+        {
+            hits = 0;
+            misses++;
+            if (tracking && misses >= missesToSearch)
+            {
+                tracking = false;
+                velocityX = 0.;
+                velocityY = 0.;
+            }
+            return;
+        }
+
+        double newCenterX = target.x + target.width / 2.;
+        double newCenterY = target.y + target.height / 2.;
+
+        if (hits > 0 || tracking)
+        {
+            // motion per frame averaged over the frames since the last hit
+            int framesSince = misses + 1;
+            velocityX = VELOCITY_SMOOTHING * (newCenterX - centerX) / framesSince + (1. - VELOCITY_SMOOTHING) * velocityX;
+            velocityY = VELOCITY_SMOOTHING * (newCenterY - centerY) / framesSince + (1. - VELOCITY_SMOOTHING) * velocityY;
+        }
+
+        centerX = newCenterX;
+        centerY = newCenterY;
+        width = target.width;
+        height = target.height;
+
+        misses = 0;
+        hits++;
+        if (hits >= hitsToTrack)
+        {
+            tracking = true;
+        }
+    }
+
+    /**
+     * @return true if the target is locked and searched for by ROI
+     */
+    public boolean isTracking()
+    {
+        return tracking;
+    }
+
+    /**
+     * @return fraction of the frames that were searched by ROI instead of the full frame
+     */
+    public double getRoiFraction()
+    {
+        return frames == 0 ? 0. : roiFrames / (double)frames;
+    }
+
+    /**
+     * @return seconds of pipeline time saved by the ROI searches compared to the average full frame search
+     */
+    public double getTimeSaved()
+    {
+        if (fullFramesTimed == 0)
+        {
+            return 0.;
+        }
+        return (roiFrames * (fullFrameTime / (double)fullFramesTimed) - roiTime) / 1.e9;
+    }
+
+    public String toString()
+    {
+        return String.format("ROI %s, %d of %d frames (%.1f%%) by ROI, full frame avg %.1f ms, ROI avg %.1f ms, saved %.1f s",
+            tracking ? "tracking" : "searching", roiFrames, frames, 100. * getRoiFraction(),
+            fullFramesTimed == 0 ? 0. : fullFrameTime / (double)fullFramesTimed / 1.e6,
+            roiFrames == 0 ? 0. : roiTime / (double)roiFrames / 1.e6, getTimeSaved());
+    }
+}
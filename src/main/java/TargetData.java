@@ -0,0 +1,61 @@
+/**
+ * This interface is what the PipelineProcess needs from a camera's target data.
+ * Each camera has its own target data class, such as TargetDataB for the turret,
+ * that implements it.
+ *
+ * The frame number, times, copying and the binary message fields are the visionClient
+ * module's TargetData, shared with the roboRIO, so the binary TargetMessage and the
+ * TargetDataExchange of the visionClient work on these classes too.  This adds what only
+ * the RPi needs.
+ *
+ * Target data objects are not synchronized; each belongs to one thread.  They are
+ * handed between threads by copying through a TargetDataExchange.
+ *
+ * @author FRC Team 4237
+ */
+public interface TargetData<T extends TargetData<T>> extends visionClient.TargetData<T>
+{
+    /**
+     * Increment the frame number of the target data.
+     */
+    void incrFrameNumber();
+
+    /**
+     * Decide if the target data changed enough to send again - beyond the deadbands in Main.
+     *
+     * @param sent
+     *                 The target data last sent.
+     * @return True if it changed enough.
+     */
+    boolean isChangedFrom(T sent);
+
+    /**
+     * @return The target data message to send to the roboRIO.
+     */
+    String toJson();
+
+    /**
+     * Set the target data from a message made by toJson().
+     *
+     * @param message
+     *                    The target data message.
+     */
+    void fromJson(String message);
+
+    /**
+     * Write the target data as JSON - the same bytes as Gson toJson() of the class.  Doesn't allocate.
+     *
+     * @param json
+     *                 The writer of the message.
+     */
+    void writeJson(TargetJsonWriter json);
+
+    /**
+     * Set the target data from JSON as Gson fromJson() and set() would - fields not in the JSON are
+     * reset.  Doesn't allocate.
+     *
+     * @param json
+     *                 The reader of the message.
+     */
+    void readJson(TargetJsonReader json);
+}
@@ -1,4 +1,6 @@
-import com.google.gson.Gson;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import org.opencv.core.Point;
 import org.opencv.core.Size;
 
@@ -12,10 +14,16 @@ import org.opencv.core.Size;
  * @author FRC Team 4237
  * @version 2019.01.28.14.20
  */
-public class TargetDataB
+public class TargetDataB implements TargetData<TargetDataB>
 {
     private static final String pId = new String("[TargetDataB]");
 
+    // JSON names of the fields in the order of the fields
+    private static final String[] JSON_NAMES = {"boundingBoxPts", "imageSize", "portPositionInFrame", "portDistance",
+        "angleToTurn", "frameNumber", "isFreshData", "isTargetFound", "captureTime", "processedTime", "sendTime"};
+    private static final String[] POINT_NAMES = {"x", "y"};
+    private static final String[] SIZE_NAMES = {"width", "height"};
+
     // NOTE: No modifier means visible to both the class and package.
 
     // Target data that we need
@@ -32,34 +40,48 @@ public class TargetDataB
     // These fields are used to track the validity of the data.
     int frameNumber; // Number of the camera frame
 
-    // Variable isFreshData means whether the roboRIO has seen the current data from the Raspberry Pi already.
+    // Variable isFreshData is always true in the messages sent; receivers tell new data from the
+    // TargetDataExchange write number instead.
     boolean isFreshData; // Is the data fresh?
     boolean isTargetFound;
 
+    // These fields are used to track the age of the data (microseconds in the WPIUtilJNI.now() time base of the RPi).
+    // The clocks of the RPi and roboRIO differ so use the differences such as sendTime - captureTime.
+    long captureTime; // Camera frame time from CvSink.grabFrame; 0 if the grab failed
+    long processedTime; // Time the target selection finished with the frame
+    long sendTime; // Time the message was sent to the roboRIO
+
     /**
      * Default contructor - resets all of the target data.
      */
     public TargetDataB()
     {
-        boundingBoxPts = new Point[4];
+        boundingBoxPts = new Point[] {new Point(), new Point(), new Point(), new Point()};
+        imageSize = new Size();
         reset();
         frameNumber = 0;
     }
 
     /**
      * This method resets all of the target data, except the frameNumber. The user MUST MODIFY.
+     * The points and size are reset in place so nothing is allocated for each frame.
      */
-    public synchronized void reset()
+    public void reset()
     {
-        boundingBoxPts[0] = new Point(-1.0, -1.0);
-        boundingBoxPts[1] = new Point(-1.0, -1.0);
-        boundingBoxPts[2] = new Point(-1.0, -1.0);
-        boundingBoxPts[3] = new Point(-1.0, -1.0);
-        imageSize = new Size(-1.0, -1.0);
+        for (Point point : boundingBoxPts)
+        {
+            point.x = -1.0;
+            point.y = -1.0;
+        }
+        imageSize.width = -1.0;
+        imageSize.height = -1.0;
         portPositionInFrame = -1.0;
         portDistance = -1.0;
         angleToTurn = 0.;
         isTargetFound = false;
+        captureTime = 0;
+        processedTime = 0;
+        sendTime = 0;
 
         // DO NOT reset the frameNumber
         isFreshData = true;
@@ -71,7 +93,7 @@ public class TargetDataB
      * @param targetData
      *                       The new target data to store.
      */
-    public synchronized void set(TargetDataB targetData)
+    public void set(TargetDataB targetData)
     {
         boundingBoxPts[0].x = targetData.boundingBoxPts[0].x;
         boundingBoxPts[0].y = targetData.boundingBoxPts[0].y;
@@ -95,6 +117,9 @@ public class TargetDataB
         // fixedAngle = targetData.fixedAngle;
         isTargetFound = targetData.isTargetFound;
         frameNumber = targetData.frameNumber;
+        captureTime = targetData.captureTime;
+        processedTime = targetData.processedTime;
+        sendTime = targetData.sendTime;
 
         // DO NOT MODIFY this value.
         isFreshData = true;
@@ -107,7 +132,7 @@ public class TargetDataB
      * 
      * @return The port distance.
      */
-    public synchronized double getPortDistance()
+    public double getPortDistance()
     {
         return portDistance;
     }
@@ -117,17 +142,18 @@ public class TargetDataB
      * 
      * @return The angle to turn.
      */
-    public synchronized double getAngleToTurn()
+    public double getAngleToTurn()
     {
         return angleToTurn;
     }
 
      /**
-     * This method returns all of the target data.
+     * This method returns a new copy of all of the target data.  To copy without allocating
+     * use set() or TargetDataExchange.read().
      * 
      * @return The target data.
      */
-    public synchronized TargetDataB get()
+    public TargetDataB get()
     {
         TargetDataB targetData = new TargetDataB();
         targetData.boundingBoxPts[0].x = boundingBoxPts[0].x;
@@ -145,12 +171,11 @@ public class TargetDataB
         targetData.angleToTurn = angleToTurn;
         targetData.isTargetFound = isTargetFound;
         targetData.frameNumber = frameNumber;
+        targetData.captureTime = captureTime;
+        targetData.processedTime = processedTime;
+        targetData.sendTime = sendTime;
         targetData.isFreshData = isFreshData;
 
-        // Indicate that the data is no longer fresh data.
-        // It is not until the set() method gets called that isFreshData changes.
-        this.isFreshData = false;
-
         // System.out.println(pId + " " + center.x + " " + center.y);
 
         return targetData;
@@ -159,17 +184,79 @@ public class TargetDataB
     /**
      * This method increments the frame number of the target data.
      */
-    public synchronized void incrFrameNumber()
+    public void incrFrameNumber()
     {
             frameNumber++;
     }
 
-    public synchronized Point[] getBoundingBoxPts()
+    /**
+     * This method sets the frame number of the target data.
+     */
+    public void setFrameNumber(int frameNumber)
+    {
+        this.frameNumber = frameNumber;
+    }
+
+    /**
+     * This method sets the camera frame time of the target data.
+     */
+    public void setCaptureTime(long captureTime)
+    {
+        this.captureTime = captureTime;
+    }
+
+    /**
+     * This method sets the time the target selection finished with the frame.
+     */
+    public void setProcessedTime(long processedTime)
+    {
+        this.processedTime = processedTime;
+    }
+
+    /**
+     * This method sets the time the target data is sent.
+     */
+    public void setSendTime(long sendTime)
+    {
+        this.sendTime = sendTime;
+    }
+
+    /**
+     * This method returns the camera frame time.
+     * 
+     * @return The camera frame time from CvSink.grabFrame in microseconds.
+     */
+    public long getCaptureTime()
+    {
+        return captureTime;
+    }
+
+    /**
+     * This method returns the time the target selection finished with the frame.
+     * 
+     * @return The processed time in microseconds.
+     */
+    public long getProcessedTime()
+    {
+        return processedTime;
+    }
+
+    /**
+     * This method returns the time the target data was sent.
+     * 
+     * @return The send time in microseconds.
+     */
+    public long getSendTime()
+    {
+        return sendTime;
+    }
+
+    public Point[] getBoundingBoxPts()
     {
         return boundingBoxPts;
     }
 
-    public synchronized Size getImageSize()
+    public Size getImageSize()
     {
         return imageSize;
     }
@@ -179,7 +266,7 @@ public class TargetDataB
      * 
      * @return True if target is found. False if target is not found.
      */
-    public synchronized boolean isTargetFound()
+    public boolean isTargetFound()
     {
         return isTargetFound;
     }
@@ -190,7 +277,7 @@ public class TargetDataB
      * @return The frame number of the camera image, starting at 1 and incrementing
      *         by 1.
      */
-    public synchronized int getFrameNumber()
+    public int getFrameNumber()
     {
         return frameNumber;
     }
@@ -200,22 +287,160 @@ public class TargetDataB
      * 
      * @return True if data is fresh. False is data is not fresh.
      */
-    public synchronized boolean isFreshData()
+    public boolean isFreshData()
     {
         return isFreshData;
     }
 
-    public synchronized void fromJson(String message)
+    /**
+     * This method decides if the target data changed enough from the last sent to send it again.
+     */
+    public boolean isChangedFrom(TargetDataB sent)
+    {
+        return isTargetFound != sent.isTargetFound
+            || Math.abs(angleToTurn - sent.angleToTurn) > Main.turretAngleDeadband
+            || Math.abs(portDistance - sent.portDistance) > Main.turretDistanceDeadband;
+    }
+
+    public void fromJson(String message)
     {
-        TargetDataB temp = new Gson().fromJson(message, TargetDataB.class);
-        set(temp);
+        byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+        readJson(new TargetJsonReader().reset(bytes, 0, bytes.length));
     }
 
-    public synchronized String toJson()
+    public String toJson()
     {
-        Gson gson = new Gson(); // Or use new GsonBuilder().create();
-        String json = gson.toJson(this); // serializes target to Json
-        return json;
+        return TargetJsonWriter.toString(this);
+    }
+
+    /**
+     * This method writes the target data as JSON - the same as Gson toJson() of the fields in order.
+     */
+    public void writeJson(TargetJsonWriter json)
+    {
+        json.beginObject();
+        json.name("boundingBoxPts").beginArray();
+        for (Point point : boundingBoxPts)
+        {
+            json.beginObject().name("x").value(point.x).name("y").value(point.y).endObject();
+        }
+        json.endArray();
+        json.name("imageSize").beginObject().name("width").value(imageSize.width).name("height").value(imageSize.height).endObject();
+        json.name("portPositionInFrame").value(portPositionInFrame);
+        json.name("portDistance").value(portDistance);
+        json.name("angleToTurn").value(angleToTurn);
+        json.name("frameNumber").value(frameNumber);
+        json.name("isFreshData").value(isFreshData);
+        json.name("isTargetFound").value(isTargetFound);
+        json.name("captureTime").value(captureTime);
+        json.name("processedTime").value(processedTime);
+        json.name("sendTime").value(sendTime);
+        json.endObject();
+    }
+
+    /**
+     * This method reads the target data from JSON in place.
+     */
+    public void readJson(TargetJsonReader json)
+    {
+        reset();
+        frameNumber = 0;
+
+        json.beginObject();
+        while (json.hasNext())
+        {
+            switch (json.nextName(JSON_NAMES))
+            {
+            case 0:
+                json.beginArray();
+                for (int idx = 0; json.hasNext(); idx++)
+                {
+                    if (idx >= boundingBoxPts.length)
+                    {
+                        json.skipValue();
+                        continue;
+                    }
+                    json.beginObject();
+                    while (json.hasNext())
+                    {
+                        switch (json.nextName(POINT_NAMES))
+                        {
+                        case 0: boundingBoxPts[idx].x = json.nextDouble(); break;
+                        case 1: boundingBoxPts[idx].y = json.nextDouble(); break;
+                        default: json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                }
+                json.endArray();
+                break;
+            case 1:
+                json.beginObject();
+                while (json.hasNext())
+                {
+                    switch (json.nextName(SIZE_NAMES))
+                    {
+                    case 0: imageSize.width = json.nextDouble(); break;
+                    case 1: imageSize.height = json.nextDouble(); break;
+                    default: json.skipValue();
+                    }
+                }
+                json.endObject();
+                break;
+            case 2: portPositionInFrame = json.nextDouble(); break;
+            case 3: portDistance = json.nextDouble(); break;
+            case 4: angleToTurn = json.nextDouble(); break;
+            case 5: frameNumber = json.nextInt(); break;
+            case 6: json.nextBoolean(); break; // always fresh when received
+            case 7: isTargetFound = json.nextBoolean(); break;
+            case 8: captureTime = json.nextLong(); break;
+            case 9: processedTime = json.nextLong(); break;
+            case 10: sendTime = json.nextLong(); break;
+            default: json.skipValue();
+            }
+        }
+        json.endObject();
+
+        isFreshData = true;
+    }
+
+    /**
+     * This method puts the target fields in a binary TargetMessage - 61 bytes:
+     * flags (1 if the target is found), portDistance, angleToTurn, portPositionInFrame (doubles),
+     * the 4 boundingBoxPts x, y (floats) and the imageSize width, height (shorts).
+     */
+    public void encodeFields(ByteBuffer buffer)
+    {
+        buffer.put((byte) (isTargetFound ? 1 : 0));
+        buffer.putDouble(portDistance);
+        buffer.putDouble(angleToTurn);
+        buffer.putDouble(portPositionInFrame);
+        for (Point point : boundingBoxPts)
+        {
+            buffer.putFloat((float) point.x);
+            buffer.putFloat((float) point.y);
+        }
+        buffer.putShort((short) imageSize.width);
+        buffer.putShort((short) imageSize.height);
+    }
+
+    /**
+     * This method gets the target fields from a binary TargetMessage.
+     */
+    public void decodeFields(ByteBuffer buffer)
+    {
+        isTargetFound = (buffer.get() & 1) != 0;
+        portDistance = buffer.getDouble();
+        angleToTurn = buffer.getDouble();
+        portPositionInFrame = buffer.getDouble();
+        for (Point point : boundingBoxPts)
+        {
+            point.x = buffer.getFloat();
+            point.y = buffer.getFloat();
+        }
+        imageSize.width = buffer.getShort();
+        imageSize.height = buffer.getShort();
+        isFreshData = true;
     }
 
     /**
@@ -223,66 +448,41 @@ public class TargetDataB
      * 
      * @return The string to display.
      */
-    public synchronized String toString()
+    public String toString()
     {
-       return String.format("Frame = %d, %s, boundingBoxPts = [{%f, %f}, {%f, %f}, {%f, %f}, {%f, %f}],\nimageSize.width = %f, imageSize.height = %f,\nportPositionInFrame = %f, portDistance = %f,\nangleToTurn = %f %s", 
+       return String.format("Frame = %d, %s, boundingBoxPts = [{%f, %f}, {%f, %f}, {%f, %f}, {%f, %f}],\nimageSize.width = %f, imageSize.height = %f,\nportPositionInFrame = %f, portDistance = %f,\nangleToTurn = %f,\ncapture to processed %d us, capture to send %d us %s", 
             frameNumber, isTargetFound ? "target" : "no target",
             boundingBoxPts[0].x, boundingBoxPts[0].y, boundingBoxPts[1].x, boundingBoxPts[1].y,
             boundingBoxPts[2].x, boundingBoxPts[2].y, boundingBoxPts[3].x, boundingBoxPts[3].y,
-            imageSize.width, imageSize.height, portPositionInFrame, portDistance, angleToTurn, isFreshData ? "FRESH" : "stale");
+            imageSize.width, imageSize.height, portPositionInFrame, portDistance, angleToTurn,
+            processedTime - captureTime, sendTime - captureTime, isFreshData ? "FRESH" : "stale");
     }
 }
 /*
 Here's how to use the TargetDataB class (and TargetDataE).
 (If we want to make improvements for next year, this is a good model to start with and tweak.)
 
-In the Vision Process (class VisionProcess{}) define two TargetDataB objects say TargetData and newTargetData
-(public TargetDataB TargetData, newTargetData;).
-
-The intention is another thread - UDPreceive (class UDPreceive implements Runnable{}) - stuffs the latest data into newTargetData as fast as it can. This is expected to be relatively
-slowly as it's data from the camera.
-
-The method fromJSON() is used to put the UDP message into the newTargetData object and it's marked fresh
-(VisionProcess.receivedTargetB.fromJson(message);).
-
-The Vision Process pulls the data from newTargetData into TargetData when it sees that newTargetDtata is fresh
-(if(newTargetData.isFresh() Targetdata = newTargetData.get();).
-
-Use the data in TargetData
-(if(TargetData.isTargetFound()) {double a=TargetData.getAngleToTurn(); double d = TargetData.getPortDistance();}
-
-If the newTargetData is not fresh then reuse the old data or skip that loop.
-
-Vision Process runs relatively fast and often so mostly it sees that newTargetData is not fresh.
-
-Note that newTargetData is marked fresh or not fresh in reasonable, expected, predictable times but TargetData may not behave that
-way - read on for the restriction.
-
-When UDPreceive puts data into newTargetData it's fresh; the first time Vision Process gets that data from newTargetData
-into TargetData it's still fresh.  At that time newTargetData is marked not fresh and TargetData, being fresh is marked fresh.
-
-Subsequent checks using isFreshData() on newTargetData from Vision Process see stale data until such time new data is put in by UDPreceive.
-
-Vision Process may get again from newTargetData into TargetData before newTargetDtaa is updated and the not fresh of newTargetData will be
-set in the TargetData.
+A TargetDataB object belongs to one thread.  The thread that makes the data - the PipelineProcess on the RPi
+or the UDP receive thread on the roboRIO - fills in its own TargetDataB and writes it to a TargetDataExchange.
+Each thread that uses the data keeps its own TargetDataB and the number of the last write it copied.
 
-However, TargetData remains marked as fresh as long as the not fresh newTargetData isn't copied into it so if stale newTargetData is not
-copied into TargetData then TargetData remains appearing as fresh.
+The receive thread puts each UDP message into its stream's own TargetDataB and makes it the newest
+(visionClient ReceivedStream.receive() - if (TargetMessage.decode(message, parsed)) exchange.write(parsed);).
+On the roboRIO the visionClient module's own TargetDataB, without OpenCV, is used the same way.
+The binary TargetMessage is decoded in place without allocating and so are the text messages sent if
+Main.sendBinaryTargetData is false.  A message older than the newest received is counted but not used.
 
-Thus if you check newTargetData for fresh and skip copying it if it's not fresh, then TargetData remains unchanged - old data but fresh indicator.
+The robot loop copies the newest data into its own TargetDataB when there is a newer write than it last copied
+(if (turret.isNewerThan(turretWrite)) turretWrite = turret.read(targetDataTurret);).
 
-There is no mechanism other than get newTargetData to change the fresh indicator for TargetData.  (But that could be changed.)
+Use the data in its own TargetDataB
+(if (targetDataTurret.isTargetFound()) {double a = targetDataTurret.getAngleToTurn(); double d = targetDataTurret.getPortDistance();}).
 
-The intention is to either:
-    get() from newTargetData into TargetData every Vision Process iteration and then TargetData is marked fresh/not fresh as expected
-    or
-    only check newTargetData for fresh or not fresh and act on that indicator only.
+If there isn't a newer write then reuse the old data or skip that loop.
 
-The methods of TargetDataB are all synchronized so the data cannot be accessed and potentially corrupted by two threads setting and getting at
-the same time.  However the get methods for angle and distance and others like isFresh are separate and there could be an update between getting
-the angle and getting the distance thus that data pair would not be atomic in this design if there was only one object that can be accessed and
-updated by more than one thread.  That is why there are two copies of TargetdataB - TargetData and new TargetData so Vision Process controls
-when the now atomic object of TargetData is updated from newTargetData.
+The copy is atomic - the angle and distance are always from the same frame - without the threads locking or
+allocating, and the writer never waits for the readers.  Any number of threads can read the same exchange and
+each has its own idea of what is fresh; reading doesn't make the data stale for the others.
 
 The UdpReceive class has an example of receiving the UDP message, putting it into TargetData and using it.
 */
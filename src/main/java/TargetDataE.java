@@ -1,4 +1,6 @@
-import com.google.gson.Gson;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * This class is used to store the target data. The user MUST MODIFY the
@@ -8,24 +10,46 @@ import com.google.gson.Gson;
  * @author FRC Team 4237
  * @version 2019.01.28.14.20
  */
-public class TargetDataE
+public class TargetDataE implements TargetData<TargetDataE>
 {
     private static final String pId = new String("[TargetDataE]");
 
+    // JSON names of the fields in the order of the fields
+    private static final String[] JSON_NAMES = {"center", "distance", "ballCount", "ballId", "ballX", "ballY",
+        "ballVelocityX", "ballVelocityY", "ballDistance", "ballAge",
+        "frameNumber", "isFreshData", "isTargetFound", "captureTime", "processedTime", "sendTime"};
+
     // NOTE: No modifier means visible to both the class and package.
 
     // The user MUST MODIFY these following fields.
     // --------------------------------------------------------------------------
-    // Target data of the bounding rectangle around the contour
-    double center;
-    double distance;
+    // Target data of the nearest Power Cell
+    double center; // pixels right of the center of the frame (negative is left)
+    double distance; // inches
+
+    // Power Cells tracked, nearest first; only the first ballCount of each array are used
+    static final int MAX_BALLS = 5;
+    int ballCount;
+    int[] ballId = new int[MAX_BALLS]; // same ball keeps the same id from frame to frame
+    double[] ballX = new double[MAX_BALLS]; // pixels of the center - predicted if not seen this frame
+    double[] ballY = new double[MAX_BALLS];
+    double[] ballVelocityX = new double[MAX_BALLS]; // pixels per second
+    double[] ballVelocityY = new double[MAX_BALLS];
+    double[] ballDistance = new double[MAX_BALLS]; // inches
+    int[] ballAge = new int[MAX_BALLS]; // frames since the ball was first seen
     // --------------------------------------------------------------------------
 
     // These fields are used to track the validity of the data.
     int frameNumber; // Number of the camera frame
-    boolean isFreshData; // Is the data fresh?
+    boolean isFreshData; // Is the data fresh?  Always true in the messages sent; see TargetDataExchange
     boolean isTargetFound;
-    
+
+    // These fields are used to track the age of the data (microseconds in the WPIUtilJNI.now() time base of the RPi).
+    // The clocks of the RPi and roboRIO differ so use the differences such as sendTime - captureTime.
+    long captureTime; // Camera frame time from CvSink.grabFrame; 0 if the grab failed
+    long processedTime; // Time the target selection finished with the frame
+    long sendTime; // Time the message was sent to the roboRIO
+
     /**
      * Default constructor - resets all of the target data.
      */
@@ -39,11 +63,16 @@ public class TargetDataE
      * This method resets all of the target data, except the frameNumber. The user
      * MUST MODIFY
      */
-    public synchronized void reset()
+    public void reset()
     {
         center = -1;
         distance = -1;
+        ballCount = 0;
+        clearBalls(0);
         isTargetFound = false;
+        captureTime = 0;
+        processedTime = 0;
+        sendTime = 0;
 
         // DO NOT reset the frameNumber
         isFreshData = true;
@@ -55,62 +84,175 @@ public class TargetDataE
      * @param targetData
      *                       The new target data to store.
      */
-    public synchronized void set(TargetDataE targetData)
+    public void set(TargetDataE targetData)
     {
         center = targetData.center;
         distance = targetData.distance;
+        copyBalls(targetData, this);
         isTargetFound = targetData.isTargetFound;
         frameNumber = targetData.frameNumber;
+        captureTime = targetData.captureTime;
+        processedTime = targetData.processedTime;
+        sendTime = targetData.sendTime;
 
         // DO NOT MODIFY this value.
         isFreshData = true;
     }
 
    /**
-     * This method returns all of the target data.
+     * This method returns a new copy of all of the target data.  To copy without allocating
+     * use set() or TargetDataExchange.read().
      * 
      * @return The target data.
      */
-    public synchronized TargetDataE get()
+    public TargetDataE get()
     {
        TargetDataE targetData = new TargetDataE();
 
        targetData.distance = distance;
        targetData.center = center;
+       copyBalls(this, targetData);
        targetData.isTargetFound = isTargetFound;
        targetData.frameNumber = frameNumber;
+       targetData.captureTime = captureTime;
+       targetData.processedTime = processedTime;
+       targetData.sendTime = sendTime;
        targetData.isFreshData = isFreshData;
 
-       // Indicate that the data is no longer fresh data.
-       isFreshData = false;
-
         return targetData;
     }
 
+    /**
+     * Copy the tracked balls.
+     * 
+     * @param from the target data to copy from
+     * @param to the target data to copy to
+     */
+    private static void copyBalls(TargetDataE from, TargetDataE to)
+    {
+        int count = Math.min(from.ballCount, MAX_BALLS);
+        to.ballCount = count;
+        System.arraycopy(from.ballId, 0, to.ballId, 0, count);
+        System.arraycopy(from.ballX, 0, to.ballX, 0, count);
+        System.arraycopy(from.ballY, 0, to.ballY, 0, count);
+        System.arraycopy(from.ballVelocityX, 0, to.ballVelocityX, 0, count);
+        System.arraycopy(from.ballVelocityY, 0, to.ballVelocityY, 0, count);
+        System.arraycopy(from.ballDistance, 0, to.ballDistance, 0, count);
+        System.arraycopy(from.ballAge, 0, to.ballAge, 0, count);
+        to.clearBalls(count);
+    }
+
+    /**
+     * Clear the balls from an index on so balls of earlier frames aren't in the JSON, which has all
+     * of the arrays.
+     * 
+     * @param from index of the first ball cleared
+     */
+    private void clearBalls(int from)
+    {
+        Arrays.fill(ballId, from, MAX_BALLS, 0);
+        Arrays.fill(ballX, from, MAX_BALLS, 0.);
+        Arrays.fill(ballY, from, MAX_BALLS, 0.);
+        Arrays.fill(ballVelocityX, from, MAX_BALLS, 0.);
+        Arrays.fill(ballVelocityY, from, MAX_BALLS, 0.);
+        Arrays.fill(ballDistance, from, MAX_BALLS, 0.);
+        Arrays.fill(ballAge, from, MAX_BALLS, 0);
+    }
+
     /**
      * This method increments the frame number of the target data.
      */
-    public synchronized void incrFrameNumber()
+    public void incrFrameNumber()
     {
             frameNumber++;
     }
 
-    public synchronized double getCenter()
+    /**
+     * This method sets the frame number of the target data.
+     */
+    public void setFrameNumber(int frameNumber)
+    {
+        this.frameNumber = frameNumber;
+    }
+
+    /**
+     * This method sets the camera frame time of the target data.
+     */
+    public void setCaptureTime(long captureTime)
+    {
+        this.captureTime = captureTime;
+    }
+
+    /**
+     * This method sets the time the target selection finished with the frame.
+     */
+    public void setProcessedTime(long processedTime)
+    {
+        this.processedTime = processedTime;
+    }
+
+    /**
+     * This method sets the time the target data is sent.
+     */
+    public void setSendTime(long sendTime)
+    {
+        this.sendTime = sendTime;
+    }
+
+    /**
+     * This method returns the camera frame time.
+     * 
+     * @return The camera frame time from CvSink.grabFrame in microseconds.
+     */
+    public long getCaptureTime()
+    {
+        return captureTime;
+    }
+
+    /**
+     * This method returns the time the target selection finished with the frame.
+     * 
+     * @return The processed time in microseconds.
+     */
+    public long getProcessedTime()
+    {
+        return processedTime;
+    }
+
+    /**
+     * This method returns the time the target data was sent.
+     * 
+     * @return The send time in microseconds.
+     */
+    public long getSendTime()
+    {
+        return sendTime;
+    }
+
+    public double getCenter()
     {
         return center;
     }
 
-    public synchronized double getDistance()
+    public double getDistance()
     {
         return distance;
     }
 
+    /**
+     * @return number of Power Cells tracked
+     */
+    public int getBallCount()
+    {
+        return ballCount;
+    }
+
     /**
      * This method indicates if a target was found.
      * 
      * @return True if target is found. False if target is not found.
      */
-    public synchronized boolean isTargetFound()
+    public boolean isTargetFound()
     {
         return isTargetFound;
     }
@@ -121,7 +263,7 @@ public class TargetDataE
      * @return The frame number of the camera image, starting at 1 and incrementing
      *         by 1.
      */
-    public synchronized int getFrameNumber()
+    public int getFrameNumber()
     {
         return frameNumber;
     }
@@ -131,22 +273,145 @@ public class TargetDataE
      * 
      * @return True if data is fresh. False is data is not fresh.
      */
-    public synchronized boolean isFreshData()
+    public boolean isFreshData()
     {
         return isFreshData;
     }
 
-    public synchronized void fromJson(String message)
+    /**
+     * This method decides if the target data changed enough from the last sent to send it again.
+     */
+    public boolean isChangedFrom(TargetDataE sent)
+    {
+        return isTargetFound != sent.isTargetFound
+            || ballCount != sent.ballCount
+            || Math.abs(center - sent.center) > Main.intakeCenterDeadband
+            || Math.abs(distance - sent.distance) > Main.intakeDistanceDeadband;
+    }
+
+    public void fromJson(String message)
+    {
+        byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+        readJson(new TargetJsonReader().reset(bytes, 0, bytes.length));
+    }
+
+     public String toJson()
+    {
+        return TargetJsonWriter.toString(this);
+    }
+
+    /**
+     * This method writes the target data as JSON - the same as Gson toJson() of the fields in order.
+     */
+    public void writeJson(TargetJsonWriter json)
     {
-        TargetDataE temp = new Gson().fromJson(message, TargetDataE.class);
-        set(temp);
+        json.beginObject();
+        json.name("center").value(center);
+        json.name("distance").value(distance);
+        json.name("ballCount").value(ballCount);
+        json.name("ballId").value(ballId);
+        json.name("ballX").value(ballX);
+        json.name("ballY").value(ballY);
+        json.name("ballVelocityX").value(ballVelocityX);
+        json.name("ballVelocityY").value(ballVelocityY);
+        json.name("ballDistance").value(ballDistance);
+        json.name("ballAge").value(ballAge);
+        json.name("frameNumber").value(frameNumber);
+        json.name("isFreshData").value(isFreshData);
+        json.name("isTargetFound").value(isTargetFound);
+        json.name("captureTime").value(captureTime);
+        json.name("processedTime").value(processedTime);
+        json.name("sendTime").value(sendTime);
+        json.endObject();
     }
 
-     public synchronized String toJson()
+    /**
+     * This method reads the target data from JSON in place.
+     */
+    public void readJson(TargetJsonReader json)
     {
-        Gson gson = new Gson(); // Or use new GsonBuilder().create();
-        String json = gson.toJson(this); // serializes target to Json
-        return json;
+        reset();
+        frameNumber = 0;
+
+        json.beginObject();
+        while (json.hasNext())
+        {
+            switch (json.nextName(JSON_NAMES))
+            {
+            case 0: center = json.nextDouble(); break;
+            case 1: distance = json.nextDouble(); break;
+            case 2: ballCount = Math.min(json.nextInt(), MAX_BALLS); break;
+            case 3: json.nextInts(ballId); break;
+            case 4: json.nextDoubles(ballX); break;
+            case 5: json.nextDoubles(ballY); break;
+            case 6: json.nextDoubles(ballVelocityX); break;
+            case 7: json.nextDoubles(ballVelocityY); break;
+            case 8: json.nextDoubles(ballDistance); break;
+            case 9: json.nextInts(ballAge); break;
+            case 10: frameNumber = json.nextInt(); break;
+            case 11: json.nextBoolean(); break; // always fresh when received
+            case 12: isTargetFound = json.nextBoolean(); break;
+            case 13: captureTime = json.nextLong(); break;
+            case 14: processedTime = json.nextLong(); break;
+            case 15: sendTime = json.nextLong(); break;
+            default: json.skipValue();
+            }
+        }
+        json.endObject();
+
+        isFreshData = true;
+    }
+
+    /**
+     * This method puts the target fields in a binary TargetMessage - 18 bytes plus 28 for each ball:
+     * flags (1 if the target is found), center, distance (doubles), ballCount (byte) then for each
+     * ball ballId (int), ballX, ballY, ballVelocityX, ballVelocityY, ballDistance (floats) and ballAge (int).
+     */
+    public void encodeFields(ByteBuffer buffer)
+    {
+        buffer.put((byte) (isTargetFound ? 1 : 0));
+        buffer.putDouble(center);
+        buffer.putDouble(distance);
+        int count = Math.min(ballCount, MAX_BALLS);
+        buffer.put((byte) count);
+        for (int idx = 0; idx < count; idx++)
+        {
+            buffer.putInt(ballId[idx]);
+            buffer.putFloat((float) ballX[idx]);
+            buffer.putFloat((float) ballY[idx]);
+            buffer.putFloat((float) ballVelocityX[idx]);
+            buffer.putFloat((float) ballVelocityY[idx]);
+            buffer.putFloat((float) ballDistance[idx]);
+            buffer.putInt(ballAge[idx]);
+        }
+    }
+
+    /**
+     * This method gets the target fields from a binary TargetMessage.
+     */
+    public void decodeFields(ByteBuffer buffer)
+    {
+        isTargetFound = (buffer.get() & 1) != 0;
+        center = buffer.getDouble();
+        distance = buffer.getDouble();
+        int count = buffer.get();
+        if (count < 0 || count > MAX_BALLS)
+        {
+            throw new IllegalArgumentException("ball count " + count);
+        }
+        ballCount = count;
+        clearBalls(count);
+        for (int idx = 0; idx < count; idx++)
+        {
+            ballId[idx] = buffer.getInt();
+            ballX[idx] = buffer.getFloat();
+            ballY[idx] = buffer.getFloat();
+            ballVelocityX[idx] = buffer.getFloat();
+            ballVelocityY[idx] = buffer.getFloat();
+            ballDistance[idx] = buffer.getFloat();
+            ballAge[idx] = buffer.getInt();
+        }
+        isFreshData = true;
     }
 
     /**
@@ -154,9 +419,17 @@ public class TargetDataE
      * 
      * @return The string to display.
      */
-    public synchronized String toString()
+    public String toString()
     {
-        return String.format("Frame = %d, %s, center = %f, distance = %f, %s",
-            frameNumber, isTargetFound ? "target" : "no target", center, distance, isFreshData ? "FRESH" : "stale");
+        StringBuilder balls = new StringBuilder();
+        for (int idx = 0; idx < ballCount; idx++)
+        {
+            balls.append(String.format(" [id %d (%.0f, %.0f) v (%.0f, %.0f) %.0f in age %d]", ballId[idx],
+                ballX[idx], ballY[idx], ballVelocityX[idx], ballVelocityY[idx], ballDistance[idx], ballAge[idx]));
+        }
+
+        return String.format("Frame = %d, %s, center = %f, distance = %f, %d balls%s, capture to processed %d us, capture to send %d us, %s",
+            frameNumber, isTargetFound ? "target" : "no target", center, distance, ballCount, balls,
+            processedTime - captureTime, sendTime - captureTime, isFreshData ? "FRESH" : "stale");
     }
 }
@@ -0,0 +1,552 @@
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the JSON of target data in place from the bytes of a received message - what
+ * TargetJsonWriter and Gson write - without reflection, a Gson, a String or a new target data
+ * object per message.
+ *
+ * Only what target data needs: objects, arrays, numbers and booleans.  The TargetData classes
+ * read their fields in any order and skip the fields they don't know, even strings and nulls.
+ * A message that isn't JSON throws IllegalArgumentException.
+ *
+ * Numbers are converted exactly as Double.parseDouble() (what Gson uses) would.  Up to 15 digits
+ * is one multiply or divide of exact doubles; up to 18 digits is checked and corrected with exact
+ * integer arithmetic.  Only longer or huge numbers, which target data doesn't have, go through
+ * Double.parseDouble() and a String.
+ *
+ * Not thread safe - one per receiving thread.
+ */
+public class TargetJsonReader
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final int MAX_DIGITS = 18; // significant digits that fit in a long
+    private static final double[] POWERS_OF_TEN = new double[23]; // all exact doubles
+    private static final long[] LONG_POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+    static
+    {
+        POWERS_OF_TEN[0] = 1.;
+        for (int idx = 1; idx < POWERS_OF_TEN.length; idx++)
+        {
+            POWERS_OF_TEN[idx] = POWERS_OF_TEN[idx - 1] * 10.;
+        }
+        LONG_POWERS_OF_TEN[0] = 1L;
+        for (int idx = 1; idx < LONG_POWERS_OF_TEN.length; idx++)
+        {
+            LONG_POWERS_OF_TEN[idx] = LONG_POWERS_OF_TEN[idx - 1] * 10L;
+        }
+    }
+
+    private byte[] bytes = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Start reading a message.
+     *
+     * @param bytes the message; not copied so not to be changed while it's read
+     * @param offset where the message starts
+     * @param length length of the message
+     * @return this reader
+     */
+    public TargetJsonReader reset(byte[] bytes, int offset, int length)
+    {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        return this;
+    }
+
+    /**
+     * Skip the prefix of the message such as "Turret " if it's there.
+     *
+     * @param prefix the prefix
+     * @return true if the message started with the prefix and it was skipped
+     */
+    public boolean skipPrefix(byte[] prefix)
+    {
+        if (limit - position < prefix.length)
+        {
+            return false;
+        }
+        for (int idx = 0; idx < prefix.length; idx++)
+        {
+            if (bytes[position + idx] != prefix[idx])
+            {
+                return false;
+            }
+        }
+        position += prefix.length;
+        return true;
+    }
+
+    public void beginObject()
+    {
+        expect('{');
+    }
+
+    public void endObject()
+    {
+        expect('}');
+    }
+
+    public void beginArray()
+    {
+        expect('[');
+    }
+
+    public void endArray()
+    {
+        expect(']');
+    }
+
+    /**
+     * @return true if there is another field of the object or element of the array; false at its end
+     */
+    public boolean hasNext()
+    {
+        skipWhitespace();
+        byte next = peek();
+        if (next == '}' || next == ']')
+        {
+            return false;
+        }
+        if (next == ',')
+        {
+            position++;
+        }
+        return true;
+    }
+
+    /**
+     * Read the name of the next field.
+     *
+     * @param names the names of the fields wanted
+     * @return index of the name in names or -1 if it isn't one of them
+     */
+    public int nextName(String[] names)
+    {
+        expect('"');
+        int start = position;
+        skipString();
+        int end = position - 1; // the closing quote
+        expect(':');
+
+        for (int idx = 0; idx < names.length; idx++)
+        {
+            String name = names[idx];
+            if (name.length() == end - start)
+            {
+                int chr = 0;
+                while (chr < name.length() && name.charAt(chr) == bytes[start + chr])
+                {
+                    chr++;
+                }
+                if (chr == name.length())
+                {
+                    return idx;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public boolean nextBoolean()
+    {
+        skipWhitespace();
+        if (matches("true"))
+        {
+            return true;
+        }
+        if (matches("false"))
+        {
+            return false;
+        }
+        throw error("boolean expected");
+    }
+
+    public int nextInt()
+    {
+        long value = nextLong();
+        if (value != (int) value)
+        {
+            throw error("int expected");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return the next number; an integer written as a double such as 5.0 is allowed as Gson does
+     */
+    public long nextLong()
+    {
+        skipWhitespace();
+        int start = position;
+        boolean negative = position < limit && bytes[position] == '-';
+        if (negative)
+        {
+            position++;
+        }
+        long value = 0L; // negative so Long.MIN_VALUE fits
+        int digits = 0;
+        while (position < limit && isDigit(bytes[position]))
+        {
+            int digit = bytes[position++] - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10L)
+            {
+                throw error("long too big");
+            }
+            value = value * 10L - digit;
+            digits++;
+        }
+
+        if (position < limit && (bytes[position] == '.' || bytes[position] == 'e' || bytes[position] == 'E'))
+        {
+            position = start;
+            double number = nextDouble();
+            if (number != (long) number)
+            {
+                throw error("integer expected");
+            }
+            return (long) number;
+        }
+        if (digits == 0)
+        {
+            throw error("number expected");
+        }
+        if (!negative && value == Long.MIN_VALUE)
+        {
+            throw error("long too big");
+        }
+        return negative ? value : -value;
+    }
+
+    public double nextDouble()
+    {
+        skipWhitespace();
+        int start = position;
+        boolean negative = position < limit && bytes[position] == '-';
+        if (negative)
+        {
+            position++;
+        }
+
+        long mantissa = 0L;
+        int significant = 0; // digits in the mantissa after any leading zeros
+        int exponent = 0; // power of ten of the last digit in the mantissa
+        boolean exact = true; // all the digits fit in the mantissa
+        int digits = 0;
+        while (position < limit && isDigit(bytes[position]))
+        {
+            if (significant < MAX_DIGITS)
+            {
+                mantissa = mantissa * 10L + (bytes[position] - '0');
+                if (mantissa != 0L)
+                {
+                    significant++;
+                }
+            }
+            else
+            {
+                exponent++;
+                exact &= bytes[position] == '0';
+            }
+            position++;
+            digits++;
+        }
+        if (position < limit && bytes[position] == '.')
+        {
+            position++;
+            while (position < limit && isDigit(bytes[position]))
+            {
+                if (significant < MAX_DIGITS)
+                {
+                    mantissa = mantissa * 10L + (bytes[position] - '0');
+                    if (mantissa != 0L)
+                    {
+                        significant++;
+                    }
+                    exponent--;
+                }
+                else
+                {
+                    exact &= bytes[position] == '0';
+                }
+                position++;
+                digits++;
+            }
+        }
+        if (digits == 0)
+        {
+            throw error("number expected");
+        }
+        if (position < limit && (bytes[position] == 'e' || bytes[position] == 'E'))
+        {
+            position++;
+            boolean negativeExponent = position < limit && bytes[position] == '-';
+            if (position < limit && (bytes[position] == '-' || bytes[position] == '+'))
+            {
+                position++;
+            }
+            int power = 0;
+            int powerDigits = 0;
+            while (position < limit && isDigit(bytes[position]))
+            {
+                power = Math.min(power * 10 + (bytes[position++] - '0'), 100000); // far past any double
+                powerDigits++;
+            }
+            if (powerDigits == 0)
+            {
+                throw error("exponent expected");
+            }
+            exponent += negativeExponent ? -power : power;
+        }
+
+        double value = exact ? toDouble(mantissa, exponent) : Double.NaN;
+        if (Double.isNaN(value))
+        {
+            return Double.parseDouble(new String(bytes, start, position - start, StandardCharsets.US_ASCII));
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Read an array of numbers.
+     *
+     * @param values where to put the numbers; any more numbers than it holds are skipped
+     */
+    public void nextDoubles(double[] values)
+    {
+        beginArray();
+        int idx = 0;
+        while (hasNext())
+        {
+            double value = nextDouble();
+            if (idx < values.length)
+            {
+                values[idx++] = value;
+            }
+        }
+        endArray();
+    }
+
+    /**
+     * Read an array of integers.
+     *
+     * @param values where to put the integers; any more integers than it holds are skipped
+     */
+    public void nextInts(int[] values)
+    {
+        beginArray();
+        int idx = 0;
+        while (hasNext())
+        {
+            int value = nextInt();
+            if (idx < values.length)
+            {
+                values[idx++] = value;
+            }
+        }
+        endArray();
+    }
+
+    /**
+     * Skip the next value whatever it is.
+     */
+    public void skipValue()
+    {
+        int depth = 0;
+        do
+        {
+            skipWhitespace();
+            byte next = peek();
+            position++;
+            switch (next)
+            {
+            case '{':
+            case '[':
+                depth++;
+                break;
+            case '}':
+            case ']':
+                if (--depth < 0)
+                {
+                    throw error("value expected");
+                }
+                break;
+            case '"':
+                skipString();
+                break;
+            case ',':
+            case ':':
+                break;
+            default: // number, true, false or null
+                while (position < limit && !isDelimiter(bytes[position]))
+                {
+                    position++;
+                }
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * The double nearest mantissa * 10^exponent, exactly as Double.parseDouble() rounds it.
+     *
+     * @return the double or NaN if the numbers are too big for this
+     */
+    private static double toDouble(long mantissa, int exponent)
+    {
+        if (mantissa == 0L)
+        {
+            return 0.;
+        }
+        if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22)
+        {
+            // both are exact doubles so the one rounding of the multiply or divide is right
+            return exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        }
+        if (exponent < 0 && exponent >= -MAX_DIGITS)
+        {
+            return correct(mantissa / POWERS_OF_TEN[-exponent], mantissa, LONG_POWERS_OF_TEN[-exponent]);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Correct a guess of mantissa / divisor that may be off by an ulp or so, by comparing the
+     * exact quotient with the halfway points to the guess's neighbors in 128 bit integers.
+     *
+     * @param guess within a few ulps of the quotient
+     * @param mantissa less than 10^18
+     * @param divisor a power of ten up to 10^18
+     * @return the double nearest the quotient, ties to even, or NaN if the guess is out of the range checked
+     */
+    private static double correct(double guess, long mantissa, long divisor)
+    {
+        for (int tries = 0; tries < 4; tries++)
+        {
+            long bits = Double.doubleToRawLongBits(guess);
+            int biasedExponent = (int) (bits >>> 52);
+            if (biasedExponent == 0 || biasedExponent >= 1075) // subnormal or 2^52 and up
+            {
+                return Double.NaN;
+            }
+            long significand = (bits & ((1L << 52) - 1L)) | (1L << 52);
+            int shift = 1075 - biasedExponent; // guess = significand / 2^shift
+            if (shift > 61)
+            {
+                return Double.NaN;
+            }
+
+            // compare mantissa / divisor with (2 * significand + 1) / 2^(shift + 1), the halfway point up
+            int above = compare(mantissa, shift + 1, 2L * significand + 1L, divisor);
+            if (above > 0 || (above == 0 && (significand & 1L) != 0L))
+            {
+                guess = Math.nextUp(guess);
+                continue;
+            }
+
+            // and with the halfway point down, which is closer at a power of two
+            int below = significand == (1L << 52)
+                ? compare(mantissa, shift + 2, 4L * significand - 1L, divisor)
+                : compare(mantissa, shift + 1, 2L * significand - 1L, divisor);
+            if (below < 0 || (below == 0 && (significand & 1L) != 0L))
+            {
+                guess = Math.nextDown(guess);
+                continue;
+            }
+            return guess;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Compare a * 2^shift with b * c exactly.  All are positive; shift is 1 to 63.
+     */
+    private static int compare(long a, int shift, long b, long c)
+    {
+        long leftHigh = a >>> (64 - shift);
+        long leftLow = a << shift;
+        long rightHigh = Math.multiplyHigh(b, c);
+        long rightLow = b * c;
+        int high = Long.compare(leftHigh, rightHigh);
+        return high != 0 ? high : Long.compareUnsigned(leftLow, rightLow);
+    }
+
+    private void skipString()
+    {
+        while (position < limit)
+        {
+            byte next = bytes[position++];
+            if (next == '\\')
+            {
+                position++;
+            }
+            else if (next == '"')
+            {
+                return;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private boolean matches(String word)
+    {
+        if (limit - position < word.length())
+        {
+            return false;
+        }
+        for (int idx = 0; idx < word.length(); idx++)
+        {
+            if (bytes[position + idx] != word.charAt(idx))
+            {
+                return false;
+            }
+        }
+        position += word.length();
+        return true;
+    }
+
+    private void expect(char expected)
+    {
+        skipWhitespace();
+        if (peek() != expected)
+        {
+            throw error("'" + expected + "' expected");
+        }
+        position++;
+    }
+
+    private byte peek()
+    {
+        if (position >= limit)
+        {
+            throw error("end of message");
+        }
+        return bytes[position];
+    }
+
+    private void skipWhitespace()
+    {
+        while (position < limit && (bytes[position] == ' ' || bytes[position] == '\t' || bytes[position] == '\n' || bytes[position] == '\r'))
+        {
+            position++;
+        }
+    }
+
+    private static boolean isDigit(byte chr)
+    {
+        return chr >= '0' && chr <= '9';
+    }
+
+    private static boolean isDelimiter(byte chr)
+    {
+        return chr == ',' || chr == ':' || chr == '}' || chr == ']' || chr == ' ' || chr == '\t' || chr == '\n' || chr == '\r';
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException(message + " at " + position);
+    }
+}
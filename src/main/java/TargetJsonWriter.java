@@ -0,0 +1,254 @@
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the JSON of target data straight into a reused ByteBuffer - byte for byte what Gson
+ * toJson() made for the TargetData classes but without reflection, a Gson, a String or a byte[]
+ * per message.
+ *
+ * The TargetData classes write their fields with Gson's names in the order they are declared,
+ * which is Gson's order.  Integers are written digit by digit and so are doubles of up to 15
+ * digits between 0.001 and 10^7 such as -1.0 and pixel positions; Double.toString() (what Gson
+ * uses) writes them as the fewest digits that read back as the same double, which these are.
+ * Other doubles are formatted by a reused StringBuilder, which is the same code as
+ * Double.toString() without making a String.  NaN and infinity throw IllegalArgumentException as
+ * Gson does.
+ *
+ * Not thread safe - one per sending thread.
+ */
+public class TargetJsonWriter
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final double[] POWERS_OF_TEN = new double[19]; // all exact doubles
+    static
+    {
+        POWERS_OF_TEN[0] = 1.;
+        for (int idx = 1; idx < POWERS_OF_TEN.length; idx++)
+        {
+            POWERS_OF_TEN[idx] = POWERS_OF_TEN[idx - 1] * 10.;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final StringBuilder number = new StringBuilder(32);
+    private final byte[] digits = new byte[20];
+    private boolean needComma = false; // a value was written so the next name or element needs a comma
+
+    /**
+     * @param buffer where to write; written from its position
+     */
+    public TargetJsonWriter(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Start a new message at the buffer's position.
+     *
+     * @return this writer
+     */
+    public TargetJsonWriter reset()
+    {
+        needComma = false;
+        return this;
+    }
+
+    public TargetJsonWriter beginObject()
+    {
+        comma();
+        buffer.put((byte) '{');
+        needComma = false;
+        return this;
+    }
+
+    public TargetJsonWriter endObject()
+    {
+        buffer.put((byte) '}');
+        needComma = true;
+        return this;
+    }
+
+    public TargetJsonWriter beginArray()
+    {
+        comma();
+        buffer.put((byte) '[');
+        needComma = false;
+        return this;
+    }
+
+    public TargetJsonWriter endArray()
+    {
+        buffer.put((byte) ']');
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * @param name name of the next field; plain ASCII that needs no escapes
+     */
+    public TargetJsonWriter name(String name)
+    {
+        comma();
+        buffer.put((byte) '"');
+        putAscii(name);
+        buffer.put((byte) '"');
+        buffer.put((byte) ':');
+        needComma = false;
+        return this;
+    }
+
+    public TargetJsonWriter value(boolean value)
+    {
+        comma();
+        putAscii(value ? "true" : "false");
+        needComma = true;
+        return this;
+    }
+
+    public TargetJsonWriter value(long value)
+    {
+        comma();
+        if (value < 0L)
+        {
+            buffer.put((byte) '-');
+        }
+        putDigits(value, 1);
+        needComma = true;
+        return this;
+    }
+
+    public TargetJsonWriter value(double value)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+        {
+            throw new IllegalArgumentException(value + " is not a valid double value as per JSON specification.");
+        }
+        comma();
+        if (!putShortDecimal(value))
+        {
+            number.setLength(0);
+            number.append(value); // the digits of Double.toString()
+            for (int idx = 0; idx < number.length(); idx++)
+            {
+                buffer.put((byte) number.charAt(idx));
+            }
+        }
+        needComma = true;
+        return this;
+    }
+
+    /**
+     * Write a double as Double.toString() would if it has up to 15 digits and doesn't need an
+     * exponent - the fewest decimals that divided by their power of ten is the same double.  Up to
+     * 15 digits no other decimal that short is the same double.
+     *
+     * @return true if written; false if the double isn't one of these
+     */
+    private boolean putShortDecimal(double value)
+    {
+        double magnitude = Math.abs(value);
+        if (magnitude == 0.)
+        {
+            putAscii(Double.doubleToRawLongBits(value) < 0L ? "-0.0" : "0.0");
+            return true;
+        }
+        if (!(magnitude >= 1.e-3 && magnitude < 1.e7)) // Double.toString() uses an exponent
+        {
+            return false;
+        }
+
+        for (int decimals = 1; decimals < POWERS_OF_TEN.length; decimals++)
+        {
+            double scaled = magnitude * POWERS_OF_TEN[decimals];
+            if (scaled >= 1.e15)
+            {
+                return false;
+            }
+            long decimal = Math.round(scaled);
+            if (decimal / POWERS_OF_TEN[decimals] == magnitude) // both exact so this is what reading the decimal gives
+            {
+                long scale = (long) POWERS_OF_TEN[decimals];
+                if (value < 0.)
+                {
+                    buffer.put((byte) '-');
+                }
+                putDigits(decimal / scale, 1);
+                buffer.put((byte) '.');
+                putDigits(decimal % scale, decimals);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public TargetJsonWriter value(double[] values)
+    {
+        beginArray();
+        for (double value : values)
+        {
+            value(value);
+        }
+        return endArray();
+    }
+
+    public TargetJsonWriter value(int[] values)
+    {
+        beginArray();
+        for (int value : values)
+        {
+            value(value);
+        }
+        return endArray();
+    }
+
+    /**
+     * Make the JSON of target data for printing and such.  Allocates; send with a reused writer.
+     *
+     * @param targetData the target data
+     * @return the JSON
+     */
+    public static <T extends TargetData<T>> String toString(T targetData)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(Main.MAXIMUM_MESSAGE_LENGTH);
+        targetData.writeJson(new TargetJsonWriter(buffer));
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+    }
+
+    private void comma()
+    {
+        if (needComma)
+        {
+            buffer.put((byte) ',');
+        }
+    }
+
+    /**
+     * Write the digits of a number without its sign.
+     *
+     * @param value the number
+     * @param width fewest digits; leading zeros are written to make them
+     */
+    private void putDigits(long value, int width)
+    {
+        int count = 0;
+        do
+        {
+            digits[count++] = (byte) ('0' + Math.abs(value % 10L)); // abs of the digit so Long.MIN_VALUE works
+            value /= 10L;
+        } while (value != 0L || count < width);
+        while (count > 0)
+        {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    private void putAscii(String text)
+    {
+        for (int idx = 0; idx < text.length(); idx++)
+        {
+            buffer.put((byte) text.charAt(idx));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.Gson;
+
+import visionClient.TargetMessage;
+
+/**
+ * Compares the binary TargetMessage and the streaming JSON of TargetJsonWriter and TargetJsonReader
+ * to the "Turret {json}" text message made with Gson they replace - the bytes on the wire and the
+ * time to encode and decode each, for the Turret and the Intake target data.  Also checks the
+ * streaming JSON is the same bytes as Gson's and that the roboRIO's visionClient target data reads
+ * the RPi's binary message - run it whenever a TargetDataB or TargetDataE field changes.
+ *
+ * Run on the target (Raspberry Pi) for the encoding and on the roboRIO for the decoding:
+ * java -cp ... TargetMessageBenchmark [messages]
+ */
+public class TargetMessageBenchmark
+{
+    private static final int PASSES = 5; // timed passes after a warmup pass
+
+    public static void main(String[] args)
+    {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        TargetDataB turret = new TargetDataB();
+        turret.frameNumber = 123456;
+        turret.captureTime = 1621450000123456L;
+        turret.processedTime = turret.captureTime + 21000L;
+        turret.sendTime = turret.processedTime + 150L;
+        turret.isTargetFound = true;
+        turret.portDistance = 187.25;
+        turret.angleToTurn = -3.75;
+        turret.portPositionInFrame = 0.42;
+        for (int idx = 0; idx < 4; idx++)
+        {
+            turret.boundingBoxPts[idx].x = 130.5 + 40 * (idx & 1);
+            turret.boundingBoxPts[idx].y = 70.25 + 20 * (idx >> 1);
+        }
+        turret.imageSize.width = 320;
+        turret.imageSize.height = 240;
+
+        TargetDataE intake = new TargetDataE();
+        intake.frameNumber = 123456;
+        intake.captureTime = turret.captureTime;
+        intake.processedTime = turret.processedTime;
+        intake.sendTime = turret.sendTime;
+        intake.isTargetFound = true;
+        intake.center = -12.5;
+        intake.distance = 48.;
+        intake.ballCount = 3;
+        for (int idx = 0; idx < intake.ballCount; idx++)
+        {
+            intake.ballId[idx] = 17 + idx;
+            intake.ballX[idx] = 80.5 * (idx + 1);
+            intake.ballY[idx] = 150.25 - 10 * idx;
+            intake.ballVelocityX[idx] = 2.5 * idx;
+            intake.ballVelocityY[idx] = -1.25 * idx;
+            intake.ballDistance[idx] = 48. + 24 * idx;
+            intake.ballAge[idx] = 30 - idx;
+        }
+
+        compare("Turret", turret, new TargetDataB(), (byte) 'B', messages);
+        checkClient("Turret", turret, new visionClient.TargetDataB(), (byte) 'B');
+        compare("Intake", intake, new TargetDataE(), (byte) 'E', messages);
+        checkClient("Intake", intake, new visionClient.TargetDataE(), (byte) 'E');
+    }
+
+    /**
+     * Check the roboRIO's visionClient target data reads the RPi's binary message - decoded and
+     * encoded again it's the same bytes - so the two field layouts haven't drifted apart.
+     */
+    private static <T extends TargetData<T>, C extends visionClient.TargetData<C>> void checkClient(String name, T targetData, C client, byte stream)
+    {
+        ByteBuffer rpi = ByteBuffer.allocate(Main.MAXIMUM_MESSAGE_LENGTH);
+        ByteBuffer roboRIO = ByteBuffer.allocate(Main.MAXIMUM_MESSAGE_LENGTH);
+        TargetMessage.encode(rpi, stream, 1, targetData);
+        boolean same = TargetMessage.decode(rpi.duplicate(), client);
+        TargetMessage.encode(roboRIO, stream, 1, client);
+        same &= rpi.equals(roboRIO);
+        System.out.format("%s visionClient %s the RPi's binary message%n", name, same ? "reads" : "does NOT read");
+        if (!same)
+        {
+            System.out.println(name + " visionClient decoded " + client);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends TargetData<T>> void compare(String name, T targetData, T received, byte stream, int messages)
+    {
+        Gson gson = new Gson();
+        Class<T> type = (Class<T>) targetData.getClass();
+        ByteBuffer buffer = ByteBuffer.allocate(Main.MAXIMUM_MESSAGE_LENGTH);
+        TargetMessage.encode(buffer, stream, 1, targetData);
+        int binaryLength = buffer.remaining();
+        String json = name + " " + gson.toJson(targetData);
+        int jsonLength = json.getBytes(StandardCharsets.UTF_8).length;
+        String jsonBody = json.substring(name.length() + 1);
+
+        byte[] prefix = (name + " ").getBytes(StandardCharsets.US_ASCII);
+        TargetJsonWriter writer = new TargetJsonWriter(buffer);
+        TargetJsonReader reader = new TargetJsonReader();
+        buffer.clear();
+        buffer.put(prefix);
+        targetData.writeJson(writer.reset());
+        boolean same = json.equals(new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+
+        long checksum = 0; // keeps the work from being optimized away
+        double jsonEncode = 0., jsonDecode = 0., streamEncode = 0., streamDecode = 0., binaryEncode = 0., binaryDecode = 0.;
+        for (int pass = 0; pass <= PASSES; pass++)
+        {
+            long start = System.nanoTime();
+            for (int idx = 0; idx < messages; idx++)
+            {
+                checksum += (name + " " + new Gson().toJson(targetData)).getBytes(StandardCharsets.UTF_8).length;
+            }
+            long jsonEncoded = System.nanoTime();
+            for (int idx = 0; idx < messages; idx++)
+            {
+                received.set(new Gson().fromJson(jsonBody, type));
+                checksum += received.getFrameNumber();
+            }
+            long jsonDecoded = System.nanoTime();
+            for (int idx = 0; idx < messages; idx++)
+            {
+                buffer.clear();
+                buffer.put(prefix);
+                targetData.writeJson(writer.reset());
+                checksum += buffer.position();
+            }
+            long streamEncoded = System.nanoTime();
+            int length = buffer.position();
+            for (int idx = 0; idx < messages; idx++)
+            {
+                reader.reset(buffer.array(), 0, length).skipPrefix(prefix);
+                received.readJson(reader);
+                checksum += received.getFrameNumber();
+            }
+            long streamDecoded = System.nanoTime();
+            for (int idx = 0; idx < messages; idx++)
+            {
+                TargetMessage.encode(buffer, stream, idx, targetData);
+                checksum += buffer.remaining();
+            }
+            long binaryEncoded = System.nanoTime();
+            length = buffer.remaining();
+            for (int idx = 0; idx < messages; idx++)
+            {
+                buffer.limit(length).position(0);
+                TargetMessage.decode(buffer, received);
+                checksum += received.getFrameNumber();
+            }
+            long binaryDecoded = System.nanoTime();
+
+            if (pass > 0) // the first pass is the warmup
+            {
+                jsonEncode += (jsonEncoded - start) / (double) messages / PASSES;
+                jsonDecode += (jsonDecoded - jsonEncoded) / (double) messages / PASSES;
+                streamEncode += (streamEncoded - jsonDecoded) / (double) messages / PASSES;
+                streamDecode += (streamDecoded - streamEncoded) / (double) messages / PASSES;
+                binaryEncode += (binaryEncoded - streamDecoded) / (double) messages / PASSES;
+                binaryDecode += (binaryDecoded - binaryEncoded) / (double) messages / PASSES;
+            }
+        }
+
+        System.out.format("%s Gson   %4d bytes, encode %8.1f ns, decode %8.1f ns%n", name, jsonLength, jsonEncode, jsonDecode);
+        System.out.format("%s JSON   %4d bytes, encode %8.1f ns, decode %8.1f ns  (%s Gson's bytes)%n", name, jsonLength, streamEncode, streamDecode,
+            same ? "same as" : "NOT the same as");
+        System.out.format("%s binary %4d bytes, encode %8.1f ns, decode %8.1f ns  (%d)%n", name, binaryLength, binaryEncode, binaryDecode, checksum & 1);
+        System.out.println(name + " decoded " + received);
+    }
+}
@@ -0,0 +1,32 @@
+import org.opencv.core.Mat;
+
+/**
+ * This interface is what the PipelineProcess needs from a camera's target selection.
+ * Each camera has its own target selection class, such as TargetSelectionB for the turret,
+ * that implements it.
+ * 
+ * @author FRC Team 4237
+ */
+public interface TargetSelection<T extends TargetData<T>>
+{
+    /**
+     * This method sets the field to display debugging information.
+     * 
+     * @param enabled
+     *                    Set to true to display debugging information.
+     */
+    void setDebuggingEnabled(boolean enabled);
+
+    /**
+     * This method is used to select the next target.
+     * 
+     * @param mat
+     *                           The camera frame containing the image to process.  It's shared
+     *                           with the other processes so it must not be changed.
+     * @param nextTargetData
+     *                           The target data found in the camera frame.
+     * @param overlay
+     *                           Record here what to draw on the camera frame for display.
+     */
+    void process(Mat mat, T nextTargetData, Overlay overlay);
+}
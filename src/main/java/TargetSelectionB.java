@@ -7,18 +7,18 @@ import java.util.stream.Collectors;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Size;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.core.CvType;
 import org.opencv.imgproc.Moments;
 
 import lut.LUT;
 
+import contourUtils.ContourGeometry;
+import contourUtils.HuTemplate;
 import contourUtils.MatchShapes;
 
 /**
@@ -30,7 +30,7 @@ import contourUtils.MatchShapes;
  * @author FRC Team 4237
  * @version 2019.01.28.14.20
  */
-public class TargetSelectionB {
+public class TargetSelectionB implements TargetSelection<TargetDataB> {
     static {
         System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());
     }
@@ -47,6 +47,20 @@ public class TargetSelectionB {
 
     //private static int printCount = 0;
 
+    // frames between reports of how many contours each filter criterion rejected and the ROI tracking when debugging
+    private static final int FILTER_REPORT_FRAMES = 100;
+    private int filterReportCount = 0;
+
+    // predicts where the target is to search only around it; each frame-parallel worker tracks its own frames
+    private RoiTracker roiTracker = new RoiTracker(Main.turretRoiMargin, Main.turretRoiMotionGain,
+        Main.turretRoiHitsToTrack, Main.turretRoiMissesToSearch);
+
+    // full frame searches coarse-to-fine are checked against full resolution every few frames when debugging
+    private static final int PYRAMID_CHECK_FRAMES = 10;
+    private int pyramidCheckCount = 0;
+    private GRIPPowerPortVisionPipeline fullResolutionPipeline = null; // only made if checking
+    private PyramidAccuracy pyramidAccuracy = new PyramidAccuracy();
+
     // Pixels to Inches Data Table Lookup
     LUT pixelsToInchesTable = new LUT(10); // allocate fixed size array with parameter at least as large as the number
                                            // of data points - minimum of 2 points
@@ -56,14 +70,25 @@ public class TargetSelectionB {
     // MatOfPoint belowSlightlyLeftTurretContour = new MatOfPoint();
     MatOfPoint belowRightTurretContour = new MatOfPoint();
 
-    Mat idealTurretContourMomentsHu = Mat.zeros(7, 1, CvType.CV_64FC1); // initialize mat to quiet the compiler likely overkill but descriptive
-    Mat belowRightTurretContourMomentsHu = Mat.zeros(7, 1, CvType.CV_64FC1); // initialize mat to quiet the compiler likely overkill but descriptive
+    // Hu moments of the ideal shapes with their logs computed once; I7 is left out - we don't care about
+    // mirror images and it causes some jitter
+    HuTemplate idealTurretTemplate;
+    HuTemplate belowRightTurretTemplate;
+    private double[] actualHu = new double[7]; // reused for each contour
+
+    // contour measurements in Java on the points read once per contour instead of OpenCV calls on copies
+    private ContourGeometry contourGeometry = new ContourGeometry();
+    private RotatedRect rotatedRect = new RotatedRect(); // reused for each contour
+    private Moments moments = new Moments(); // reused for each contour
+    private Mat targetIcon = new Mat(); // reused for each frame; each TurretResult gets a copy of its pixels
     // Mat belowFrontTurretContourMomentsHu = Mat.zeros(7, 1, CvType.CV_64FC1); // initialize mat to quiet the compiler likely overkill but descriptive
     // Mat belowSlightlyLeftTurretContourMomentsHu = Mat.zeros(7, 1, CvType.CV_64FC1); // initialize mat to quiet the compiler likely overkill but descriptive
     private int HuCompareNormalizationMethod = 1; // methods 0 to 6 method [1] used for matching; others better? method [0] is terrible
     
     TargetSelectionB() {
 
+        gripPowerPortVisionPipeline.setDownscale(Main.turretPyramidDownscale);
+
         // Enter more data points for more accuracy. The equation should model some sort
         // of sinusoidal function.
         // The x coordinate is pixels and the y coordinate is the horizontal distance to
@@ -98,9 +123,8 @@ public class TargetSelectionB {
             new Point(77., 95.),    // point 6
             new Point(28., 3.)     // point 7
             );
-        Moments idealTurretContourMoments = Imgproc.moments(idealTurretContour);
+        idealTurretTemplate = new HuTemplate(idealTurretContour, false);
         idealTurretContour.release();
-        Imgproc.HuMoments(idealTurretContourMoments, idealTurretContourMomentsHu);
 
         // from crude hand pointing camera at small model in rkt basement
 
@@ -120,9 +144,8 @@ public class TargetSelectionB {
         //Core.flip(belowRightTurretContour, belowRightTurretContour, 0);
         //System.out.println(belowRightTurretContour);
 
-        Moments belowRightTurretContourMoments = Imgproc.moments(belowRightTurretContour);
+        belowRightTurretTemplate = new HuTemplate(belowRightTurretContour, false);
         belowRightTurretContour.release();
-        Imgproc.HuMoments(belowRightTurretContourMoments, belowRightTurretContourMomentsHu);
 
         // belowFrontTurretContour.fromArray(
         //     new Point(494., 131.),
@@ -170,17 +193,51 @@ public class TargetSelectionB {
      * This method is used to select the next target. The user MUST MODIFY this
      * method.
      * 
-     * @param mat            The camera frame containing the image to process.
+     * @param mat            The camera frame containing the image to process - read only.
      * @param nextTargetData The target data found in the camera frame.
+     * @param overlay        What to display on the camera frame.
      */
-    public void process(Mat mat, TargetDataB nextTargetData) {
+    public void process(Mat mat, TargetDataB nextTargetData, Overlay overlay) {
 
         // printCount++;
         // if(printCount > 10) printCount = 1;
         // else printCount++;
 
         // Let the GRIPPowerPortVisionPipeline filter through the camera frame
-        gripPowerPortVisionPipeline.process(mat);
+        // or only the region around where the target is predicted to be
+        Rect roi = Main.turretRoiTracking ? roiTracker.nextRoi(mat.width(), mat.height()) : null;
+        long searchStart = System.nanoTime();
+        gripPowerPortVisionPipeline.process(mat, roi);
+        long searchTime = System.nanoTime() - searchStart;
+
+        if (debuggingEnabled && roi == null && Main.turretPyramidDownscale > 1
+                && ++pyramidCheckCount >= PYRAMID_CHECK_FRAMES) {
+            // compare to full resolution
+            if (fullResolutionPipeline == null) {
+                fullResolutionPipeline = new GRIPPowerPortVisionPipeline();
+            }
+            fullResolutionPipeline.process(mat);
+            pyramidAccuracy.compare(gripPowerPortVisionPipeline.filterContoursOutput(), fullResolutionPipeline.filterContoursOutput());
+            pyramidCheckCount = 0;
+        }
+
+        if (roi != null) {
+            overlay.rectangle(roi.tl(), roi.br(), new Scalar(255, 0, 255), 1, Imgproc.LINE_8); // show the region searched
+        }
+
+        if (debuggingEnabled && ++filterReportCount >= FILTER_REPORT_FRAMES) {
+            System.out.println(pId + " " + gripPowerPortVisionPipeline.contourFilter());
+            gripPowerPortVisionPipeline.contourFilter().resetCounts();
+            System.out.format("%s HSV threshold lookup table %.3f%% of pixels same as exact HSV%n", pId,
+                100. * gripPowerPortVisionPipeline.hsvThresholdAccuracy());
+            if (Main.turretRoiTracking) {
+                System.out.println(pId + " " + roiTracker);
+            }
+            if (Main.turretPyramidDownscale > 1) {
+                System.out.println(pId + " " + pyramidAccuracy);
+            }
+            filterReportCount = 0;
+        }
 
         //gripPowerPortVisionPipeline.cvMorph0Output().copyTo(mat);
 
@@ -206,8 +263,9 @@ public class TargetSelectionB {
 
         // The gripPowerPortVisionPipeline creates an array of contours that must
         // be searched to find the target.
+        // The contours belong to the pipeline which reuses the list and frees them on the next frame.
         ArrayList<MatOfPoint> filteredContours;
-        filteredContours = new ArrayList<MatOfPoint>(gripPowerPortVisionPipeline.filterContoursOutput());
+        filteredContours = gripPowerPortVisionPipeline.filterContoursOutput();
         int contourIndex = -1; // initialize here - using same value to indicate no contours and count contours
         int contourIndexBest = -1;
         double shapeMatch = Double.MAX_VALUE; // initialize for best shaped contour - max is worst possible match
@@ -218,7 +276,7 @@ public class TargetSelectionB {
             System.out.println(pId + " No Contours");
             if (debuggingEnabled) {
                 // Display a message if no contours are found.
-                Imgproc.putText(mat, "No Contours", new Point(20, 20), Core.FONT_HERSHEY_SIMPLEX, 0.25,
+                overlay.putText("No Contours", new Point(20, 20), Core.FONT_HERSHEY_SIMPLEX, 0.25,
                         new Scalar(255, 255, 255), 1);
             }
 
@@ -232,12 +290,12 @@ public class TargetSelectionB {
                 System.err.println(pId + " " + filteredContours.size() + " Contours found");
             }
 
-            Rect boundRect = null; // upright rectangle
+            Rect boundRect = new Rect(); // upright rectangle
    
             if (debuggingEnabled) {
                 // Draw all contours at once (negative index).
                 // Positive thickness means not filled, negative thickness means filled.
-                Imgproc.drawContours(mat, filteredContours, -1, new Scalar(255, 0, 0), 1);
+                overlay.drawContours(filteredContours, -1, new Scalar(255, 0, 0), 1);
             }
 
             // Loop through all contours and just remember the best one
@@ -260,41 +318,28 @@ public class TargetSelectionB {
                 // contour.toArray()[idx].y + ")");
                 // }
 
+                // read the contour's points once for all the measurements
+                contourGeometry.set(contour);
+
                 { // create angled bounding rectangle - could use angle to double check position
-                RotatedRect rotatedRect;
-                MatOfPoint2f NewMtx = new MatOfPoint2f(contour.toArray());
-                rotatedRect = Imgproc.minAreaRect(NewMtx);
-                NewMtx.release();
+                contourGeometry.minAreaRect(rotatedRect);
                 Point[] boxPts = new Point[4];
                 rotatedRect.points(boxPts);
 
-                List<MatOfPoint> listMidContour = new ArrayList<MatOfPoint>();
-                listMidContour.add(new MatOfPoint(boxPts[0], boxPts[1], boxPts[2], boxPts[3]));
-
-                Imgproc.polylines(mat, // Matrix obj of the image
-                    listMidContour, // java.util.List<MatOfPoint> pts
-                    true, // isClosed
-                    new Scalar(0, 255, 255), // Scalar object for color
-                    1, // Thickness of the line
-                    Imgproc.LINE_4 // line type
-                    );
+                // draw edges of the angled rectangle
+                for (int idx = 0; idx < 4; idx++) {
+                    overlay.line(boxPts[idx], boxPts[(idx + 1) % 4], new Scalar(0, 255, 255), 1, Imgproc.LINE_4);
+                }
                 
-                Imgproc.putText(mat,
+                overlay.putText(
                     String.format("%4.0f", rotatedRect.angle),
                     boxPts[0],
                     Core.FONT_HERSHEY_SIMPLEX, 0.3,
                     new Scalar(255, 255, 255), 1);
-
-                while(!listMidContour.isEmpty()) {
-                    listMidContour.get(0).release();
-                    listMidContour.remove(0);
-                }
                 }
 
                 // Create a bounding upright rectangle for the contour's points
-                MatOfPoint2f NewMtx = new MatOfPoint2f(contour.toArray());
-                boundRect = Imgproc.boundingRect(NewMtx);
-                NewMtx.release();
+                contourGeometry.boundingRect(boundRect);
                 
                 // Draw a Rect, using lines, that represents the Rect
                 Point boxPts[] = new Point[4];
@@ -304,26 +349,11 @@ public class TargetSelectionB {
                 boxPts[3] = new Point(boundRect.tl().x, boundRect.br().y);
 
                 // draw edges of bounding rectangle
-                List<MatOfPoint> listMidContour = new ArrayList<MatOfPoint>();
-                listMidContour.add(new MatOfPoint(boxPts[0], boxPts[1], boxPts[2], boxPts[3]));
-
-                Imgproc.polylines(mat, // Matrix obj of the image
-                        listMidContour, // java.util.List<MatOfPoint> pts
-                        true, // isClosed
-                        new Scalar(0, 255, 255), // Scalar object for color
-                        1, // Thickness of the line
-                        Imgproc.LINE_4 // line type
-                        );
-                while(!listMidContour.isEmpty()) {
-                    listMidContour.get(0).release();
-                    listMidContour.remove(0);
-                }
+                overlay.rectangle(boxPts[0], boxPts[2], new Scalar(0, 255, 255), 1, Imgproc.LINE_4);
                 
                 // initialize shape comparison quality
-                double[] compare =
-                { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE}; 
-                double[] compareR =
-                { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE}; 
+                double compare = Double.MAX_VALUE;
+                double compareR = Double.MAX_VALUE;
                 // double[] compareF =
                 // { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE}; 
                 // double[] compareL =
@@ -347,12 +377,8 @@ public class TargetSelectionB {
                     // compute moments and Hu moments for our own matchShapes. OpenCV matchShapes() does
                     // it for us.
  
-                    Moments moments;
-                    Mat actualHu = Mat.zeros(7, 1, CvType.CV_64FC1); // initialize mat - need to quiet the compiler but zeros is likely overkill
-
-                    //moments = Imgproc.moments(filteredContours.get(contourIndex)); // same statement as the one below
-                    moments = Imgproc.moments(contour);
-                    Imgproc.HuMoments(moments, actualHu);
+                    //moments = Imgproc.moments(filteredContours.get(contourIndex)); // OpenCV way - same values
+                    contourGeometry.huMoments(moments, actualHu);
                     //System.out.println(belowRightTurretContourMomentsHu);
                     // Hu moment #7 opposite signs indicates mirror image - didn't seem to work here, though.
                     // if ( Math.signum(actualHu.get(6, 0)[0])
@@ -365,33 +391,31 @@ public class TargetSelectionB {
                     //     System.out.println("below right Hu moments 7 differ");
                     // }
 
-                    // wipeout the I7 to suppress checking for mirror similarity - we don't care and it causes some jitter
-                    actualHu.put(6, 0, 0.);
-                    idealTurretContourMomentsHu.put(6, 0, 0.);
-                    belowRightTurretContourMomentsHu.put(6, 0, 0.);
-                    compare = MatchShapes.matchShapes(idealTurretContourMomentsHu, actualHu);
+                    // the templates leave out the I7 to suppress checking for mirror similarity
+                    // stop comparing as soon as a contour can't beat the best so far - its score is then only partial
+                    compare = MatchShapes.matchShapes(idealTurretTemplate, actualHu, HuCompareNormalizationMethod, shapeMatch);
                     // test out comparison with 3 other shapes expected due to perspective distortion
-                    compareR = MatchShapes.matchShapes(belowRightTurretContourMomentsHu, actualHu); 
+                    compareR = MatchShapes.matchShapes(belowRightTurretTemplate, actualHu, HuCompareNormalizationMethod, shapeMatch);
                     // compareF = MatchShapes.matchShapes(actualHu, belowFrontTurretContourMomentsHu);
                     // compareL = MatchShapes.matchShapes(actualHu, belowSlightlyLeftTurretContourMomentsHu);
                     // some jitter in the last Hu moment
                     // if (printCount == 1) {
-                    //     System.out.println("contour " + contourIndex + " " + compare[HuCompareNormalizationMethod] + " " + compareR[HuCompareNormalizationMethod]);
-                    //     printHu("front", idealTurretContourMomentsHu);
-                    //     printHu("right", belowRightTurretContourMomentsHu);
+                    //     System.out.println("contour " + contourIndex + " " + compare + " " + compareR);
+                    //     System.out.println(idealTurretTemplate);
+                    //     System.out.println(belowRightTurretTemplate);
                     //     printHu("actual", actualHu);
                     // }
 
                     // trying to eliminate bar contours - those without higher moments (didn't much help)
                     double eps = 1.e-5;
-                    if((Math.abs(actualHu.get(4, 0)[0]) < eps) && (Math.abs(actualHu.get(5, 0)[0]) < eps)) {
-                        compare[HuCompareNormalizationMethod] = Double.MAX_VALUE;
-                        compareR[HuCompareNormalizationMethod] = Double.MAX_VALUE;
+                    if((Math.abs(actualHu[4]) < eps) && (Math.abs(actualHu[5]) < eps)) {
+                        compare = Double.MAX_VALUE;
+                        compareR = Double.MAX_VALUE;
                     }
 
-                    Imgproc.putText(mat,
+                    overlay.putText(
                         String.format("%3.0f%s%3.0f",
-                            compare[HuCompareNormalizationMethod], compareR[HuCompareNormalizationMethod] >= 10. ? " " : "       ", compareR[HuCompareNormalizationMethod]),
+                            compare, compareR >= 10. ? " " : "       ", compareR),
                         boxPts[0],
                         Core.FONT_HERSHEY_SIMPLEX, 0.3,
                         new Scalar(255, 255, 255), 1);
@@ -419,19 +443,20 @@ public class TargetSelectionB {
                 // * shape checking is disabled.
                 // ******************************************* */
 
-                if (compare[HuCompareNormalizationMethod] <= shapeMatch || compareR[HuCompareNormalizationMethod] <= shapeMatch) {
+                if (compare <= shapeMatch || compareR <= shapeMatch) {
                     // the if(=) case covers if only one contour
                     // or if optional shape matching wasn't run in which case the last contour wins
 
                     // save new best contour\
-                    shapeMatch = Math.min(compare[HuCompareNormalizationMethod], compareR[HuCompareNormalizationMethod]);
+                    shapeMatch = Math.min(compare, compareR);
                     contourIndexBest = contourIndex;
 
                     // Find the corner points of the bounding rectangle and the image size
-                    nextTargetData.boundingBoxPts[0] = boxPts[0];
-                    nextTargetData.boundingBoxPts[1] = boxPts[1];
-                    nextTargetData.boundingBoxPts[2] = boxPts[2];
-                    nextTargetData.boundingBoxPts[3] = boxPts[3];
+                    // (copied into the target data's own points which it reuses every frame)
+                    for (int idx = 0; idx < 4; idx++) {
+                        nextTargetData.boundingBoxPts[idx].x = boxPts[idx].x;
+                        nextTargetData.boundingBoxPts[idx].y = boxPts[idx].y;
+                    }
                     nextTargetData.imageSize.width = mat.width();
                     nextTargetData.imageSize.height = mat.height();
                     nextTargetData.portPositionInFrame = 0.0;
@@ -457,7 +482,9 @@ public class TargetSelectionB {
                         nextTargetData.isFreshData = true;
                         nextTargetData.isTargetFound = false;
                     } else { // target still in view
-                        Main.angleHistory.addLast(nextTargetData.angleToTurn); // save old angles for debugging insights
+                        synchronized (Main.angleHistory) { // shared by the frame-parallel workers
+                            Main.angleHistory.addLast(nextTargetData.angleToTurn); // save old angles for debugging insights
+                        }
                         nextTargetData.portDistance = pixelsToInchesTable.lookup(boundRect.br().x);
                         nextTargetData.isFreshData = true;
                         nextTargetData.isTargetFound = true;
@@ -486,33 +513,16 @@ public class TargetSelectionB {
             // }
   
             // display HSV histograms of the best contour - could do all the "best" contours in above loop
-            if (Main.displayTurretContours && Main.displayTurretHistogram) {
+            if (Main.displayTurretContours && Main.displayTurretHistogram && contourIndexBest >= 0) {
                 try {
-                Hist hist = new Hist();
-                Mat mask = Mat.zeros(mat.size(), CvType.CV_8UC1); // start mask with all zeros (skip all pixels)
-                Imgproc.drawContours(mask, filteredContours, contourIndexBest, new Scalar(255), -1); // set the mask with the contour
-                hist.displayHist(gripPowerPortVisionPipeline.outHSV(), mat, mask, new String[]{"H", "S", "V"}); // get the HSV histogram of the contour
-                mask.release();
-                // print to verify inside and outside of contour and print the values - the histogram is better
-                // MatOfPoint2f  NewMtx2 = new MatOfPoint2f( contour.toArray() );
-                // for (double idxR = boundRect.tl().y; idxR < boundRect.br().y; idxR++)
-                // for (double idxC = boundRect.tl().x; idxC < boundRect.br().x; idxC++)
-                // {
-                //  The function returns +1 , -1 , or 0
-                //  to indicate if a point is inside, outside, or on the contour, respectively.
-                //     double inOrOut = Imgproc.pointPolygonTest(NewMtx2, new Point(idxC, idxR), false);
-                //     if (inOrOut >= 0.) {
-                //     System.out.format("%d, %d, %5.1f  ", (int)idxC, (int)idxR, inOrOut);
-                //     System.out.format("%4.0f",   gripPowerPortVisionPipeline.outHSV().get((int)idxR, (int)idxC)[0]);
-                //     System.out.format("%4.0f",   gripPowerPortVisionPipeline.outHSV().get((int)idxR, (int)idxC)[1]);
-                //     System.out.format("%4.0f\n", gripPowerPortVisionPipeline.outHSV().get((int)idxR, (int)idxC)[2]);
-                //     }
-                // }
+                // the annotation thread converts only the contour's bounding box to HSV and masks it with the contour
+                overlay.histogram(filteredContours.get(contourIndexBest),
+                    new Rect(nextTargetData.boundingBoxPts[0], nextTargetData.boundingBoxPts[2]));
                 } catch(Exception e) {e.printStackTrace();}
             }
 
             // draw the final best contour to outline the target found
-            Imgproc.drawContours(mat, filteredContours, contourIndexBest, new Scalar(255, 255, 255), 1);
+            overlay.drawContours(filteredContours, contourIndexBest, new Scalar(255, 255, 255), 1);
 
             // if ( false ) { // find the simpler version of the contour - fewer points
             //     MatOfPoint2f temp = new MatOfPoint2f(filteredContours.get(contourIndexBest).toArray());
@@ -546,47 +556,41 @@ public class TargetSelectionB {
             //     temp.release();
             //     approxCurve.release();
             // }
-
-            while(!filteredContours.isEmpty()) {
-                filteredContours.get(0).release();
-                filteredContours.remove(0);
-            }        
         } // end of processing all contours in this camera frames
 
         
-        Mat targetIconTemp = new Mat(); // to resize bounding bounding box of best contour to 24x24 for target icon
-                                        // allocate this temp variable to keep processing out of the "synchronized"
+        if (Main.turretRoiTracking) {
+            // the best contour's bounding box is where to look next frame
+            roiTracker.update(contourIndexBest >= 0 ?
+                new Rect(nextTargetData.boundingBoxPts[0], nextTargetData.boundingBoxPts[2]) : null, searchTime);
+        }
 
+        // resize bounding box of best contour to 24x24 for target icon
+        Mat iconRegion;
         if( contourIndexBest >= 0 ) { // contours found path      
             // save the contour even if out of range (effectively no target found)
-            Imgproc.resize(mat.submat( new Rect(nextTargetData.boundingBoxPts[0], nextTargetData.boundingBoxPts[2])),
-                targetIconTemp, new Size(24, 24), 0., 0., Imgproc.INTER_LINEAR);
+            iconRegion = mat.submat( new Rect(nextTargetData.boundingBoxPts[0], nextTargetData.boundingBoxPts[2]));
         }
         else { // no contours found path
-            Imgproc.resize(mat.submat(mat.height()/2-24, mat.height()/2+24, mat.width()/2-24, mat.width()/2+24), // grab the image center
-                targetIconTemp, new Size(24, 24), 0., 0., Imgproc.INTER_LINEAR);
+            iconRegion = mat.submat(mat.height()/2-24, mat.height()/2+24, mat.width()/2-24, mat.width()/2+24); // grab the image center
         }
-
-        for (int i = 0; i < 100; i++) {
-            // Draw marker representing history of angle to turn.
-            Imgproc.drawMarker(mat, new Point( i, 100+Math.min(36, (int)(Math.max(0., Main.angleHistory.get(i)+18.))) ), 
-                new Scalar(255, 255, 255), Imgproc.MARKER_STAR, 10);
+        Imgproc.resize(iconRegion, targetIcon, new Size(TurretResult.ICON_SIZE, TurretResult.ICON_SIZE), 0., 0., Imgproc.INTER_LINEAR);
+        iconRegion.release();
+
+        if (overlay.isEnabled()) { // no sense recording the history if nobody sees it
+            synchronized (Main.angleHistory) { // shared by the frame-parallel workers
+                for (int i = 0; i < 100; i++) {
+                    // Draw marker representing history of angle to turn.
+                    overlay.drawMarker(new Point( i, 100+Math.min(36, (int)(Math.max(0., Main.angleHistory.get(i)+18.))) ), 
+                        new Scalar(255, 255, 255), Imgproc.MARKER_STAR, 10);
+                }
+            }
         }
  
         // update the target information with best contour or the initialized no contour data
-        synchronized (Main.tapeLock) {
-            Main.tapeDistance = nextTargetData.portDistance;
-            Main.tapeAngle = nextTargetData.angleToTurn;
-            Main.isTargetFound = nextTargetData.isTargetFound;
-            Main.tapeContours = contourIndexBest;
-            Main.shapeQuality = shapeMatch;
-            targetIconTemp.copyTo(Main.targetIcon);
-            Main.isDistanceAngleFresh = nextTargetData.isFreshData;
-            Main.tapeLock.notify();
-        }
-
-        targetIconTemp.release();
-        gripPowerPortVisionPipeline.releaseAll();
+        // (frame-parallel workers may finish out of order so the exchange doesn't replace newer data with older)
+        Main.turretResults.publish(new TurretResult(nextTargetData, contourIndexBest, shapeMatch, targetIcon));
+        // The pipeline keeps its Mats and contours for the next frame so there's no releaseAll() here.
     }
 
     void drawShape(MatOfPoint shape, Mat dst) {
@@ -609,9 +613,7 @@ public class TargetSelectionB {
         // }
     }
 
-    void printHu(String label, Mat HuShape) {
-            double[] H = new double[7];
-            HuShape.get(0, 0, H);
+    void printHu(String label, double[] H) {
             System.out.format("%8s %8f, %8f, %8f, %8f, %8f, %8f, %8f]\n", label, H[0], H[1], H[2], H[3], H[4], H[5], H[6]);
      }
     
@@ -1,13 +1,18 @@
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+import lut.LUT;
 
 /**
  * This class is used to select the target from the camera frame.
@@ -25,7 +30,7 @@ import org.opencv.imgproc.Imgproc;
  * @author FRC Team 4237
  * @version 2019.01.28.14.20
  */
-public class TargetSelectionE
+public class TargetSelectionE implements TargetSelection<TargetDataE>
 {
 	static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
 
@@ -37,8 +42,46 @@ public class TargetSelectionE
 	// This field is used to determine if debugging information should be displayed.
 	private boolean debuggingEnabled = false;
 
+	// frames between reports of how many contours each filter criterion rejected when debugging
+	private static final int FILTER_REPORT_FRAMES = 100;
+	private int filterReportCount = 0;
+
+	// Hough circle search only around the yellow blobs
+	private static final int HOUGH_BLUR_MARGIN = 4; // pixels past the padding for the blur to reach
+	private Mat houghInput = new Mat(); // reused blurred blob region
+	private Mat circles = new Mat(); // reused circles found in a region
+	private List<Rect> houghRegions = new ArrayList<>();
+	private List<int[]> houghRadii = new ArrayList<>(); // min and max radius of each region
+	private long houghPixels = 0; // pixels searched for circles since the last report
+	private long framePixels = 0; // pixels in the frames since the last report
+
+	// Power Cells detected in this frame - circles and the centroids of blobs without a circle
+	private static final int MAX_DETECTIONS = 20;
+	private double[] detectionX = new double[MAX_DETECTIONS];
+	private double[] detectionY = new double[MAX_DETECTIONS];
+	private double[] detectionRadius = new double[MAX_DETECTIONS];
+	private int detectionCount = 0;
+
+	// Power Cells tracked from frame to frame; needs the frames in order so the intake has one pipeline worker
+	private PowerCellTracker powerCellTracker = new PowerCellTracker(TargetDataE.MAX_BALLS, 0.5, 0.2, 5);
+	private static final double VELOCITY_DISPLAY_TIME = 0.25; // seconds ahead to draw where each ball is going
+
+	// Power Cell radius in pixels to distance in inches Data Table Lookup
+	LUT radiusToInchesTable = new LUT(10); // allocate fixed size array with parameter at least as large as the number
+										   // of data points - minimum of 2 points
+
 	TargetSelectionE()
 	{
+		// The 7 inch Power Cell seen by a 320 pixel wide camera with a 60 degree field of view (focal length
+		// about 277 pixels) is 277 * 3.5 / radius inches away.  Replace with measured points for more accuracy.
+		// TODO: Notice the LUT CTOR argument is maximum table size - change it if it needs to be larger
+		radiusToInchesTable.add(4., 242.); // enter (x, y) coordinates x ascending order, must add at least 2 data points
+		radiusToInchesTable.add(8., 121.);
+		radiusToInchesTable.add(16., 61.);
+		radiusToInchesTable.add(32., 30.);
+		radiusToInchesTable.add(64., 15.);
+		radiusToInchesTable.add(128., 8.);
+		System.out.println(pId + " radiusToInchesTable" + radiusToInchesTable); // print the whole table
 	}
 
 	/**
@@ -57,27 +100,40 @@ public class TargetSelectionE
 	 * method.
 	 * 
 	 * @param mat
-	 *                           The camera frame containing the image to process.
+	 *                           The camera frame containing the image to process - read only.
 	 * @param nextTargetData
 	 *                           The target data found in the camera frame.
+	 * @param overlay
+	 *                           What to display on the camera frame.
 	 */
-	public void process(Mat mat, TargetDataE nextTargetData)
+	public void process(Mat mat, TargetDataE nextTargetData, Overlay overlay)
 	{
-		Mat matForHough = new Mat();
-  		double centerTarget = 5; // FIXME  fake data
-		int distanceTarget = Integer.MIN_VALUE;
-		boolean isTargetFoundLocal = true;
 		// Let the gripPowerCellIntakeVisionPipeline filter through the camera frame
 		gripPowerCellIntakeVisionPipeline.process(mat);
 
-		gripPowerCellIntakeVisionPipeline.hsvThresholdOutput().copyTo(matForHough);
-        detectPowerCells(matForHough, mat);
-		matForHough.release();
+		if (debuggingEnabled && ++filterReportCount >= FILTER_REPORT_FRAMES)
+		{
+			System.out.println(pId + " " + gripPowerCellIntakeVisionPipeline.contourFilter());
+			gripPowerCellIntakeVisionPipeline.contourFilter().resetCounts();
+			System.out.format("%s HSV threshold lookup table %.3f%% of pixels same as exact HSV%n", pId,
+				100. * gripPowerCellIntakeVisionPipeline.hsvThresholdAccuracy());
+			System.out.format("%s HoughCircles searched %.1f%% of the pixels%n", pId,
+				framePixels == 0 ? 0. : 100. * houghPixels / framePixels);
+			houghPixels = 0;
+			framePixels = 0;
+			filterReportCount = 0;
+		}
 
 		// The gripPowerCellIntakeVisionPipeline creates an array of contours that must be searched to find
 		// the target.
+		// The contours belong to the pipeline which reuses the list and frees them on the next frame.
 		ArrayList<MatOfPoint> filteredContours;
-		filteredContours = new ArrayList<MatOfPoint>(gripPowerCellIntakeVisionPipeline.filterContoursOutput());
+		filteredContours = gripPowerCellIntakeVisionPipeline.filterContoursOutput();
+
+		detectionCount = 0;
+		detectPowerCells(gripPowerCellIntakeVisionPipeline.hsvThresholdOutput(), filteredContours, overlay);
+		detectBlobs(filteredContours);
+		powerCellTracker.update(detectionX, detectionY, detectionRadius, detectionCount, nextTargetData.captureTime);
 
 	// Check if no contours were found in the camera frame.
 		if (filteredContours.isEmpty())
@@ -87,7 +143,7 @@ public class TargetSelectionE
 				System.out.println(pId + " No Contours");
 
 				// Display a message if no contours are found.
-				Imgproc.putText(mat, "No Contours", new Point(20, 20), Core.FONT_HERSHEY_SIMPLEX, 0.25,
+				overlay.putText("No Contours", new Point(20, 20), Core.FONT_HERSHEY_SIMPLEX, 0.25,
 						new Scalar(255, 255, 0), 1);
 			}
 
@@ -100,108 +156,239 @@ public class TargetSelectionE
 
 				// Draw all contours at once (negative index).
 				// Positive thickness means not filled, negative thickness means filled.
-				Imgproc.drawContours(mat, filteredContours, -1, new Scalar(255, 255, 0), 1);
+				overlay.drawContours(filteredContours, -1, new Scalar(255, 255, 0), 1);
 			}
 		}
 
-		//Update the target
-		nextTargetData.center = centerTarget;
-		nextTargetData.distance = distanceTarget;
+		//Update the target with the tracked balls, nearest first
+		int ballCount = Math.min(powerCellTracker.getCount(), TargetDataE.MAX_BALLS);
+		nextTargetData.ballCount = ballCount;
+		for (int idx = 0; idx < ballCount; idx++)
+		{
+			nextTargetData.ballId[idx] = powerCellTracker.getId(idx);
+			nextTargetData.ballX[idx] = powerCellTracker.getX(idx);
+			nextTargetData.ballY[idx] = powerCellTracker.getY(idx);
+			nextTargetData.ballVelocityX[idx] = powerCellTracker.getVelocityX(idx);
+			nextTargetData.ballVelocityY[idx] = powerCellTracker.getVelocityY(idx);
+			nextTargetData.ballDistance[idx] = radiusToInchesTable.lookup(powerCellTracker.getRadius(idx));
+			nextTargetData.ballAge[idx] = powerCellTracker.getAge(idx);
+
+			// where the ball is going
+			Point center = new Point(powerCellTracker.getX(idx), powerCellTracker.getY(idx));
+			Point ahead = new Point(powerCellTracker.predictX(idx, VELOCITY_DISPLAY_TIME), powerCellTracker.predictY(idx, VELOCITY_DISPLAY_TIME));
+			overlay.arrowedLine(center, ahead, new Scalar(255, 0, 255), 1, 0.2);
+			overlay.putText(Integer.toString(powerCellTracker.getId(idx)), center, Core.FONT_HERSHEY_SIMPLEX, 0.3,
+					new Scalar(255, 0, 255), 1);
+		}
+
+		if (ballCount > 0)
+		{
+			nextTargetData.center = nextTargetData.ballX[0] - mat.width() / 2.;
+			nextTargetData.distance = nextTargetData.ballDistance[0];
+		}
+		else
+		{
+			nextTargetData.center = -1;
+			nextTargetData.distance = -1;
+		}
 		nextTargetData.isFreshData = true;
-		nextTargetData.isTargetFound = isTargetFoundLocal;
+		nextTargetData.isTargetFound = ballCount > 0;
 		
 		if (debuggingEnabled)
 		{
-			System.out.println("Distance: " + distanceTarget);
+			System.out.println("Distance: " + nextTargetData.distance);
 		}
 
-		gripPowerCellIntakeVisionPipeline.releaseAll();
+		// The pipeline keeps its Mats and contours for the next frame so there's no releaseAll() here.
 	}
 	
-	 public void detectPowerCells(Mat input, Mat output) 
-    {
-        desaturate(input, input);
-        Mat circles = new Mat();
-        Imgproc.blur(input, input, new Size(7, 7), new Point(2, 2));
-		
-	// Tuning HoughCircles is tricky - read the help by hovering over the method name to set circle size to search for
-	// and how close together they can be.  No hovering in FRC OpenCV
-        //Imgproc.HoughCircles(input, circles, Imgproc.CV_HOUGH_GRADIENT, 2, 100, 100, 90, 0, 1000);
-        Imgproc.HoughCircles(
-			input, //Input image (gray-scale).
-			circles, //A vector that stores sets of 3 values: xc,yc,r for each detected circle.
-			Imgproc.CV_HOUGH_GRADIENT, //Define the detection method. Currently this is the only one available in OpenCV.
-			1., //The inverse ratio of resolution.
-			(double)input.rows()/8., //Minimum distance between detected centers.
-			200., //param_1: Upper threshold for the internal Canny edge detector.
-				// param1: sensitivity of strength of edge
-					//	too high - no edges detected
-					//	too low - too much clutter
-			10., //param_2: Threshold for center detection.
-					// param2: how many edge points needed to find a circle
-					//	too low and everything is a circle.  It's related to circumference. Accumulator Threshold
-			2, //Minimum radius to be detected. If unknown, put zero as default.
-			30 //Maximum radius to be detected. If unknown, put zero as default.
-			);
-
-        //System.out.println(String.valueOf("size: " + circles.cols()) + ", " + String.valueOf(circles.rows()));
-        //System.out.println("size: " + circles.cols() + ", " + circles.rows());
-
-        if (circles.cols() > 0) 
-        {
-			System.out.println("Hough Circles=" + circles.cols());
-			// debug output Print the circle contours
-			//System.out.println("Contour Index = " + contourIndex);
-			//System.out.println(contour.dump()); // OpenCV Mat dump one line string of numbers
-			// or more control over formating with your own array to manipulate
-			//System.out.print("[Vision] " + aContour.size() + " points in contour\n[Vision]"); // a contour is a bunch of points
-			// convert MatofPoint to an array of those Points and iterate (could do list of Points but no need for this)
-			//for(Point aPoint : aContour.toArray())System.out.print(" " + aPoint); // print each point
-			//System.out.println(circles.dump());
-			
-            for (int x=0; x < Math.min(circles.cols(), 5); x++ ) // display 5 circles at the most
-            {
-                double circleVec[] = circles.get(0, x);
-
-                if (circleVec == null) 
-                {
-                    break;
-                }
-
-                Point center = new Point((int) circleVec[0], (int) circleVec[1]);
-                int radius = (int) circleVec[2];
-                //System.out.println(" x, y, r " + (circleVec[0]) + " " + (circleVec[1]) + " " + (circleVec[2]));
-
-                //Imgproc.circle(output, center, 1, new Scalar(70, 255, 70), 4); // "dot" in the center
-                Imgproc.circle(output, center, radius, new Scalar(70, 255, 70), 1); // perimeter
-            }
-        }
-
-        Imgproc.putText(output, "HoughCircles", new Point(10, 10), Core.FONT_HERSHEY_SIMPLEX, 0.25, new Scalar(70, 255, 70), 1);
-
-        circles.release();
-        //input.release();
-    }
-
-    /**
-	 * Converts a color image into shades of gray.
-	 * @param input The image on which to perform the desaturate.
-	 * @param output The image in which to store the output.
+	/**
+	 * Find the Power Cells as circles in the yellow blobs.
+	 * 
+	 * The circles are searched for only in a padded box around each blob and not at all if there are
+	 * no blobs.  The radii searched for are from the size of the blob so each box is searched for
+	 * only the circles that could have made it.  Boxes that overlap are searched together.
+	 * 
+	 * @param mask the yellow threshold mask of the frame; not changed
+	 * @param blobs the filtered contours of the yellow blobs
+	 * @param overlay where to draw the circles
 	 */
-	private void desaturate(Mat input, Mat output) {
-		switch (input.channels()) {
-			case 1:
-				// If the input is already one channel, it's already desaturated
-				input.copyTo(output);
-				break;
-			case 3:
-				Imgproc.cvtColor(input, output, Imgproc.COLOR_BGR2GRAY);
-				break;
-			case 4:
-				Imgproc.cvtColor(input, output, Imgproc.COLOR_BGRA2GRAY);
-				break;
-			default:
-				throw new IllegalArgumentException("Input to desaturate must have 1, 3, or 4 channels");
+	public void detectPowerCells(Mat mask, List<MatOfPoint> blobs, Overlay overlay)
+	{
+		framePixels += mask.total();
+
+		houghRegions.clear();
+		houghRadii.clear();
+		for (MatOfPoint blob : blobs)
+		{
+			// a blob is one Power Cell or a few touching so a cell is about as big as the blob is narrow
+			Rect box = Imgproc.boundingRect(blob);
+			int minRadius = Math.max(2, Math.min(box.width, box.height) / 4);
+			int maxRadius = Math.max(minRadius + 1, Math.max(box.width, box.height) / 2 + 2);
+			int pad = maxRadius / 2 + HOUGH_BLUR_MARGIN;
+			int left = Math.max(0, box.x - pad);
+			int top = Math.max(0, box.y - pad);
+			int right = Math.min(mask.cols(), box.x + box.width + pad);
+			int bottom = Math.min(mask.rows(), box.y + box.height + pad);
+			addHoughRegion(new Rect(left, top, right - left, bottom - top), minRadius, maxRadius);
+		}
+
+		int circlesDrawn = 0;
+		for (int idx = 0; idx < houghRegions.size(); idx++)
+		{
+			Rect region = houghRegions.get(idx);
+			int minRadius = houghRadii.get(idx)[0];
+			int maxRadius = houghRadii.get(idx)[1];
+			houghPixels += region.area();
+
+			Mat maskRegion = mask.submat(region);
+			Imgproc.blur(maskRegion, houghInput, new Size(7, 7), new Point(2, 2));
+			maskRegion.release();
+
+			// Tuning HoughCircles is tricky - read the help by hovering over the method name to set circle size to search for
+			// and how close together they can be.  No hovering in FRC OpenCV
+			//Imgproc.HoughCircles(input, circles, Imgproc.CV_HOUGH_GRADIENT, 2, 100, 100, 90, 0, 1000);
+			Imgproc.HoughCircles(
+				houghInput, //Input image (gray-scale).
+				circles, //A vector that stores sets of 3 values: xc,yc,r for each detected circle.
+				Imgproc.CV_HOUGH_GRADIENT, //Define the detection method. Currently this is the only one available in OpenCV.
+				1., //The inverse ratio of resolution.
+				2. * minRadius, //Minimum distance between detected centers - touching cells are at least a diameter apart.
+				200., //param_1: Upper threshold for the internal Canny edge detector.
+					// param1: sensitivity of strength of edge
+						//	too high - no edges detected
+						//	too low - too much clutter
+				10., //param_2: Threshold for center detection.
+						// param2: how many edge points needed to find a circle
+						//	too low and everything is a circle.  It's related to circumference. Accumulator Threshold
+				minRadius, //Minimum radius to be detected. If unknown, put zero as default.
+				maxRadius //Maximum radius to be detected. If unknown, put zero as default.
+				);
+
+			//System.out.println(String.valueOf("size: " + circles.cols()) + ", " + String.valueOf(circles.rows()));
+			//System.out.println("size: " + circles.cols() + ", " + circles.rows());
+
+			if (circles.cols() > 0) 
+			{
+				if (debuggingEnabled)
+				{
+					System.out.println(pId + " Hough Circles=" + circles.cols());
+				}
+				// debug output Print the circle contours
+				//System.out.println(circles.dump());
+
+				for (int x=0; x < circles.cols(); x++ )
+				{
+					double circleVec[] = circles.get(0, x);
+
+					if (circleVec == null) 
+					{
+						break;
+					}
+
+					// the region's circles are relative to its corner
+					addDetection(circleVec[0] + region.x, circleVec[1] + region.y, circleVec[2]);
+
+					if (circlesDrawn >= 5) // display 5 circles at the most
+					{
+						continue;
+					}
+
+					Point center = new Point((int) circleVec[0] + region.x, (int) circleVec[1] + region.y);
+					int radius = (int) circleVec[2];
+					//System.out.println(" x, y, r " + (circleVec[0]) + " " + (circleVec[1]) + " " + (circleVec[2]));
+
+					//Imgproc.circle(output, center, 1, new Scalar(70, 255, 70), 4); // "dot" in the center
+					overlay.circle(center, radius, new Scalar(70, 255, 70), 1); // perimeter
+					circlesDrawn++;
+				}
+			}
+		}
+
+		overlay.putText("HoughCircles", new Point(10, 10), Core.FONT_HERSHEY_SIMPLEX, 0.25, new Scalar(70, 255, 70), 1);
+	}
+
+	/**
+	 * Add the blobs that no circle was found in as Power Cells at their moment centroids with the radius
+	 * of a circle of the same area.
+	 * 
+	 * @param blobs the filtered contours of the yellow blobs
+	 */
+	private void detectBlobs(List<MatOfPoint> blobs)
+	{
+		for (MatOfPoint blob : blobs)
+		{
+			Rect box = Imgproc.boundingRect(blob);
+
+			// skip blobs with a circle or a blob already in them - the contours include the holes in blobs
+			boolean found = false;
+			for (int idx = 0; idx < detectionCount && !found; idx++)
+			{
+				found = detectionX[idx] >= box.x && detectionX[idx] < box.x + box.width
+					&& detectionY[idx] >= box.y && detectionY[idx] < box.y + box.height;
+			}
+			if (found)
+			{
+				continue;
+			}
+
+			Moments moments = Imgproc.moments(blob);
+			if (moments.m00 <= 0.)
+			{
+				continue;
+			}
+			addDetection(moments.m10 / moments.m00, moments.m01 / moments.m00, Math.sqrt(moments.m00 / Math.PI));
+		}
+	}
+
+	/**
+	 * Add a Power Cell found in this frame; more than MAX_DETECTIONS are ignored.
+	 */
+	private void addDetection(double x, double y, double radius)
+	{
+		if (detectionCount < MAX_DETECTIONS)
+		{
+			detectionX[detectionCount] = x;
+			detectionY[detectionCount] = y;
+			detectionRadius[detectionCount] = radius;
+			detectionCount++;
+		}
+	}
+
+	/**
+	 * Add a region to search for circles, combining it with any it overlaps.
+	 * 
+	 * @param region the padded box around a blob
+	 * @param minRadius smallest circle in the region
+	 * @param maxRadius largest circle in the region
+	 */
+	private void addHoughRegion(Rect region, int minRadius, int maxRadius)
+	{
+		int idx = 0;
+		while (idx < houghRegions.size())
+		{
+			Rect other = houghRegions.get(idx);
+			if (region.x < other.x + other.width && other.x < region.x + region.width
+				&& region.y < other.y + other.height && other.y < region.y + region.height)
+			{
+				// overlap - take the other out, combine and check the combination against the rest
+				int left = Math.min(region.x, other.x);
+				int top = Math.min(region.y, other.y);
+				int right = Math.max(region.x + region.width, other.x + other.width);
+				int bottom = Math.max(region.y + region.height, other.y + other.height);
+				region = new Rect(left, top, right - left, bottom - top);
+				minRadius = Math.min(minRadius, houghRadii.get(idx)[0]);
+				maxRadius = Math.max(maxRadius, houghRadii.get(idx)[1]);
+				houghRegions.remove(idx);
+				houghRadii.remove(idx);
+				idx = 0;
+			}
+			else
+			{
+				idx++;
+			}
 		}
+		houghRegions.add(region);
+		houghRadii.add(new int[] {minRadius, maxRadius});
 	}
 }
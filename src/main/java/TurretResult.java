@@ -0,0 +1,61 @@
+import java.lang.invoke.MethodHandles;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * What the turret targeting found in one frame, for the ImageOperator.
+ *
+ * Immutable so it can be handed between threads through the TurretResultExchange without a lock.
+ * The 24x24 target icon is a copy of its pixels (1728 bytes) so it can't change while it's read
+ * however many frames the TargetSelectionB workers publish in the meantime.
+ */
+public final class TurretResult
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    static final int ICON_SIZE = 24; // pixels each way
+
+    final int frameNumber;
+    final double portDistance;
+    final double angleToTurn;
+    final int contourIndex; // 0 is the index of the first contour; should be the only one
+    final double shapeQuality;
+    final boolean isTargetFound;
+    private final byte[] icon;
+
+    /**
+     * @param targetData the target data found in the frame
+     * @param contourIndex index of the best contour or -1 for none
+     * @param shapeQuality shape match of the best contour - less is better
+     * @param icon ICON_SIZE x ICON_SIZE CV_8UC3 image of the target; copied
+     */
+    TurretResult(TargetDataB targetData, int contourIndex, double shapeQuality, Mat icon)
+    {
+        this.frameNumber = targetData.frameNumber;
+        this.portDistance = targetData.portDistance;
+        this.angleToTurn = targetData.angleToTurn;
+        this.isTargetFound = targetData.isTargetFound;
+        this.contourIndex = contourIndex;
+        this.shapeQuality = shapeQuality;
+        this.icon = new byte[ICON_SIZE * ICON_SIZE * 3];
+        icon.get(0, 0, this.icon);
+    }
+
+    /**
+     * Copy the target icon into a Mat.
+     *
+     * @param dst the Mat; made ICON_SIZE x ICON_SIZE CV_8UC3 if it isn't already
+     */
+    void copyIconTo(Mat dst)
+    {
+        dst.create(ICON_SIZE, ICON_SIZE, CvType.CV_8UC3);
+        dst.put(0, 0, icon);
+    }
+
+    public String toString()
+    {
+        return String.format("TurretResult frame %d, %s, distance %.1f, angle %.1f, contour %d, shape %.1f",
+            frameNumber, isTargetFound ? "target" : "no target", portDistance, angleToTurn, contourIndex, shapeQuality);
+    }
+}
@@ -0,0 +1,98 @@
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the newest TurretResult from the turret targeting to the ImageOperator without a lock.
+ *
+ * Publishing swaps the immutable result into an AtomicReference and wakes the waiting reader, if
+ * any, so the targeting never waits for the reader however slow or stalled it is.  The frame-parallel
+ * workers may finish out of order so an older frame never replaces a newer one.  The reader polls
+ * for the newest result or waits for one newer than the last it saw, with a timeout.
+ *
+ * Any number of threads may publish and poll.  Only one thread may await.
+ */
+public class TurretResultExchange
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private final AtomicReference<TurretResult> newest = new AtomicReference<>();
+    private volatile Thread waiting = null;
+
+    // racy counts with several workers publishing but good enough for statistics
+    private volatile long published = 0;
+    private volatile long outOfOrder = 0; // older than the newest when published so dropped
+
+    /**
+     * Make a result the newest unless a newer frame's result is already published.  Never blocks.
+     *
+     * @param result the result for a frame
+     */
+    public void publish(TurretResult result)
+    {
+        TurretResult current;
+        do
+        {
+            current = newest.get();
+            if (current != null && current.frameNumber >= result.frameNumber)
+            {
+                outOfOrder++;
+                return;
+            }
+        } while (!newest.compareAndSet(current, result));
+
+        published++;
+
+        Thread thread = waiting;
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return the newest result or null if there hasn't been one
+     */
+    public TurretResult poll()
+    {
+        return newest.get();
+    }
+
+    /**
+     * Wait for a result newer than one already seen.
+     *
+     * @param lastFrameNumber frame number of the last result seen; 0 for any result
+     * @param timeout longest time to wait
+     * @param unit unit of the timeout
+     * @return the newest result or null if there was no newer one before the timeout or the waiting thread was interrupted
+     */
+    public TurretResult await(int lastFrameNumber, long timeout, TimeUnit unit)
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiting = Thread.currentThread();
+        try
+        {
+            TurretResult result;
+            while ((result = newest.get()) == null || result.frameNumber <= lastFrameNumber)
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L || Thread.currentThread().isInterrupted())
+                {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return result;
+        }
+        finally
+        {
+            waiting = null;
+        }
+    }
+
+    public String toString()
+    {
+        return String.format("published %d, out of order %d", published, outOfOrder);
+    }
+}
@@ -17,17 +17,38 @@
     UDPreceiveThread.start();
 
     This class contains an example of using the TargetData as it might be on the roboRIO TimedRobot
+
+    Packets are received on a DatagramChannel into one direct buffer and each message is decoded
+    in place into its stream's (camera's) own preallocated target data - no String, Gson or new
+    objects per packet.  The robot loop reads the newest target data of each stream without a lock
+    or allocating:
+
+    if (UDPreceive.turret.isNewerThan(turretWrite))
+        turretWrite = UDPreceive.turret.read(myTurretData);
+
+    The decoding, the streams and their statistics are the roboRIO's own from the visionClient
+    module (TargetMessage, ReceivedStream); this adds the text messages.
+
+    Each stream counts lost, late and duplicate messages and their rate, latency and jitter; see
+    ReceivedStream.  The statistics are printed every STATISTICS_INTERVAL and when no message has
+    come for SILENCE_INTERVAL.
 */
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
-
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import visionClient.ReceivedStream;
+import visionClient.TargetMessage;
 
 public class UdpReceive implements Runnable {
     static {
@@ -36,9 +57,23 @@ public class UdpReceive implements Runnable {
 
     private static final String pId = new String("[UdpReceive]");
 
+    private static final long SILENCE_INTERVAL = 500; // milliseconds without a message in case RPi is dead
+    private static final long STATISTICS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private static final Consumer<SelectionKey> NOTHING = key -> {}; // the only key is the channel's
+
+    private static final byte[] TURRET_PREFIX = "Turret ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INTAKE_PREFIX = "Intake ".getBytes(StandardCharsets.US_ASCII);
+
     private static String lastDataReceived = "";
-    private DatagramSocket socket = null;
+    private DatagramChannel channel = null;
+    private Selector selector = null;
+
+    // the newest data of each stream from the receive thread; copied out without locking either thread
+    public final ReceivedStream<TargetDataB> turret = new ReceivedStream<>("Turret", 'B', new TargetDataB(), new TargetDataB());
+    public final ReceivedStream<TargetDataE> intake = new ReceivedStream<>("Intake", 'E', new TargetDataE(), new TargetDataE());
+    private final ReceivedStream<?>[] streams = {turret, intake};
 
+    public volatile boolean displayStatistics = true; // print the statistics every STATISTICS_INTERVAL
 
     // example process to use the Target Data
     //
@@ -46,28 +81,27 @@ public class UdpReceive implements Runnable {
 
     class UseTargetData extends TimerTask // something like a TimedRobot class
     {
-
-        public TargetDataB newTargetDataTurret = new TargetDataB();
         private TargetDataB TargetDataTurret = new TargetDataB();
+        private long turretWrite = 0; // number of the last write copied
 
-        public TargetDataE newTargetDataIntake = new TargetDataE();
         private TargetDataE TargetDataIntake = new TargetDataE();
+        private long intakeWrite = 0; // number of the last write copied
 
         public void run()
         {
             System.out.print(pId + System.currentTimeMillis());
 
-            if (newTargetDataTurret.isFreshData) // see if there is new data
+            if (turret.isNewerThan(turretWrite)) // see if there is new data
             {
-                TargetDataTurret = newTargetDataTurret.get(); // new data so copy it to private storage for the loop to use
+                turretWrite = turret.read(TargetDataTurret); // new data so copy it to private storage for the loop to use
                 System.out.println(" Turret " + TargetDataTurret); // new data to be used appropriately; call various getters as needed
             }
             else
                 System.out.println(" Stale Turret"); // no new data so do something appropriate with the old data
  
-            if (newTargetDataIntake.isFreshData) // see if there is new data
+            if (intake.isNewerThan(intakeWrite)) // see if there is new data
             {
-                TargetDataIntake = newTargetDataIntake.get(); // new data so copy it to private storage for the loop to use
+                intakeWrite = intake.read(TargetDataIntake); // new data so copy it to private storage for the loop to use
                 System.out.println(" Intake " + TargetDataIntake); // new data to be used appropriately; call various getters as needed
             }
             else
@@ -77,24 +111,37 @@ public class UdpReceive implements Runnable {
     //
     // end example process to use the Target Data
 
+    // the receive thread's own storage; binary messages are read in place
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(Main.MAXIMUM_MESSAGE_LENGTH);
+    private final byte[] textBytes = new byte[Main.MAXIMUM_MESSAGE_LENGTH]; // text messages are copied out to be read
+    private final TargetJsonReader textMessage = new TargetJsonReader();
+    private final TargetDataB textTurret = new TargetDataB();
+    private final TargetDataE textIntake = new TargetDataE();
+
+    // racy counts but good enough for statistics
+    private volatile long packets = 0;
+    private volatile long bundles = 0;
+    private volatile long badPackets = 0; // bad bundles and unknown messages
+
     public UdpReceive(int port) {
         try {
-            socket = new DatagramSocket(port);
-            socket.setSoTimeout(500); // set receive timeout in milliseconds in case RPi is dead
-        } catch (SocketException e) {
+            channel = DatagramChannel.open();
+            // Setting the port address to reuse can sometimes help and I can't think of how
+            // it would hurt us if we only have one process running on a port.
+            // Especially if the socket isn't closed, it can take some time to free the port
+            // for reuse so if the program is restarted quickly and the port isn't noticed
+            // to be free by the operating system,
+            // there can be a socket exception if Reuse isn't set.
+            // Example: channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false); // waits in the selector instead so it can time out
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
             // do something when something bad happens
             e.printStackTrace();
         }
 
-        // Setting the port address to reuse can sometimes help and I can't think of how
-        // it would hurt us if we only have one process running on a port.
-        // Especially if the socket isn't closed, it can take some time to free the port
-        // for reuse so if the program is restarted quickly and the port isn't noticed
-        // to be free by the operating system,
-        // there can be a socket exception if Reuse isn't set.
-        // Example: socket = new DatagramSocket(port);
-        // Example: socket.setReuseAddress(true);
-
         // define a Timed Process to simulate the 20 millisecond loop of the roboRIO TimedRobot
         Timer timer = new Timer();
         timer.schedule(
@@ -105,46 +152,166 @@ public class UdpReceive implements Runnable {
 
     public void run() {
         System.out.println(pId + " packet listener thread started");
-        byte[] bufferMessage = new byte[Main.MAXIMUM_MESSAGE_LENGTH];
-        final int bufferMessageLength = bufferMessage.length; // save original length because length property is changed with usage
-        DatagramPacket packet = new DatagramPacket(bufferMessage, bufferMessageLength);
+        long lastStatisticsTime = System.nanoTime();
 
-        while (true) {
+        while (!Thread.currentThread().isInterrupted()) {
             try {
-                // receive request
-                packet.setLength(bufferMessageLength);
-                socket.receive(packet); // always receive the packets
-                byte[] data = packet.getData();
-                lastDataReceived = new String(data, 0, packet.getLength());
-                //System.out.println(pId + System.currentTimeMillis() + " >" + lastDataReceived + "<");
-
-                if (lastDataReceived.startsWith("Turret ")) {
-                    String message = new String(lastDataReceived.substring("Turret ".length()));
-                    useTargetData.newTargetDataTurret.fromJson(message);
-                    //System.out.println(pId + " Turret " + receivedTargetB);   
+                // the action form of select() doesn't add to the selected-key set so it doesn't allocate
+                if (selector.select(NOTHING, SILENCE_INTERVAL) == 0) {
+                    // do something when no messages for awhile
+                    System.out.println(pId + " hasn't heard from any vision pipeline for awhile");
+                    printSilent();
                 }
-                else if (lastDataReceived.startsWith("Intake "))
-                {
-                    String message = new String(lastDataReceived.substring("Intake ".length()));
-                    useTargetData.newTargetDataIntake.fromJson(message);
-                    //System.out.println(pId + " Intake " + receivedTargetE);   
+
+                // receive every packet waiting
+                while (true) {
+                    packet.clear();
+                    if (channel.receive(packet) == null) {
+                        break;
+                    }
+                    packet.flip();
+                    receivePacket(System.nanoTime());
                 }
-                else
-                {
-                    System.out.println(pId + " Unknown class received UDP " + lastDataReceived);
+
+                long now = System.nanoTime();
+                if (now - lastStatisticsTime >= STATISTICS_INTERVAL) {
+                    lastStatisticsTime = now;
+                    if (displayStatistics) {
+                        System.out.println(pId + " " + this);
+                    }
                 }
-            } 
-            catch (SocketTimeoutException e)
-            {
-                // do something when no messages for awhile
-                System.out.println(pId + " hasn't heard from any vision pipeline for awhile");
-            } 
+            }
             catch (IOException e)
             {
                 e.printStackTrace();
                 // could terminate loop but there is no easy restarting
             }
         }
-        // socket.close();
+
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Receive one packet - a message or a bundle of them.
+     * 
+     * @param receiveTime System.nanoTime() the packet was received
+     */
+    private void receivePacket(long receiveTime) {
+        packets++;
+        int packetLength = packet.limit();
+        if (!TargetMessage.isBundle(packet)) {
+            receive(0, packetLength, receiveTime, 0, false);
+            return;
+        }
+
+        // the newest message of each camera together - receive each as if it came alone
+        bundles++;
+        int count = TargetMessage.getBundleCount(packet);
+        int entry = TargetMessage.BUNDLE_HEADER_LENGTH;
+        for (int idx = 0; idx < count; idx++) {
+            if (entry + TargetMessage.BUNDLE_ENTRY_HEADER_LENGTH > packetLength) {
+                badPackets++;
+                System.out.println(pId + " Bad bundle received UDP");
+                return;
+            }
+            int age = TargetMessage.getEntryAge(packet, entry); // microseconds old when sent
+            int start = entry + TargetMessage.BUNDLE_ENTRY_HEADER_LENGTH;
+            int length = TargetMessage.getEntryLength(packet, entry);
+            if (start + length > packetLength) {
+                badPackets++;
+                System.out.println(pId + " Bad bundle received UDP");
+                return;
+            }
+            receive(start, length, receiveTime, age, true);
+            entry = start + length;
+            packet.limit(packetLength);
+        }
+    }
+
+    /**
+     * Receive one message - binary or text "Turret {json}" - into its stream.
+     * 
+     * @param offset where the message starts in the packet
+     * @param length length of the message
+     * @param receiveTime System.nanoTime() the packet was received
+     * @param bundleAge microseconds the message waited for its bundle; 0 if not in one
+     * @param isInBundle if the message came in a bundle
+     */
+    private void receive(int offset, int length, long receiveTime, int bundleAge, boolean isInBundle) {
+        packet.limit(offset + length).position(offset);
+        if (TargetMessage.isTargetMessage(packet)) {
+            byte id = TargetMessage.getStream(packet);
+            for (ReceivedStream<?> stream : streams) {
+                if (stream.getId() == id) {
+                    stream.receive(packet, receiveTime, bundleAge, isInBundle);
+                    return;
+                }
+            }
+            badPackets++;
+            System.out.println(pId + " Unknown stream received UDP " + (char) id);
+            return;
+        }
+
+        // text message "Turret {json}"
+        packet.get(textBytes, 0, length);
+        //System.out.println(pId + System.currentTimeMillis() + " >" + new String(textBytes, 0, length) + "<");
+        textMessage.reset(textBytes, 0, length);
+        if (textMessage.skipPrefix(TURRET_PREFIX)) {
+            receiveText(turret, textTurret, receiveTime, bundleAge);
+        }
+        else if (textMessage.skipPrefix(INTAKE_PREFIX)) {
+            receiveText(intake, textIntake, receiveTime, bundleAge);
+        }
+        else {
+            badPackets++;
+            lastDataReceived = new String(textBytes, 0, length);
+            System.out.println(pId + " Unknown class received UDP " + lastDataReceived);
+        }
+    }
+
+    /**
+     * Read the JSON of a text message after its prefix and make it the newest of its stream.
+     * 
+     * @param stream the stream of the prefix
+     * @param text the receive thread's target data to read the JSON into
+     * @param receiveTime System.nanoTime() the packet was received
+     * @param bundleAge microseconds the message waited for its bundle; 0 if not in one
+     */
+    private <T extends TargetData<T>> void receiveText(ReceivedStream<T> stream, T text, long receiveTime, int bundleAge) {
+        try {
+            text.readJson(textMessage);
+        } catch (IllegalArgumentException e) {
+            stream.receiveBad();
+            return;
+        }
+        stream.receive(text, receiveTime, bundleAge);
+    }
+
+    /**
+     * Print the statistics of the streams that have gone silent.
+     */
+    private void printSilent() {
+        long now = System.nanoTime();
+        for (ReceivedStream<?> stream : streams) {
+            long lastReceiveTime = stream.getLastReceiveTime();
+            if (lastReceiveTime != 0L) {
+                System.out.println(pId + " " + stream.getName() + " silent for "
+                    + TimeUnit.NANOSECONDS.toMillis(now - lastReceiveTime) + " ms; " + stream);
+            }
+        }
+    }
+
+    public String toString() {
+        StringBuilder statistics = new StringBuilder(
+            String.format("packets %d, bundles %d, bad %d", packets, bundles, badPackets));
+        for (ReceivedStream<?> stream : streams) {
+            statistics.append("; ").append(stream);
+        }
+        return statistics.toString();
     }
 }
@@ -2,70 +2,411 @@
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
-public class UdpSend
+import edu.wpi.first.wpiutil.WPIUtilJNI;
+
+import visionClient.TargetMessage;
+
+/**
+ * Sends the messages of each stream (camera) to the roboRIO from its own thread so the pipelines
+ * never wait on the network or on each other.
+ *
+ * Each stream posts its messages to its own Mailbox that holds only the newest message - a
+ * message not sent yet is replaced by a newer one since the roboRIO only wants the newest.
+ * Posting copies the message into the mailbox and swaps it in without a lock or allocating.  The
+ * send thread takes the newest message of each stream and sends it on a non-blocking
+ * DatagramChannel from a direct buffer.  A message the network can't take right away is dropped.
+ *
+ * Or, coalesced, the send thread sends one bundle of the newest message of every stream each tick
+ * such as every 20 ms for the 50 Hz roboRIO loop - fewer packets, one wakeup of the roboRIO per
+ * loop and one snapshot of all the cameras.  See TargetMessage for the bundle.
+ *
+ * The name of the receiver such as roborio-4237-frc.local is resolved on the send thread and
+ * again every RECONNECT_INTERVAL until it resolves, so a missing roboRIO never holds anybody up.
+ */
+public class UdpSend implements Runnable
 {
     static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
 
     private static final String pId = new String("[UdpSend]");
 
-    private InetAddress address;
-    private boolean isConnected;
+    private static final long RECONNECT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final long ACTIVE_INTERVAL = TimeUnit.SECONDS.toNanos(1); // streams older are left out of bundles
+
+    private final int port;
+    private final String URL;
+    private final long tick; // nanoseconds between bundles; 0 to send each message as it's posted
+
+    private volatile boolean isConnected = false;
+    private volatile Mailbox[] mailboxes = new Mailbox[0];
+    private volatile Thread sender = null;
+    private volatile boolean waiting = false; // the send thread is or is about to be parked
+
+    // only used by the send thread
+    private DatagramChannel channel;
+    private InetSocketAddress address;
+    private long lastConnectTime;
+    private final ByteBuffer bundle = ByteBuffer.allocateDirect(Main.MAXIMUM_MESSAGE_LENGTH);
+    private int bundleSequence = 0;
+
+    // racy counts but good enough for statistics
+    private volatile long bundlesSent = 0;
+    private volatile long bundlesDropped = 0;
+
+    /**
+     * A stream's newest message not sent yet.  A triple buffer: the posting thread fills its own
+     * buffer and swaps it with the middle one, the send thread swaps its own buffer with the middle
+     * one when that's fresh, so neither ever touches a buffer the other is using.
+     *
+     * One thread at a time may post to a mailbox.
+     */
+    public class Mailbox
+    {
+        private static final int FRESH = 4; // flag on the middle index - it holds a message not sent yet
+
+        private final String name;
+        private final ByteBuffer[] buffers = new ByteBuffer[3];
+        private final long[] postTimes = new long[3]; // System.nanoTime() each buffer was posted
+        private final AtomicInteger middle = new AtomicInteger(1);
+        private int post = 0; // only used by the posting thread
+        private int send = 2; // only used by the send thread
+        private boolean hasMessage = false; // the send buffer has a message; only used by the send thread
+        private boolean isNew = false; // takeNewest() returned a message not bundled before; only used by the send thread
+
+        // racy counts with the send thread but good enough for statistics
+        private volatile long posted = 0;
+        private volatile long replaced = 0; // posted again before it was sent
+        private volatile long sent = 0;
+        private volatile long dropped = 0; // the network couldn't take it, not connected, no room in the bundle or too old
+
+        private Mailbox(String name)
+        {
+            this.name = name;
+            for (int idx = 0; idx < buffers.length; idx++)
+            {
+                buffers[idx] = ByteBuffer.allocateDirect(Main.MAXIMUM_MESSAGE_LENGTH);
+            }
+        }
+
+        /**
+         * Make a message the newest of this stream to send.  Never waits or allocates.
+         *
+         * @param message the message from its position to its limit; copied and not changed
+         */
+        public void post(ByteBuffer message)
+        {
+            ByteBuffer buffer = buffers[post];
+            int start = message.position();
+            buffer.clear();
+            buffer.put(message);
+            buffer.flip();
+            message.position(start);
+            postTimes[post] = System.nanoTime();
+
+            int previous = middle.getAndSet(post | FRESH);
+            post = previous & ~FRESH;
+            posted++;
+            if ((previous & FRESH) != 0)
+            {
+                replaced++;
+            }
+
+            if (waiting)
+            {
+                LockSupport.unpark(sender);
+            }
+        }
 
-    private byte[] UDPbuffer = new byte[Main.MAXIMUM_MESSAGE_LENGTH];
-    private final int bufLength = UDPbuffer.length; // save original length because length property is changed with usage
+        /**
+         * @return the newest message not sent yet or null if there isn't one; only for the send thread
+         */
+        private ByteBuffer take()
+        {
+            if ((middle.get() & FRESH) == 0)
+            {
+                return null;
+            }
+            send = middle.getAndSet(send) & ~FRESH;
+            hasMessage = true;
+            return buffers[send];
+        }
 
-    private DatagramPacket packet;
-    private DatagramSocket datagramSocket;
-    private int port;
-    private String URL;
+        /**
+         * @return the newest message, even if already sent, or null if none yet; only for the send thread
+         */
+        private ByteBuffer takeNewest()
+        {
+            isNew = take() != null; // counted sent or dropped by the bundle it's first in
+            if (!hasMessage)
+            {
+                return null;
+            }
+            ByteBuffer buffer = buffers[send];
+            buffer.position(0);
+            return buffer;
+        }
+
+        /**
+         * @return System.nanoTime() the message takeNewest() returned was posted
+         */
+        private long getPostTime()
+        {
+            return postTimes[send];
+        }
+
+        private boolean isFresh()
+        {
+            return (middle.get() & FRESH) != 0;
+        }
+
+        public String toString()
+        {
+            return String.format("%s posted %d, replaced %d, sent %d, dropped %d", name, posted, replaced, sent, dropped);
+        }
+    }
 
     public UdpSend(int port, String URL)
     {
-        isConnected = false;
+        this(port, URL, 0);
+    }
+
+    /**
+     * @param port port of the receiver
+     * @param URL name or address of the receiver
+     * @param coalesceMillis milliseconds between bundles of the newest message of each stream or
+     *     0 to send each message as it's posted
+     */
+    public UdpSend(int port, String URL, int coalesceMillis)
+    {
         this.port = port;
         this.URL = URL;
-        Connect();
+        this.tick = TimeUnit.MILLISECONDS.toNanos(coalesceMillis);
     }
 
-    public synchronized void Communicate(String message)
+    /**
+     * Make the mailbox of a stream.  Call before the stream's first message.
+     *
+     * @param name name of the stream for statistics such as "Turret"
+     * @return the stream's mailbox
+     */
+    public synchronized Mailbox openMailbox(String name)
     {
-        if(isConnected)
+        Mailbox mailbox = new Mailbox(name);
+        Mailbox[] more = Arrays.copyOf(mailboxes, mailboxes.length + 1);
+        more[more.length - 1] = mailbox;
+        mailboxes = more;
+        return mailbox;
+    }
+
+    public boolean isConnected() // getter for isConnected
+    {
+        return isConnected;
+    }
+
+    public void run()
+    {
+        System.out.println(pId + " Starting run loop");
+        sender = Thread.currentThread();
+        Connect();
+        long nextTick = System.nanoTime();
+
+        while (!Thread.currentThread().isInterrupted())
         {
-        UDPbuffer = message.getBytes();
+            if (!isConnected && System.nanoTime() - lastConnectTime >= RECONNECT_INTERVAL)
+            {
+                Connect();
+            }
 
-        packet.setData(UDPbuffer, 0, UDPbuffer.length);
+            if (tick > 0L)
+            {
+                // a bundle every tick on a fixed rate; posts don't wake this thread
+                long now = System.nanoTime();
+                if (now - nextTick < 0L)
+                {
+                    LockSupport.parkNanos(this, nextTick - now);
+                    continue;
+                }
+                nextTick += tick;
+                if (now - nextTick >= 0L)
+                {
+                    nextTick = now + tick; // fell behind so skip the missed ticks
+                }
+                sendBundle(now);
+                continue;
+            }
+
+            boolean sentAny = false;
+            for (Mailbox mailbox : mailboxes)
+            {
+                ByteBuffer message = mailbox.take();
+                if (message != null)
+                {
+                    send(mailbox, message);
+                    sentAny = true;
+                }
+            }
+            if (sentAny)
+            {
+                continue; // more may have been posted while sending
+            }
+
+            // wait for a post - waiting is set before the last look so a post either is seen or unparks
+            waiting = true;
+            if (!isAnyFresh())
+            {
+                LockSupport.parkNanos(this, isConnected ? TimeUnit.SECONDS.toNanos(1) : RECONNECT_INTERVAL);
+            }
+            waiting = false;
+        }
 
         try
         {
-            datagramSocket.send(packet); // send target information to robot
-        } 
+            if (channel != null)
+            {
+                channel.close();
+            }
+        }
         catch (IOException e)
         {
             e.printStackTrace();
         }
+        System.out.println(pId + " Stopped");
+    }
+
+    private boolean isAnyFresh()
+    {
+        for (Mailbox mailbox : mailboxes)
+        {
+            if (mailbox.isFresh())
+            {
+                return true;
+            }
         }
+        return false;
     }
 
-    public synchronized boolean isConnected() // getter for isConnected
+    /**
+     * Send one bundle of the newest message of each stream active in the last ACTIVE_INTERVAL.
+     *
+     * @param now System.nanoTime() of the tick
+     */
+    private void sendBundle(long now)
     {
-        return isConnected;
+        TargetMessage.beginBundle(bundle, ++bundleSequence, WPIUtilJNI.now());
+        for (Mailbox mailbox : mailboxes)
+        {
+            ByteBuffer message = mailbox.takeNewest();
+            if (message == null)
+            {
+                continue;
+            }
+            long age = now - mailbox.getPostTime();
+            if (age > ACTIVE_INTERVAL || !TargetMessage.addToBundle(bundle, message, (int) (Math.max(age, 0L) / 1000L)))
+            {
+                if (mailbox.isNew)
+                {
+                    mailbox.dropped++;
+                    mailbox.isNew = false;
+                }
+            }
+        }
+        if (TargetMessage.endBundle(bundle) == 0)
+        {
+            return;
+        }
+
+        boolean isSent = false;
+        if (isConnected)
+        {
+            try
+            {
+                isSent = channel.send(bundle, address) > 0;
+            }
+            catch (IOException e)
+            {
+                System.out.println(pId + " " + e);
+                isConnected = false;
+                lastConnectTime = System.nanoTime();
+            }
+        }
+        if (isSent)
+        {
+            bundlesSent++;
+        }
+        else
+        {
+            bundlesDropped++;
+        }
+
+        // each message is counted once, by the first bundle it's in, even though it's repeated in later ones
+        for (Mailbox mailbox : mailboxes)
+        {
+            if (mailbox.isNew)
+            {
+                if (isSent)
+                {
+                    mailbox.sent++;
+                }
+                else
+                {
+                    mailbox.dropped++;
+                }
+                mailbox.isNew = false;
+            }
+        }
+    }
+
+    private void send(Mailbox mailbox, ByteBuffer message)
+    {
+        if (!isConnected)
+        {
+            mailbox.dropped++;
+            return;
+        }
+
+        try
+        {
+            if (channel.send(message, address) > 0) // send target information to robot
+            {
+                mailbox.sent++;
+            }
+            else
+            {
+                mailbox.dropped++; // no room in the socket buffer; a newer message will follow
+            }
+        }
+        catch (IOException e)
+        {
+            // such as the network not up yet; resolve the name again in a while
+            mailbox.dropped++;
+            System.out.println(pId + " " + e);
+            isConnected = false;
+            lastConnectTime = System.nanoTime();
+        }
     }
 
-    public synchronized void Connect ()
+    /**
+     * Resolve the receiver's name and open the channel.  Only on the send thread since resolving
+     * a name such as roborio-4237-frc.local can take seconds if the roboRIO isn't there.
+     */
+    private void Connect()
     {
-        if(isConnected) return; // cannot connect if already connected
+        lastConnectTime = System.nanoTime();
 
         try
         {
             System.out.println(pId + " Sending UDP messages to " + URL + ":" + port);
-            address = InetAddress.getByName(URL);
-        } 
+            address = new InetSocketAddress(InetAddress.getByName(URL), port);
+        }
         catch (UnknownHostException e)
         {
             System.out.println(pId + " Requested message receiver not responding.");
@@ -76,30 +417,40 @@ public class UdpSend
 
         try
         {
-            datagramSocket = new DatagramSocket();
-            datagramSocket.setBroadcast(true);
+            if (channel == null)
+            {
+                channel = DatagramChannel.open();
+                channel.configureBlocking(false); // never wait for the network; a message that doesn't fit is dropped
+                channel.socket().setBroadcast(true);
+            }
             // Setting the port address to reuse can sometimes help and I can't think of how
             // it would hurt us if we only have one process running on a port.
             // Especially if the socket isn't closed, it can take some time to free the port
             // for reuse so if the program is restarted quickly and the port isn't noticed
             // to be free by the operating system,
             // there can be a socket exception if Reuse isn't set.
-            // Example: socket = new DatagramSocket(port);
-            // Example: socket.setReuseAddress(true);
-
-            // datagramSocket.setSoTimeout(2000); // robot response receive timeout in
-            // milliseconds check in case robot
-            // isn't responding. Not used if no attempt to receive a response
-        } 
-        catch (SocketException e)
+            // Example: channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        }
+        catch (IOException e)
         {
             e.printStackTrace();
             return;
         }
 
-        packet = new DatagramPacket(UDPbuffer, bufLength, address, port);
-
         isConnected = true; // made it all the way here so assume all is OK
     }
 
+    public String toString()
+    {
+        StringBuilder statistics = new StringBuilder(isConnected ? "connected" : "not connected");
+        if (tick > 0L)
+        {
+            statistics.append(String.format(", bundles sent %d, dropped %d", bundlesSent, bundlesDropped));
+        }
+        for (Mailbox mailbox : mailboxes)
+        {
+            statistics.append("; ").append(mailbox);
+        }
+        return statistics.toString();
+    }
 }
@@ -0,0 +1,196 @@
+package contourUtils;
+
+import java.util.List;
+
+import org.opencv.core.MatOfPoint;
+
+/**
+ * Filters out contours that do not meet certain criteria - the GRIP Filter_Contours step.
+ * 
+ * Each contour's points are read from OpenCV once into a ContourGeometry and the criteria
+ * are tested cheapest first so most contours are rejected before the expensive ones:
+ * vertex count (known without reading the points), bounding box width and height,
+ * ratio (from the bounding box), area, perimeter (only if a minimum is set) and
+ * last solidity (convex hull in Java on the points already read).
+ * 
+ * The number of contours rejected by each criterion is counted to help tune the limits.
+ * 
+ * The results are the same as the GRIP generated filter.  Not thread safe - one per pipeline.
+ */
+public class ContourFilter {
+
+    /**
+     * The filter criteria in the order they are tested.
+     */
+    public enum Criterion {
+        VERTICES, WIDTH, HEIGHT, RATIO, AREA, PERIMETER, SOLIDITY
+    }
+
+    private final double minArea;
+    private final double minPerimeter;
+    private final double minWidth;
+    private final double maxWidth;
+    private final double minHeight;
+    private final double maxHeight;
+    private final double minSolidity;
+    private final double maxSolidity;
+    private final double maxVertexCount;
+    private final double minVertexCount;
+    private final double minRatio;
+    private final double maxRatio;
+
+    private final ContourGeometry geometry = new ContourGeometry(); // reused for every contour
+
+    private final long[] rejected = new long[Criterion.values().length];
+    private long tested = 0;
+    private long kept = 0;
+
+    /**
+     * Parameters in the order of the GRIP generated filterContours().
+     * 
+     * @param minArea is the minimum area of a contour that will be kept
+     * @param minPerimeter is the minimum perimeter of a contour that will be kept
+     * @param minWidth minimum width of a contour
+     * @param maxWidth maximum width
+     * @param minHeight minimum height
+     * @param maxHeight maximum height
+     * @param solidity the minimum and maximum solidity of a contour (percent)
+     * @param maxVertexCount maximum vertex Count
+     * @param minVertexCount minimum vertex Count of the contours
+     * @param minRatio minimum ratio of width to height
+     * @param maxRatio maximum ratio of width to height
+     */
+    public ContourFilter(double minArea, double minPerimeter, double minWidth, double maxWidth,
+            double minHeight, double maxHeight, double[] solidity, double maxVertexCount,
+            double minVertexCount, double minRatio, double maxRatio) {
+        this.minArea = minArea;
+        this.minPerimeter = minPerimeter;
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.minSolidity = solidity[0];
+        this.maxSolidity = solidity[1];
+        this.maxVertexCount = maxVertexCount;
+        this.minVertexCount = minVertexCount;
+        this.minRatio = minRatio;
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Filter the contours.
+     * 
+     * @param inputContours is the input list of contours
+     * @param output is the the output list of contours; cleared first
+     */
+    public void filter(List<MatOfPoint> inputContours, List<MatOfPoint> output) {
+        output.clear();
+
+        for (int i = 0; i < inputContours.size(); i++) {
+            final MatOfPoint contour = inputContours.get(i);
+            tested++;
+
+            Criterion failed = test(contour);
+            if (failed != null) {
+                rejected[failed.ordinal()]++;
+                continue;
+            }
+
+            kept++;
+            output.add(contour);
+        }
+    }
+
+    /**
+     * Test one contour.
+     * 
+     * @param contour the contour
+     * @return the first criterion it failed or null if it passed them all
+     */
+    private Criterion test(MatOfPoint contour) {
+        final int vertexCount = contour.rows();
+        if (vertexCount < minVertexCount || vertexCount > maxVertexCount) return Criterion.VERTICES;
+
+        // get all the points at once instead of a JNI call for each one
+        geometry.set(contour);
+
+        final int width = geometry.width();
+        final int height = geometry.height();
+        if (width < minWidth || width > maxWidth) return Criterion.WIDTH;
+        if (height < minHeight || height > maxHeight) return Criterion.HEIGHT;
+
+        final double ratio = width / (double) height;
+        if (ratio < minRatio || ratio > maxRatio) return Criterion.RATIO;
+
+        final double area = geometry.area();
+        if (area < minArea) return Criterion.AREA;
+
+        if (minPerimeter > 0. && geometry.perimeter() < minPerimeter) return Criterion.PERIMETER;
+
+        // not geometry.solidity() - GRIP passes a hull of no area (NaN or infinite solidity)
+        final double solid = 100 * area / geometry.hullArea();
+        if (solid < minSolidity || solid > maxSolidity) return Criterion.SOLIDITY;
+
+        return null;
+    }
+
+    /**
+     * Area of a polygon by the shoelace formula the same as Imgproc.contourArea.
+     * 
+     * @param points x, y of the contour points
+     * @param indices indices of the points of the polygon in order or null for all the points in order
+     * @param count number of points in the polygon
+     * @return the area
+     */
+    public static double polygonArea(int[] points, int[] indices, int count) {
+        double area = 0.;
+        for (int j = 0, k = count - 1; j < count; k = j, j++) {
+            int pj = 2 * (indices == null ? j : indices[j]);
+            int pk = 2 * (indices == null ? k : indices[k]);
+            area += (double) points[pk] * points[pj + 1] - (double) points[pj] * points[pk + 1];
+        }
+        return Math.abs(area * 0.5);
+    }
+
+    /**
+     * @param criterion the criterion
+     * @return the number of contours rejected by the criterion
+     */
+    public long getRejected(Criterion criterion) {
+        return rejected[criterion.ordinal()];
+    }
+
+    /**
+     * @return the number of contours tested
+     */
+    public long getTested() {
+        return tested;
+    }
+
+    /**
+     * @return the number of contours that passed all the criteria
+     */
+    public long getKept() {
+        return kept;
+    }
+
+    /**
+     * Start the counts over.
+     */
+    public void resetCounts() {
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = 0;
+        }
+        tested = 0;
+        kept = 0;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("contours tested ").append(tested).append(", kept ").append(kept).append(", rejected by");
+        for (Criterion criterion : Criterion.values()) {
+            sb.append(" ").append(criterion.name().toLowerCase()).append(" ").append(rejected[criterion.ordinal()]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,484 @@
+package contourUtils;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Moments;
+
+/**
+ * Contour measurements in Java on the contour's points read from OpenCV once.
+ *
+ * For the small contours of the targets each OpenCV call costs more in the JNI round trip,
+ * the Point[] and MatOfPoint2f copies and the garbage than in the arithmetic.  This reads the
+ * points into a reused int[] with one call and then computes the same results as the OpenCV
+ * functions without going back:
+ *
+ * boundingRect - Imgproc.boundingRect
+ * area - Imgproc.contourArea
+ * perimeter - Imgproc.arcLength closed
+ * moments and huMoments - Imgproc.moments and Imgproc.HuMoments
+ * convexHull, hullArea and solidity - Imgproc.convexHull (Andrew's monotone chain)
+ * minAreaRect - Imgproc.minAreaRect (OpenCV's rotating calipers on the hull)
+ *
+ * Results are cached until the next set() so asking twice costs nothing.
+ * ContourGeometryBenchmark compares the results and times to OpenCV.
+ *
+ * Not thread safe - one per user.
+ */
+public class ContourGeometry {
+
+    private int[] points = new int[2 * 64]; // x, y of the contour; grows to the largest contour seen
+    private int count = 0;
+
+    private int[] hull = new int[64 + 1]; // indices of the hull points; grows to the largest contour seen
+    private int[] order = new int[64]; // point indices sorted by x then y for the hull
+    private int hullCount = -1; // -1 until computed
+
+    private boolean boundsValid = false;
+    private int minX, maxX, minY, maxY;
+
+    private double area = -1.;
+    private double perimeter = -1.;
+    private double hullArea = -1.;
+
+    private final double[] rawMoments = new double[10]; // m00 m10 m01 m20 m11 m02 m30 m21 m12 m03
+
+    // workspace for the rotating calipers
+    private float[] hullX = new float[64];
+    private float[] hullY = new float[64];
+    private float[] vectX = new float[64];
+    private float[] vectY = new float[64];
+    private float[] inverseLength = new float[64];
+
+    /**
+     * Read a contour's points with one call.
+     *
+     * @param contour the contour
+     * @return the number of points
+     */
+    public int set(MatOfPoint contour) {
+        final int rows = contour.rows();
+        if (points.length < 2 * rows) {
+            grow(rows);
+        }
+        contour.get(0, 0, points);
+        clear(rows);
+        return count;
+    }
+
+    /**
+     * Use points already read.
+     *
+     * @param points x, y of the contour points; copied
+     * @param count the number of points
+     */
+    public void set(int[] points, int count) {
+        if (this.points.length < 2 * count) {
+            grow(count);
+        }
+        System.arraycopy(points, 0, this.points, 0, 2 * count);
+        clear(count);
+    }
+
+    private void grow(int count) {
+        points = new int[4 * count];
+        hull = new int[2 * count + 1];
+        order = new int[2 * count];
+        hullX = new float[2 * count];
+        hullY = new float[2 * count];
+        vectX = new float[2 * count];
+        vectY = new float[2 * count];
+        inverseLength = new float[2 * count];
+    }
+
+    private void clear(int count) {
+        this.count = count;
+        hullCount = -1;
+        boundsValid = false;
+        area = -1.;
+        perimeter = -1.;
+        hullArea = -1.;
+    }
+
+    /**
+     * @return the number of points in the contour
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return x, y of the contour points; valid until the next set()
+     */
+    public int[] getPoints() {
+        return points;
+    }
+
+    private void bounds() {
+        if (boundsValid) return;
+        minX = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxY = Integer.MIN_VALUE;
+        for (int j = 0; j < 2 * count; j += 2) {
+            minX = Math.min(minX, points[j]);
+            maxX = Math.max(maxX, points[j]);
+            minY = Math.min(minY, points[j + 1]);
+            maxY = Math.max(maxY, points[j + 1]);
+        }
+        boundsValid = true;
+    }
+
+    /**
+     * @return width of the upright bounding rectangle the same as Imgproc.boundingRect
+     */
+    public int width() {
+        bounds();
+        return count == 0 ? 0 : maxX - minX + 1;
+    }
+
+    /**
+     * @return height of the upright bounding rectangle the same as Imgproc.boundingRect
+     */
+    public int height() {
+        bounds();
+        return count == 0 ? 0 : maxY - minY + 1;
+    }
+
+    /**
+     * The upright bounding rectangle the same as Imgproc.boundingRect.
+     *
+     * @param rect set to the bounding rectangle
+     * @return rect
+     */
+    public Rect boundingRect(Rect rect) {
+        bounds();
+        if (count == 0) {
+            rect.x = rect.y = rect.width = rect.height = 0;
+        } else {
+            rect.x = minX;
+            rect.y = minY;
+            rect.width = maxX - minX + 1;
+            rect.height = maxY - minY + 1;
+        }
+        return rect;
+    }
+
+    /**
+     * @return area the same as Imgproc.contourArea
+     */
+    public double area() {
+        if (area < 0.) {
+            area = ContourFilter.polygonArea(points, null, count);
+        }
+        return area;
+    }
+
+    /**
+     * @return perimeter the same as Imgproc.arcLength closed
+     */
+    public double perimeter() {
+        if (perimeter < 0.) {
+            perimeter = 0.;
+            for (int j = 0, k = 2 * (count - 1); j < 2 * count; k = j, j += 2) {
+                perimeter += Math.hypot(points[j] - points[k], points[j + 1] - points[k + 1]);
+            }
+        }
+        return perimeter;
+    }
+
+    /**
+     * The moments of the contour polygon the same as Imgproc.moments of the contour.
+     *
+     * @param moments set to the moments including the central and normalized moments
+     * @return moments
+     */
+    public Moments moments(Moments moments) {
+        double a00 = 0., a10 = 0., a01 = 0., a20 = 0., a11 = 0., a02 = 0., a30 = 0., a21 = 0., a12 = 0., a03 = 0.;
+
+        if (count > 2) {
+            // Green's theorem over the polygon edges the same as OpenCV contourMoments
+            double xi_1 = points[2 * (count - 1)];
+            double yi_1 = points[2 * (count - 1) + 1];
+            double xi_12 = xi_1 * xi_1;
+            double yi_12 = yi_1 * yi_1;
+
+            for (int j = 0; j < 2 * count; j += 2) {
+                double xi = points[j];
+                double yi = points[j + 1];
+                double xi2 = xi * xi;
+                double yi2 = yi * yi;
+                double dxy = xi_1 * yi - xi * yi_1;
+                double xii_1 = xi_1 + xi;
+                double yii_1 = yi_1 + yi;
+
+                a00 += dxy;
+                a10 += dxy * xii_1;
+                a01 += dxy * yii_1;
+                a20 += dxy * (xi_1 * xii_1 + xi2);
+                a11 += dxy * (xi_1 * (yii_1 + yi_1) + xi * (yii_1 + yi));
+                a02 += dxy * (yi_1 * yii_1 + yi2);
+                a30 += dxy * xii_1 * (xi_12 + xi2);
+                a03 += dxy * yii_1 * (yi_12 + yi2);
+                a21 += dxy * (xi_12 * (3 * yi_1 + yi) + 2 * xi * xi_1 * yii_1 + xi2 * (yi_1 + 3 * yi));
+                a12 += dxy * (yi_12 * (3 * xi_1 + xi) + 2 * yi * yi_1 * xii_1 + yi2 * (xi_1 + 3 * xi));
+
+                xi_1 = xi;
+                yi_1 = yi;
+                xi_12 = xi2;
+                yi_12 = yi2;
+            }
+        }
+
+        if (Math.abs(a00) > 1.1920929e-07) { // FLT_EPSILON
+            final double sign = a00 > 0. ? 1. : -1.; // either direction around the contour
+            rawMoments[0] = sign * a00 / 2.;
+            rawMoments[1] = sign * a10 / 6.;
+            rawMoments[2] = sign * a01 / 6.;
+            rawMoments[3] = sign * a20 / 12.;
+            rawMoments[4] = sign * a11 / 24.;
+            rawMoments[5] = sign * a02 / 12.;
+            rawMoments[6] = sign * a30 / 20.;
+            rawMoments[7] = sign * a21 / 60.;
+            rawMoments[8] = sign * a12 / 60.;
+            rawMoments[9] = sign * a03 / 20.;
+        } else {
+            java.util.Arrays.fill(rawMoments, 0.);
+        }
+
+        moments.set(rawMoments); // also computes the central and normalized moments
+        return moments;
+    }
+
+    /**
+     * The 7 Hu moments the same as Imgproc.HuMoments of Imgproc.moments.
+     *
+     * @param moments workspace set to the moments
+     * @param hu array of at least 7 for the moments
+     * @return hu
+     */
+    public double[] huMoments(Moments moments, double[] hu) {
+        return HuTemplate.huMoments(moments(moments), hu);
+    }
+
+    /**
+     * The convex hull by Andrew's monotone chain.  Collinear points are left out.
+     *
+     * @return the number of hull points; their indices are from getHull()
+     */
+    public int convexHull() {
+        if (hullCount >= 0) return hullCount;
+
+        // sort the point indices by x then y - insertion sort since contours are mostly small
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = 1; i < count; i++) {
+            final int index = order[i];
+            int j = i - 1;
+            while (j >= 0 && compare(order[j], index) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+
+        int n = 0;
+        for (int i = 0; i < count; i++) { // lower chain
+            final int index = order[i];
+            while (n >= 2 && cross(hull[n - 2], hull[n - 1], index) <= 0) n--;
+            hull[n++] = index;
+        }
+        for (int i = count - 2, lower = n + 1; i >= 0; i--) { // upper chain
+            final int index = order[i];
+            while (n >= lower && cross(hull[n - 2], hull[n - 1], index) <= 0) n--;
+            hull[n++] = index;
+        }
+        hullCount = count <= 1 ? count : n - 1; // the last point is the first again
+        return hullCount;
+    }
+
+    private int compare(int a, int b) {
+        final int dx = points[2 * a] - points[2 * b];
+        return dx != 0 ? dx : points[2 * a + 1] - points[2 * b + 1];
+    }
+
+    private long cross(int o, int a, int b) {
+        return (long) (points[2 * a] - points[2 * o]) * (points[2 * b + 1] - points[2 * o + 1])
+            - (long) (points[2 * a + 1] - points[2 * o + 1]) * (points[2 * b] - points[2 * o]);
+    }
+
+    /**
+     * @return indices of the convex hull points into the contour points; valid for convexHull() of them
+     */
+    public int[] getHull() {
+        convexHull();
+        return hull;
+    }
+
+    /**
+     * @return area of the convex hull
+     */
+    public double hullArea() {
+        if (hullArea < 0.) {
+            hullArea = ContourFilter.polygonArea(points, hull, convexHull());
+        }
+        return hullArea;
+    }
+
+    /**
+     * @return contour area over convex hull area (0 to 1) or 0 if the hull has no area
+     */
+    public double solidity() {
+        final double hullArea = hullArea();
+        return hullArea > 0. ? area() / hullArea : 0.;
+    }
+
+    /**
+     * The rotated rectangle of least area around the contour the same as Imgproc.minAreaRect.
+     *
+     * OpenCV's rotating calipers ported as is, in float like OpenCV, on the hull taken in the
+     * same direction as OpenCV takes it so the angle is in the same [-90, 0) degree range.
+     * Where more than one rectangle has the least area either may be chosen.
+     *
+     * @param rect set to the rectangle
+     * @return rect
+     */
+    public RotatedRect minAreaRect(RotatedRect rect) {
+        final int n = convexHull();
+
+        // OpenCV takes the hull clockwise with y up, the reverse of the monotone chain
+        for (int i = 0; i < n; i++) {
+            hullX[i] = points[2 * hull[n - 1 - i]];
+            hullY[i] = points[2 * hull[n - 1 - i] + 1];
+        }
+
+        if (rect.center == null) rect.center = new Point();
+        if (rect.size == null) rect.size = new org.opencv.core.Size();
+
+        if (n > 2) {
+            rotatingCalipers(n, rect);
+        } else if (n == 2) {
+            rect.center.x = (hullX[0] + hullX[1]) * 0.5f;
+            rect.center.y = (hullY[0] + hullY[1]) * 0.5f;
+            double dx = hullX[1] - hullX[0];
+            double dy = hullY[1] - hullY[0];
+            rect.size.width = (float) Math.sqrt(dx * dx + dy * dy);
+            rect.size.height = 0.;
+            rect.angle = (float) Math.atan2(dy, dx);
+        } else {
+            rect.center.x = n == 1 ? hullX[0] : 0.;
+            rect.center.y = n == 1 ? hullY[0] : 0.;
+            rect.size.width = 0.;
+            rect.size.height = 0.;
+            rect.angle = 0.;
+        }
+        rect.angle = (float) (rect.angle * 180. / Math.PI);
+        return rect;
+    }
+
+    private void rotatingCalipers(int n, RotatedRect rect) {
+        float minArea = Float.MAX_VALUE;
+        int left = 0, bottom = 0, right = 0, top = 0;
+        float leftX = hullX[0], rightX = hullX[0], topY = hullY[0], bottomY = hullY[0];
+
+        for (int i = 0; i < n; i++) {
+            final float x0 = hullX[i], y0 = hullY[i];
+            if (x0 < leftX) { leftX = x0; left = i; }
+            if (x0 > rightX) { rightX = x0; right = i; }
+            if (y0 > topY) { topY = y0; top = i; }
+            if (y0 < bottomY) { bottomY = y0; bottom = i; }
+            final int next = i + 1 < n ? i + 1 : 0;
+            final double dx = hullX[next] - x0;
+            final double dy = hullY[next] - y0;
+            vectX[i] = (float) dx;
+            vectY[i] = (float) dy;
+            inverseLength[i] = (float) (1. / Math.sqrt(dx * dx + dy * dy));
+        }
+
+        // hull orientation
+        float orientation = 0.f;
+        double ax = vectX[n - 1], ay = vectY[n - 1];
+        for (int i = 0; i < n; i++) {
+            final double bx = vectX[i], by = vectY[i];
+            final double convexity = ax * by - ay * bx;
+            if (convexity != 0.) {
+                orientation = convexity > 0. ? 1.f : -1.f;
+                break;
+            }
+            ax = bx;
+            ay = by;
+        }
+
+        float baseA = orientation, baseB = 0.f;
+        final int[] seq = { bottom, right, top, left };
+        int bestLeft = 0, bestBottom = 0;
+        float bestA = 0.f, bestB = 0.f, bestWidth = 0.f, bestHeight = 0.f;
+        final float[] dp = new float[4];
+
+        for (int k = 0; k < n; k++) {
+            // cosine of the angle between each caliper and its polygon edge
+            dp[0] = +baseA * vectX[seq[0]] + baseB * vectY[seq[0]];
+            dp[1] = -baseB * vectX[seq[1]] + baseA * vectY[seq[1]];
+            dp[2] = -baseA * vectX[seq[2]] - baseB * vectY[seq[2]];
+            dp[3] = +baseB * vectX[seq[3]] - baseA * vectY[seq[3]];
+
+            float maxCos = dp[0] * inverseLength[seq[0]];
+            int main = 0;
+            for (int i = 1; i < 4; i++) {
+                final float cosAlpha = dp[i] * inverseLength[seq[i]];
+                if (cosAlpha > maxCos) {
+                    main = i;
+                    maxCos = cosAlpha;
+                }
+            }
+
+            // rotate the calipers to the edge with the least angle
+            final int index = seq[main];
+            final float leadX = vectX[index] * inverseLength[index];
+            final float leadY = vectY[index] * inverseLength[index];
+            switch (main) {
+            case 0: baseA = leadX; baseB = leadY; break;
+            case 1: baseA = leadY; baseB = -leadX; break;
+            case 2: baseA = -leadX; baseB = -leadY; break;
+            default: baseA = -leadY; baseB = leadX; break;
+            }
+
+            seq[main] = seq[main] + 1 == n ? 0 : seq[main] + 1;
+
+            float dx = hullX[seq[1]] - hullX[seq[3]];
+            float dy = hullY[seq[1]] - hullY[seq[3]];
+            final float width = dx * baseA + dy * baseB;
+            dx = hullX[seq[2]] - hullX[seq[0]];
+            dy = hullY[seq[2]] - hullY[seq[0]];
+            final float height = -dx * baseB + dy * baseA;
+            final float area = width * height;
+            if (area <= minArea) {
+                minArea = area;
+                bestLeft = seq[3];
+                bestBottom = seq[0];
+                bestA = baseA;
+                bestB = baseB;
+                bestWidth = width;
+                bestHeight = height;
+            }
+        }
+
+        final float a1 = bestA, b1 = bestB;
+        final float a2 = -bestB, b2 = bestA;
+        final float c1 = a1 * hullX[bestLeft] + hullY[bestLeft] * b1;
+        final float c2 = a2 * hullX[bestBottom] + hullY[bestBottom] * b2;
+        final float inverseDet = 1.f / (a1 * b2 - a2 * b1);
+        final float px = (c1 * b2 - c2 * b1) * inverseDet;
+        final float py = (a1 * c2 - a2 * c1) * inverseDet;
+        final float side1X = a1 * bestWidth, side1Y = b1 * bestWidth;
+        final float side2X = a2 * bestHeight, side2Y = b2 * bestHeight;
+
+        rect.center.x = px + (side1X + side2X) * 0.5f;
+        rect.center.y = py + (side1Y + side2Y) * 0.5f;
+        rect.size.width = (float) Math.sqrt((double) side1X * side1X + (double) side1Y * side1Y);
+        rect.size.height = (float) Math.sqrt((double) side2X * side2X + (double) side2Y * side2Y);
+        rect.angle = (float) Math.atan2(side1Y, side1X);
+    }
+}
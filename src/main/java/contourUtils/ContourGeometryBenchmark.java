@@ -0,0 +1,231 @@
+package contourUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+/**
+ * Compares ContourGeometry to the OpenCV calls it replaces - the largest differences and the
+ * time per contour of each.
+ *
+ * Run on the target (Raspberry Pi) since the JNI cost versus the arithmetic is what's measured:
+ * java -cp ... contourUtils.ContourGeometryBenchmark [contours [max size in pixels]]
+ *
+ * The contours are found in random filled polygons, ellipses and power port target shaped
+ * trapezoids drawn with noise on the edges, like the contours the pipelines find.
+ */
+public class ContourGeometryBenchmark {
+
+    private static final int PASSES = 10; // timed passes over all the contours after a warmup pass
+
+    public static void main(String[] args) {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int contourCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : 120;
+
+        List<MatOfPoint> contours = makeContours(contourCount, maxSize, new Random(4237));
+        int points = 0;
+        for (MatOfPoint contour : contours) {
+            points += contour.rows();
+        }
+        System.out.format("%d contours, %.1f points average%n", contours.size(), points / (double) contours.size());
+
+        compare(contours);
+        time(contours);
+    }
+
+    private static List<MatOfPoint> makeContours(int count, int maxSize, Random random) {
+        List<MatOfPoint> contours = new ArrayList<>();
+        Mat image = new Mat(maxSize + 20, maxSize + 20, CvType.CV_8UC1);
+        Mat hierarchy = new Mat();
+
+        while (contours.size() < count) {
+            image.setTo(new Scalar(0));
+            double size = 8 + random.nextDouble() * (maxSize - 8);
+            Point center = new Point(10 + maxSize / 2., 10 + maxSize / 2.);
+
+            switch (random.nextInt(3)) {
+            case 0: { // polygon
+                int sides = 3 + random.nextInt(6);
+                Point[] corners = new Point[sides];
+                for (int i = 0; i < sides; i++) {
+                    double angle = 2 * Math.PI * (i + random.nextDouble() * 0.5) / sides;
+                    double radius = size / 2 * (0.5 + random.nextDouble() * 0.5);
+                    corners[i] = new Point(center.x + radius * Math.cos(angle), center.y + radius * Math.sin(angle));
+                }
+                List<MatOfPoint> polygon = new ArrayList<>();
+                polygon.add(new MatOfPoint(corners));
+                Imgproc.fillPoly(image, polygon, new Scalar(255));
+                polygon.get(0).release();
+                break;
+            }
+            case 1: // ellipse
+                Imgproc.ellipse(image, center, new Size(size / 2, size / 2 * (0.2 + random.nextDouble() * 0.8)),
+                    random.nextDouble() * 180., 0., 360., new Scalar(255), -1);
+                break;
+            default: { // power port tape - open trapezoid
+                double w = size / 2, h = w * 0.45, t = Math.max(1.5, w * 0.12);
+                double angle = Math.toRadians(random.nextDouble() * 30. - 15.);
+                double[][] shape = { { -w, -h }, { -w / 2, h }, { w / 2, h }, { w, -h }, { w - t, -h }, { w / 2 - t / 2, h - t },
+                    { -w / 2 + t / 2, h - t }, { -w + t, -h } };
+                Point[] corners = new Point[shape.length];
+                for (int i = 0; i < shape.length; i++) {
+                    corners[i] = new Point(center.x + shape[i][0] * Math.cos(angle) - shape[i][1] * Math.sin(angle),
+                        center.y + shape[i][0] * Math.sin(angle) + shape[i][1] * Math.cos(angle));
+                }
+                List<MatOfPoint> polygon = new ArrayList<>();
+                polygon.add(new MatOfPoint(corners));
+                Imgproc.fillPoly(image, polygon, new Scalar(255));
+                polygon.get(0).release();
+                break;
+            }
+            }
+
+            // ragged edges like a thresholded camera image
+            for (int i = 0; i < size; i++) {
+                Imgproc.circle(image, new Point(10 + random.nextDouble() * maxSize, 10 + random.nextDouble() * maxSize), 1,
+                    new Scalar(random.nextBoolean() ? 255 : 0), -1);
+            }
+
+            List<MatOfPoint> found = new ArrayList<>();
+            Imgproc.findContours(image, found, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            for (MatOfPoint contour : found) {
+                if (contour.rows() >= 3 && contours.size() < count) {
+                    contours.add(contour);
+                } else {
+                    contour.release();
+                }
+            }
+        }
+
+        image.release();
+        hierarchy.release();
+        return contours;
+    }
+
+    private static void compare(List<MatOfPoint> contours) {
+        ContourGeometry geometry = new ContourGeometry();
+        Rect rect = new Rect();
+        RotatedRect rotatedRect = new RotatedRect();
+        Moments moments = new Moments();
+        double[] hu = new double[7];
+        Mat huMat = new Mat();
+        MatOfInt hullIndices = new MatOfInt();
+        double boundsDiffer = 0., area = 0., perimeter = 0., moment = 0., huMoment = 0., hullArea = 0.;
+        double rectArea = 0.;
+        int rectDiffer = 0;
+
+        for (MatOfPoint contour : contours) {
+            geometry.set(contour);
+
+            if (!geometry.boundingRect(rect).equals(Imgproc.boundingRect(contour))) boundsDiffer++;
+            area = Math.max(area, Math.abs(geometry.area() - Imgproc.contourArea(contour)));
+            MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
+            perimeter = Math.max(perimeter, Math.abs(geometry.perimeter() - Imgproc.arcLength(contour2f, true)));
+
+            Moments expected = Imgproc.moments(contour);
+            geometry.moments(moments);
+            moment = Math.max(moment, relative(moments.m00, expected.m00, 1.));
+            moment = Math.max(moment, relative(moments.mu20, expected.mu20, 1.));
+            moment = Math.max(moment, relative(moments.mu03, expected.mu03, 1.));
+            Imgproc.HuMoments(expected, huMat);
+            geometry.huMoments(moments, hu);
+            for (int i = 0; i < 7; i++) {
+                huMoment = Math.max(huMoment, relative(hu[i], huMat.get(i, 0)[0], 1.e-10));
+            }
+
+            Imgproc.convexHull(contour, hullIndices);
+            int[] indices = hullIndices.toArray();
+            int[] xy = new int[2 * contour.rows()];
+            contour.get(0, 0, xy);
+            hullArea = Math.max(hullArea, Math.abs(geometry.hullArea() - ContourFilter.polygonArea(xy, indices, indices.length)));
+
+            // the least area rectangle is unique except for ties so compare the area and the corners
+            RotatedRect expectedRect = Imgproc.minAreaRect(contour2f);
+            geometry.minAreaRect(rotatedRect);
+            double expectedArea = expectedRect.size.width * expectedRect.size.height;
+            rectArea = Math.max(rectArea, Math.abs(rotatedRect.size.width * rotatedRect.size.height - expectedArea));
+            if (Math.abs(rotatedRect.center.x - expectedRect.center.x) > 1.e-3 || Math.abs(rotatedRect.center.y - expectedRect.center.y) > 1.e-3
+                || Math.abs(rotatedRect.angle - expectedRect.angle) > 1.e-3 || Math.abs(rotatedRect.size.width - expectedRect.size.width) > 1.e-3) {
+                rectDiffer++;
+            }
+            contour2f.release();
+        }
+
+        huMat.release();
+        hullIndices.release();
+        System.out.format("bounding rectangles differ %.0f%n", boundsDiffer);
+        System.out.format("largest differences: area %g, perimeter %g, moments %g, Hu moments %g (relative), hull area %g%n",
+            area, perimeter, moment, huMoment, hullArea);
+        System.out.format("min area rectangles: largest area difference %g, %d of %d with a different (tied) rectangle%n",
+            rectArea, rectDiffer, contours.size());
+    }
+
+    // relative difference except near zero where rounding differences are as large as the value
+    private static double relative(double a, double b, double zero) {
+        return Math.abs(a - b) / Math.max(Math.abs(b), zero);
+    }
+
+    private static void time(List<MatOfPoint> contours) {
+        ContourGeometry geometry = new ContourGeometry();
+        Rect rect = new Rect();
+        RotatedRect rotatedRect = new RotatedRect();
+        Moments moments = new Moments();
+        double[] hu = new double[7];
+        Mat huMat = new Mat();
+        MatOfInt hull = new MatOfInt();
+        double sink = 0.;
+
+        for (int pass = 0; pass <= PASSES; pass++) {
+            long openCV = 0, java = 0, start;
+
+            // OpenCV the way TargetSelectionB and the filter used it
+            start = System.nanoTime();
+            for (MatOfPoint contour : contours) {
+                MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
+                RotatedRect r = Imgproc.minAreaRect(contour2f);
+                contour2f.release();
+                Rect b = Imgproc.boundingRect(contour);
+                double area = Imgproc.contourArea(contour);
+                Imgproc.convexHull(contour, hull);
+                Imgproc.HuMoments(Imgproc.moments(contour), huMat);
+                sink += r.angle + b.width + area + hull.rows() + huMat.get(0, 0)[0];
+            }
+            openCV += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (MatOfPoint contour : contours) {
+                geometry.set(contour);
+                geometry.minAreaRect(rotatedRect);
+                geometry.boundingRect(rect);
+                geometry.huMoments(moments, hu);
+                sink += rotatedRect.angle + rect.width + geometry.area() + geometry.hullArea() + hu[0];
+            }
+            java += System.nanoTime() - start;
+
+            if (pass > 0) { // skip the warmup
+                System.out.format("pass %2d: OpenCV %6.0f ns per contour, ContourGeometry %6.0f ns per contour%n", pass,
+                    openCV / (double) contours.size(), java / (double) contours.size());
+            }
+        }
+
+        huMat.release();
+        hull.release();
+        if (sink == 0.) System.out.println(); // keep the work from being optimized away
+    }
+}
@@ -0,0 +1,123 @@
+package contourUtils;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+/**
+ * The Hu moments of an ideal shape prepared once for MatchShapes.
+ *
+ * The signed log10 of each moment, its reciprocal and which moments are too small to compare
+ * are computed when the template is made so matching a contour against it only needs the
+ * contour's own logs.
+ *
+ * The seventh Hu moment (I7) can be left out.  It is the skew invariant that flips sign for a
+ * mirror image and jitters a lot on real contours; leaving it out is the same as zeroing it in
+ * both shapes.
+ *
+ * Immutable.
+ */
+public class HuTemplate {
+
+    static final double EPS = 1.e-20; // moments smaller than this aren't compared; see MatchShapes
+
+    private final double[] hu = new double[7];
+    private final double[] log = new double[7]; // signed log10 of the moments
+    private final double[] inverseLog = new double[7]; // 1 / log
+    private final boolean[] usable = new boolean[7]; // moment large enough to compare
+    private final int count; // moments compared - 6 or 7
+    private final boolean anyNonZero;
+
+    /**
+     * @param contour the ideal shape
+     * @param useI7 compare the seventh (mirror image) moment
+     */
+    public HuTemplate(MatOfPoint contour, boolean useI7) {
+        this(huMoments(Imgproc.moments(contour), new double[7]), useI7);
+    }
+
+    /**
+     * @param hu the 7 Hu moments of the ideal shape
+     * @param useI7 compare the seventh (mirror image) moment
+     */
+    public HuTemplate(double[] hu, boolean useI7) {
+        if (hu.length != 7)
+            throw new IllegalArgumentException("HuMoments must be 7");
+
+        count = useI7 ? 7 : 6;
+        boolean any = false;
+        for (int idx = 0; idx < count; idx++) {
+            this.hu[idx] = hu[idx];
+            any |= hu[idx] != 0.;
+            usable[idx] = Math.abs(hu[idx]) > EPS;
+            if (usable[idx]) {
+                log[idx] = Math.copySign(Math.log10(Math.abs(hu[idx])), hu[idx]);
+                inverseLog[idx] = 1. / log[idx];
+            }
+        }
+        anyNonZero = any;
+    }
+
+    /**
+     * The 7 Hu moments from the normalized central moments without a Mat - the same as Imgproc.HuMoments.
+     *
+     * @param m moments of a contour
+     * @param hu array of at least 7 for the moments
+     * @return hu
+     */
+    public static double[] huMoments(Moments m, double[] hu) {
+        double t0 = m.nu30 + m.nu12;
+        double t1 = m.nu21 + m.nu03;
+        double q0 = t0 * t0, q1 = t1 * t1;
+        double n4 = 4 * m.nu11;
+        double s = m.nu20 + m.nu02;
+        double d = m.nu20 - m.nu02;
+
+        hu[0] = s;
+        hu[1] = d * d + n4 * m.nu11;
+        hu[3] = q0 + q1;
+        hu[5] = d * (q0 - q1) + n4 * t0 * t1;
+
+        t0 *= q0 - 3 * q1;
+        t1 *= 3 * q0 - q1;
+
+        q0 = m.nu30 - 3 * m.nu12;
+        q1 = 3 * m.nu21 - m.nu03;
+
+        hu[2] = q0 * q0 + q1 * q1;
+        hu[4] = q0 * t0 + q1 * t1;
+        hu[6] = q1 * t0 - q0 * t1;
+        return hu;
+    }
+
+    /**
+     * @return number of moments compared - 6 without I7 or 7
+     */
+    public int getCount() {
+        return count;
+    }
+
+    double hu(int idx) {
+        return hu[idx];
+    }
+
+    double log(int idx) {
+        return log[idx];
+    }
+
+    double inverseLog(int idx) {
+        return inverseLog[idx];
+    }
+
+    boolean usable(int idx) {
+        return usable[idx];
+    }
+
+    boolean anyNonZero() {
+        return anyNonZero;
+    }
+
+    public String toString() {
+        return String.format("HuTemplate [%g, %g, %g, %g, %g, %g, %g] comparing %d", hu[0], hu[1], hu[2], hu[3], hu[4], hu[5], hu[6], count);
+    }
+}
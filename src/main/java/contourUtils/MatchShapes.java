@@ -42,6 +42,100 @@ public class MatchShapes {
     // https://www.umass.edu/landeco/teaching/multivariate/readings/McCune.and.Grace.2002.chapter9.pdf
     // [Data Transformations]
 
+    // The HuTemplate version below does the same comparison for one method at a time
+    // on primitive arrays.  The template's logs are computed once, only the requested
+    // method is computed and the summed methods stop as soon as the running score is
+    // worse than a limit - typically the best score so far - since it can only get worse.
+
+    /**
+     * Compare a contour to an ideal shape by one of the methods of matchShapes(Mat, Mat).
+     * 
+     * @param template the ideal shape - the first argument of matchShapes(Mat, Mat)
+     * @param hu the 7 Hu moments of the contour; I7 is ignored if the template ignores it
+     * @param method 0 to 6 - the index of the matchShapes(Mat, Mat) result
+     * @param limit stop and return the running score once it is more than this; Double.MAX_VALUE for the
+     *            complete score.  Methods 3 and 4 (cosines, larger is better) always compute the complete score.
+     * @return the score; if more than limit it may be only part of the complete score
+     */
+    public static double matchShapes(HuTemplate template, double[] hu, int method, double limit) {
+        if (hu.length < 7)
+            throw new IllegalArgumentException("HuMoments must be 7");
+
+        final int count = template.getCount();
+
+        boolean anyB = false;
+        for (int idx = 0; idx < count; idx++) {
+            anyB |= hu[idx] != 0.;
+        }
+        // couldn't make the calculation so bailout with max differences indicated
+        if (template.anyNonZero() != anyB) {
+            return method == 3 || method == 4 ? -1. : Double.MAX_VALUE;
+        }
+
+        double score = 0.;
+        double sumAB = 0., sumA2 = 0., sumB2 = 0.; // methods 3 and 4
+
+        for (int idx = 0; idx < count; idx++) {
+            if (!template.usable(idx) || Math.abs(hu[idx]) <= HuTemplate.EPS) {
+                continue; // don't compare a moment if either has a 0 for it
+            }
+
+            final double a = template.hu(idx);
+            final double b = hu[idx];
+            double mA, mB;
+            switch (method) {
+            case 0:
+                mB = Math.copySign(Math.log10(Math.abs(b)), b);
+                score += Math.abs(template.inverseLog(idx) - 1. / mB);
+                break;
+            case 1:
+                mB = Math.copySign(Math.log10(Math.abs(b)), b);
+                score += Math.abs(template.log(idx) - mB);
+                break;
+            case 2:
+                mB = Math.copySign(Math.log10(Math.abs(b)), b);
+                score = Math.max(score, Math.abs((template.log(idx) - mB) * template.inverseLog(idx)));
+                break;
+            case 3:
+            case 5: {
+                // normalize to max absolute value
+                final double max = Math.max(Math.abs(a), Math.abs(b));
+                mA = a / max;
+                mB = b / max;
+                sumAB += mA * mB;
+                sumA2 += mA * mA;
+                sumB2 += mB * mB;
+                score += Math.abs(mA - mB);
+                break;
+            }
+            case 4:
+            case 6: {
+                // normalize to unit length
+                final double length = Math.sqrt(a * a + b * b);
+                mA = a / length;
+                mB = b / length;
+                sumAB += mA * mB;
+                sumA2 += mA * mA;
+                sumB2 += mB * mB;
+                score += Math.abs(mA - mB);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("method must be 0 to 6; you tried " + method);
+            }
+
+            if (score > limit && method != 3 && method != 4) {
+                return score; // can't get any better
+            }
+        }
+
+        if (method == 3 || method == 4) {
+            // cosine (theta) - the angle between two 7-dimensional vectors
+            return sumAB / (Math.sqrt(sumA2) * Math.sqrt(sumB2));
+        }
+        return score;
+    }
+
     public static double[] matchShapes(Mat HuShape1, Mat HuShape2) {
         //Mat [ 7*1*CV_64FC1, isCont=true, isSubmat=false, nativeObj=0xffffffffb3f02c98, dataAddr=0xffffffffb3f02c00 ]
         // compare[2] implies the first arg is the ideal target
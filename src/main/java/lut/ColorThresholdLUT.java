@@ -0,0 +1,163 @@
+package lut;
+
+/*
+
+Table lookup of a BGR pixel to an HSV threshold mask pixel
+
+Replaces Imgproc.cvtColor(BGR2HSV) followed by Core.inRange with one pass over the image.
+For fixed hue, saturation and value bounds whether a pixel passes depends only on its BGR color
+so every color is classified once when the table is built.
+
+Features and limitations:
+The BGR channels are quantized to a number of bits each (5 or 6 are good choices) so the table has
+    2^(3*bits) entries - 32K entries for 5 bits fits the cache; 256K for 6 bits is more accurate.
+Each table entry is classified by OpenCV itself (cvtColor and inRange of the color at the center of
+    the quantization cell) so the result is exactly the OpenCV HSV path except for pixels whose
+    quantization cell straddles a threshold boundary.  accuracy() measures how many those are in a frame.
+The table is rebuilt when the thresholds are changed with setThresholds().
+Works on any 8 bit BGR Mat including a submat region of interest.
+Not thread safe - one per pipeline.
+
+Example usage:
+        ColorThresholdLUT lut = new ColorThresholdLUT(6, new Scalar(63., 160., 17.), new Scalar(98., 255., 255.));
+        lut.apply(bgr, mask); // same as cvtColor(bgr, hsv, COLOR_BGR2HSV) and inRange(hsv, low, high, mask)
+        System.out.println(lut.accuracy(bgr)); // fraction of pixels the same as the exact HSV path
+*/
+
+import java.lang.invoke.MethodHandles;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+public class ColorThresholdLUT
+{
+    static {System.out.println("Starting class: " + MethodHandles.lookup().lookupClass().getCanonicalName());}
+
+    private static final String pId = new String("[ColorThresholdLUT]");
+
+    private final int bits; // bits per channel kept
+    private final int shift; // bits per channel dropped
+    private final byte[] table; // mask value 0 or 255 indexed by quantized b, g, r
+
+    private Scalar low;
+    private Scalar high;
+
+    // workspace reused for every image
+    private byte[] pixels = new byte[0];
+    private byte[] maskPixels = new byte[0];
+
+    /**
+     * @param bits bits per channel to quantize the BGR color to; 1 to 8
+     * @param low the min hue, saturation and value
+     * @param high the max hue, saturation and value
+     */
+    public ColorThresholdLUT(int bits, Scalar low, Scalar high)
+    {
+        if (bits < 1 || bits > 8) throw new IllegalArgumentException(pId + " bits must be 1 to 8; you tried " + bits);
+        this.bits = bits;
+        this.shift = 8 - bits;
+        this.table = new byte[1 << (3 * bits)];
+        setThresholds(low, high);
+    }
+
+    /**
+     * Change the thresholds and rebuild the table.
+     *
+     * @param low the min hue, saturation and value
+     * @param high the max hue, saturation and value
+     */
+    public void setThresholds(Scalar low, Scalar high)
+    {
+        this.low = low.clone();
+        this.high = high.clone();
+
+        // one pixel for each quantization cell at the center of the cell in table index order
+        final int levels = 1 << bits;
+        final int half = (1 << shift) >> 1;
+        byte[] colors = new byte[3 * table.length];
+        int idx = 0;
+        for (int b = 0; b < levels; b++)
+        for (int g = 0; g < levels; g++)
+        for (int r = 0; r < levels; r++)
+        {
+            colors[idx++] = (byte)((b << shift) + half);
+            colors[idx++] = (byte)((g << shift) + half);
+            colors[idx++] = (byte)((r << shift) + half);
+        }
+
+        // let OpenCV classify them so the table matches its HSV conversion exactly
+        Mat bgr = new Mat(1, table.length, CvType.CV_8UC3);
+        Mat hsv = new Mat();
+        Mat mask = new Mat();
+        bgr.put(0, 0, colors);
+        Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+        Core.inRange(hsv, this.low, this.high, mask);
+        mask.get(0, 0, table);
+        bgr.release();
+        hsv.release();
+        mask.release();
+    }
+
+    /**
+     * Threshold a BGR image to a mask.
+     *
+     * @param bgr 8 bit 3 channel BGR image
+     * @param mask the 8 bit 1 channel output; 255 where the pixel is within the thresholds, otherwise 0
+     */
+    public void apply(Mat bgr, Mat mask)
+    {
+        final int count = bgr.rows() * bgr.cols();
+        if (pixels.length < 3 * count)
+        {
+            pixels = new byte[3 * count];
+            maskPixels = new byte[count];
+        }
+
+        mask.create(bgr.size(), CvType.CV_8UC1);
+        bgr.get(0, 0, pixels);
+
+        final int shiftG = bits;
+        final int shiftB = 2 * bits;
+        for (int i = 0, p = 0; i < count; i++, p += 3)
+        {
+            final int index = ((pixels[p] & 0xFF) >> shift) << shiftB
+                            | ((pixels[p + 1] & 0xFF) >> shift) << shiftG
+                            | (pixels[p + 2] & 0xFF) >> shift;
+            maskPixels[i] = table[index];
+        }
+
+        mask.put(0, 0, maskPixels);
+    }
+
+    /**
+     * Compare the table to the exact HSV path on an image to see how much the quantization costs.
+     * Allocates so don't use it for every frame.
+     *
+     * @param bgr 8 bit 3 channel BGR image
+     * @return fraction of the pixels with the same mask value as cvtColor and inRange
+     */
+    public double accuracy(Mat bgr)
+    {
+        Mat hsv = new Mat();
+        Mat exact = new Mat();
+        Mat quantized = new Mat();
+        Imgproc.cvtColor(bgr, hsv, Imgproc.COLOR_BGR2HSV);
+        Core.inRange(hsv, low, high, exact);
+        apply(bgr, quantized);
+        Core.compare(exact, quantized, quantized, Core.CMP_NE);
+        double differ = Core.countNonZero(quantized);
+        double count = Math.max(exact.rows() * exact.cols(), 1);
+        hsv.release();
+        exact.release();
+        quantized.release();
+        return 1. - differ / count;
+    }
+
+    public String toString()
+    {
+        return pId + " " + bits + " bits per channel, HSV " + low + " to " + high;
+    }
+}
@@ -0,0 +1,329 @@
+package visionClient;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One camera's stream of target data received from the RPi - the newest target data for the robot
+ * loop and the statistics of the messages.
+ *
+ * The receive thread decodes each message in place into the stream's own target data then writes
+ * it to a TargetDataExchange, so the robot loop gets the newest without a lock or allocating -
+ * poll() every loop from one thread, or read() and isNewerThan() from any.  A message older than
+ * the newest already received is counted but not used.
+ *
+ * The sequence numbers show lost, late (out of order) and duplicate messages.  The last 64 are
+ * remembered so a late message is told from a duplicate and isn't counted lost.  The same message
+ * repeated in each coalesced bundle isn't a duplicate.  A new run id in the message is the RPi
+ * program restarting - its sequence numbers start again so they are all counted anew.
+ *
+ * Ages are in microseconds:
+ * <ul>
+ * <li>RPi latency - capture to send on the RPi (sendTime - captureTime)
+ * <li>bundle age - waiting on the RPi for the next coalesced bundle
+ * <li>transit jitter - transit time more than the fastest message's.  The RPi and roboRIO clocks
+ *     aren't synchronized so the transit time itself isn't known, but on the robot's network the
+ *     fastest is well under a millisecond.
+ * </ul>
+ *
+ * Only the receive thread may call receive() and receiveBad() and only one thread may poll(); any
+ * number of threads may read and get statistics.
+ */
+public class ReceivedStream<T extends TargetData<T>>
+{
+    private static final int WINDOW = 64; // sequence numbers remembered
+    private static final long REPORT_INTERVAL = 10_000_000_000L; // nanoseconds between rates
+
+    private final String name; // such as "Turret"
+    private final byte id; // stream id of the messages such as 'B'
+
+    private final T parsed; // only used by the receive thread
+    private final TargetDataExchange<T> exchange;
+
+    // sequence numbers; only used by the receive thread
+    private boolean isAnyReceived = false;
+    private int run; // run id of the RPi program sending
+    private int first; // first sequence number received from this run; ones before it weren't counted lost
+    private int highest; // newest sequence number received
+    private long window = 0L; // bit n set if highest - n was received
+
+    // racy counts but good enough for statistics
+    private volatile long received = 0;
+    private volatile long lost = 0; // sequence numbers skipped and not received late
+    private volatile long late = 0; // older than the newest received so not used
+    private volatile long duplicates = 0;
+    private volatile long repeats = 0; // the same message in another coalesced bundle
+    private volatile long restarts = 0;
+    private volatile long bad = 0; // couldn't be decoded
+
+    private volatile long latencySum = 0, latencyMax = 0; // RPi capture to send
+    private volatile long bundleAgeSum = 0, bundleAgeMax = 0;
+    private volatile long jitterSum = 0, jitterMax = 0; // transit more than the fastest
+    private long minimumTransit = Long.MAX_VALUE; // receive time - RPi send time of the fastest; clocks not synchronized
+    private volatile long lastReceiveTime = 0; // System.nanoTime()
+    private long lastPolled = 0; // number of the newest target data poll() copied; only used by the polling thread
+
+    private long intervalStart = System.nanoTime();
+    private long intervalReceived = 0;
+    private volatile double rate = 0.; // messages used per second in the last REPORT_INTERVAL
+
+    /**
+     * @param name name of the stream for statistics such as "Turret"
+     * @param id stream id of the messages such as 'B' - the RPi CameraStage id
+     * @param parsed an unused target data object for decoding into
+     * @param shared an unused target data object for the exchange
+     */
+    public ReceivedStream(String name, char id, T parsed, T shared)
+    {
+        this.name = name;
+        this.id = (byte) id;
+        this.parsed = parsed;
+        this.exchange = new TargetDataExchange<>(shared);
+    }
+
+    /**
+     * Receive a message of this stream.  Doesn't allocate.
+     *
+     * @param message the message from its position to its limit
+     * @param receiveTime System.nanoTime() the packet was received
+     * @param bundleAge microseconds the message waited for a coalesced bundle; 0 if not in one
+     * @param isInBundle if the message came in a coalesced bundle
+     */
+    public void receive(ByteBuffer message, long receiveTime, int bundleAge, boolean isInBundle)
+    {
+        if (!isNewest(TargetMessage.getRun(message), TargetMessage.getSequence(message), isInBundle))
+        {
+            return;
+        }
+        if (!TargetMessage.decode(message, parsed))
+        {
+            bad++;
+            return;
+        }
+        use(receiveTime, bundleAge);
+    }
+
+    /**
+     * Receive target data decoded some other way, such as the RPi's text messages, which have no
+     * sequence numbers.  Doesn't allocate.
+     *
+     * @param targetData the target data; copied
+     * @param receiveTime System.nanoTime() the packet was received
+     * @param bundleAge microseconds the message waited for a coalesced bundle; 0 if not in one
+     */
+    public void receive(T targetData, long receiveTime, int bundleAge)
+    {
+        received++;
+        parsed.set(targetData);
+        use(receiveTime, bundleAge);
+    }
+
+    /**
+     * Count a message of this stream that couldn't be decoded.
+     */
+    public void receiveBad()
+    {
+        received++;
+        bad++;
+    }
+
+    /**
+     * Copy the newest target data if it's newer than this last copied - call every robot loop.
+     * Never locks or allocates.  Only one thread may poll a stream.
+     *
+     * @param targetData where to copy the target data; not changed if there isn't newer
+     * @return true if there was newer target data
+     */
+    public boolean poll(T targetData)
+    {
+        if (!exchange.isNewerThan(lastPolled))
+        {
+            return false;
+        }
+        lastPolled = exchange.read(targetData);
+        return true;
+    }
+
+    /**
+     * Copy the newest target data.  Never locks or allocates.
+     *
+     * @param targetData where to copy the target data
+     * @return the number of the newest target data - 0 if none yet
+     */
+    public long read(T targetData)
+    {
+        return exchange.read(targetData);
+    }
+
+    /**
+     * @param number the number of the target data last read
+     * @return true if there is newer target data
+     */
+    public boolean isNewerThan(long number)
+    {
+        return exchange.isNewerThan(number);
+    }
+
+    /**
+     * @return name of the stream such as "Turret"
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return stream id of the messages such as 'B'
+     */
+    public byte getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return System.nanoTime() the newest target data was received; 0 if none yet
+     */
+    public long getLastReceiveTime()
+    {
+        return lastReceiveTime;
+    }
+
+    /**
+     * @return milliseconds since the newest target data was received; Long.MAX_VALUE if none yet
+     */
+    public long getMillisSinceReceived()
+    {
+        long receiveTime = lastReceiveTime;
+        return receiveTime == 0L ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receiveTime);
+    }
+
+    public long getReceived()
+    {
+        return received;
+    }
+
+    public long getLost()
+    {
+        return lost;
+    }
+
+    public long getLate()
+    {
+        return late;
+    }
+
+    public long getDuplicates()
+    {
+        return duplicates;
+    }
+
+    /**
+     * @return messages used per second in the last 10 seconds
+     */
+    public double getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Count a sequence number and decide if its message is the newest.
+     */
+    private boolean isNewest(int run, int sequence, boolean isInBundle)
+    {
+        received++;
+        if (!isAnyReceived || run != this.run)
+        {
+            if (isAnyReceived)
+            {
+                restarts++; // the RPi program restarted and started its sequence numbers again
+            }
+            isAnyReceived = true;
+            this.run = run;
+            first = sequence;
+            highest = sequence;
+            window = 1L;
+            return true;
+        }
+
+        int ahead = sequence - highest; // int difference so wrapping around is fine
+        if (ahead > 0)
+        {
+            lost += ahead - 1; // taken back if they come late
+            window = ahead < WINDOW ? (window << ahead) | 1L : 1L;
+            highest = sequence;
+            return true;
+        }
+
+        int behind = -ahead;
+        long bit = behind < WINDOW ? 1L << behind : 0L;
+        if ((window & bit) != 0L)
+        {
+            if (isInBundle && behind == 0)
+            {
+                repeats++;
+            }
+            else
+            {
+                duplicates++;
+            }
+            return false;
+        }
+
+        late++;
+        if (bit != 0L && sequence - first > 0)
+        {
+            window |= bit;
+            lost--; // it was counted lost when a newer one came first
+        }
+        // else sent before the first received or too late to remember - wasn't counted lost or can't be told
+        // from a duplicate
+        return false;
+    }
+
+    /**
+     * Make the decoded target data the newest and add its times to the statistics.
+     */
+    private void use(long receiveTime, int bundleAge)
+    {
+        exchange.write(parsed);
+        lastReceiveTime = receiveTime;
+
+        long latency = parsed.getSendTime() - parsed.getCaptureTime();
+        if (parsed.getCaptureTime() != 0L && latency >= 0L)
+        {
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+        }
+
+        bundleAgeSum += bundleAge;
+        bundleAgeMax = Math.max(bundleAgeMax, bundleAge);
+
+        long transit = receiveTime / 1000L - parsed.getSendTime() - bundleAge;
+        if (transit < minimumTransit)
+        {
+            minimumTransit = transit; // the fastest yet; earlier jitters are a little understated
+        }
+        long jitter = transit - minimumTransit;
+        jitterSum += jitter;
+        jitterMax = Math.max(jitterMax, jitter);
+
+        intervalReceived++;
+        if (receiveTime - intervalStart >= REPORT_INTERVAL)
+        {
+            rate = intervalReceived * 1.e9 / (receiveTime - intervalStart);
+            intervalStart = receiveTime;
+            intervalReceived = 0;
+        }
+    }
+
+    public String toString()
+    {
+        long used = exchange.getWrites();
+        long divisor = Math.max(used, 1L);
+        long expected = used + lost;
+        return String.format("%s %.1f/s, received %d, lost %d (%.1f%%), late %d, duplicates %d, repeats %d, restarts %d, bad %d,"
+            + " RPi latency %d/%d us, bundle age %d/%d us, transit jitter %d/%d us (mean/max)",
+            name, rate, received, lost, expected == 0 ? 0. : 100. * lost / expected, late, duplicates, repeats, restarts, bad,
+            latencySum / divisor, latencyMax, bundleAgeSum / divisor, bundleAgeMax, jitterSum / divisor, jitterMax);
+    }
+}
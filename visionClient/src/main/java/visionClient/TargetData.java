@@ -0,0 +1,97 @@
+package visionClient;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface is what the codec and the receiver need from a camera's target data.
+ * Each camera has its own target data class, such as TargetDataB for the turret,
+ * that implements it.
+ *
+ * The RPi's TargetData extends this; its target data classes have OpenCV fields so
+ * this module has its own without OpenCV - the same layout of the binary message.
+ *
+ * Target data objects are not synchronized; each belongs to one thread.  They are
+ * handed between threads by copying through a TargetDataExchange.
+ *
+ * @author FRC Team 4237
+ */
+public interface TargetData<T extends TargetData<T>>
+{
+    /**
+     * Reset all of the target data, except the frameNumber.
+     */
+    void reset();
+
+    /**
+     * Set the frame number of the target data.
+     *
+     * @param frameNumber
+     *                        The number of the camera frame.
+     */
+    void setFrameNumber(int frameNumber);
+
+    /**
+     * @return The number of the camera frame.
+     */
+    int getFrameNumber();
+
+    /**
+     * Set the camera frame time (microseconds, RPi WPIUtilJNI.now() time base).
+     */
+    void setCaptureTime(long captureTime);
+
+    /**
+     * @return The camera frame time (microseconds, RPi time base).
+     */
+    long getCaptureTime();
+
+    /**
+     * Set the time the target selection finished with the frame (microseconds, RPi time base).
+     */
+    void setProcessedTime(long processedTime);
+
+    /**
+     * @return The time the target selection finished with the frame (microseconds, RPi time base).
+     */
+    long getProcessedTime();
+
+    /**
+     * Set the time the target data was sent (microseconds, RPi time base).
+     */
+    void setSendTime(long sendTime);
+
+    /**
+     * @return The time the target data was sent (microseconds, RPi time base).
+     */
+    long getSendTime();
+
+    /**
+     * @return True if a target was found.
+     */
+    boolean isTargetFound();
+
+    /**
+     * Store all of the target data.  Copies the values without allocating.
+     *
+     * @param targetData
+     *                       The new target data to store.
+     */
+    void set(T targetData);
+
+    /**
+     * Put the target fields (not the frame number and times) in a binary message after the
+     * TargetMessage header.  Fixed layout; change TargetMessage.VERSION if it changes.
+     *
+     * @param buffer
+     *                   The message being written.
+     */
+    void encodeFields(ByteBuffer buffer);
+
+    /**
+     * Get the target fields put in a binary message by encodeFields().  Doesn't allocate.
+     *
+     * @param buffer
+     *                   The message being read.
+     */
+    void decodeFields(ByteBuffer buffer);
+}
@@ -0,0 +1,239 @@
+package visionClient;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The target data of the Turret camera (stream 'B') - the Power Port.
+ *
+ * The RPi's TargetDataB without OpenCV - the bounding box corners and the image size are plain
+ * numbers instead of Point and Size.  Change both classes and TargetMessage.VERSION together.
+ *
+ * @author FRC Team 4237
+ */
+public class TargetDataB implements TargetData<TargetDataB>
+{
+    static final int CORNERS = 4;
+
+    // Target data that we need
+    private final double[] boundingBoxX = new double[CORNERS]; // pixels of the corners of the bounding box
+    private final double[] boundingBoxY = new double[CORNERS];
+    private int imageWidth, imageHeight; // pixels
+    private double portPositionInFrame, portDistance;
+    private double angleToTurn;
+
+    // These fields are used to track the validity of the data.
+    private int frameNumber; // Number of the camera frame
+    private boolean isTargetFound;
+
+    // These fields are used to track the age of the data (microseconds in the WPIUtilJNI.now() time base of the RPi).
+    // The clocks of the RPi and roboRIO differ so use the differences such as sendTime - captureTime.
+    private long captureTime; // Camera frame time from CvSink.grabFrame; 0 if the grab failed
+    private long processedTime; // Time the target selection finished with the frame
+    private long sendTime; // Time the message was sent to the roboRIO
+
+    /**
+     * Default contructor - resets all of the target data.
+     */
+    public TargetDataB()
+    {
+        reset();
+        frameNumber = 0;
+    }
+
+    /**
+     * This method resets all of the target data, except the frameNumber.
+     */
+    public void reset()
+    {
+        for (int idx = 0; idx < CORNERS; idx++)
+        {
+            boundingBoxX[idx] = -1.0;
+            boundingBoxY[idx] = -1.0;
+        }
+        imageWidth = -1;
+        imageHeight = -1;
+        portPositionInFrame = -1.0;
+        portDistance = -1.0;
+        angleToTurn = 0.;
+        isTargetFound = false;
+        captureTime = 0;
+        processedTime = 0;
+        sendTime = 0;
+    }
+
+    /**
+     * This method stores all of the target data.
+     *
+     * @param targetData
+     *                       The new target data to store.
+     */
+    public void set(TargetDataB targetData)
+    {
+        System.arraycopy(targetData.boundingBoxX, 0, boundingBoxX, 0, CORNERS);
+        System.arraycopy(targetData.boundingBoxY, 0, boundingBoxY, 0, CORNERS);
+        imageWidth = targetData.imageWidth;
+        imageHeight = targetData.imageHeight;
+        portPositionInFrame = targetData.portPositionInFrame;
+        portDistance = targetData.portDistance;
+        angleToTurn = targetData.angleToTurn;
+        isTargetFound = targetData.isTargetFound;
+        frameNumber = targetData.frameNumber;
+        captureTime = targetData.captureTime;
+        processedTime = targetData.processedTime;
+        sendTime = targetData.sendTime;
+    }
+
+    /**
+     * This method returns the target data for the port distance.
+     *
+     * @return The port distance.
+     */
+    public double getPortDistance()
+    {
+        return portDistance;
+    }
+
+    /**
+     * This method returns the target data for the angle to turn.
+     *
+     * @return The angle to turn.
+     */
+    public double getAngleToTurn()
+    {
+        return angleToTurn;
+    }
+
+    /**
+     * @return The horizontal position of the port in the frame.
+     */
+    public double getPortPositionInFrame()
+    {
+        return portPositionInFrame;
+    }
+
+    /**
+     * @param corner 0 to 3 - the same order as the RPi's boundingBoxPts
+     * @return The x pixel of a corner of the bounding box.
+     */
+    public double getBoundingBoxX(int corner)
+    {
+        return boundingBoxX[corner];
+    }
+
+    /**
+     * @param corner 0 to 3 - the same order as the RPi's boundingBoxPts
+     * @return The y pixel of a corner of the bounding box.
+     */
+    public double getBoundingBoxY(int corner)
+    {
+        return boundingBoxY[corner];
+    }
+
+    public int getImageWidth()
+    {
+        return imageWidth;
+    }
+
+    public int getImageHeight()
+    {
+        return imageHeight;
+    }
+
+    public void setFrameNumber(int frameNumber)
+    {
+        this.frameNumber = frameNumber;
+    }
+
+    public int getFrameNumber()
+    {
+        return frameNumber;
+    }
+
+    public void setCaptureTime(long captureTime)
+    {
+        this.captureTime = captureTime;
+    }
+
+    public long getCaptureTime()
+    {
+        return captureTime;
+    }
+
+    public void setProcessedTime(long processedTime)
+    {
+        this.processedTime = processedTime;
+    }
+
+    public long getProcessedTime()
+    {
+        return processedTime;
+    }
+
+    public void setSendTime(long sendTime)
+    {
+        this.sendTime = sendTime;
+    }
+
+    public long getSendTime()
+    {
+        return sendTime;
+    }
+
+    public boolean isTargetFound()
+    {
+        return isTargetFound;
+    }
+
+    /**
+     * This method puts the target fields in a binary TargetMessage - 61 bytes:
+     * flags (1 if the target is found), portDistance, angleToTurn, portPositionInFrame (doubles),
+     * the 4 bounding box corners x, y (floats) and the image width, height (shorts).
+     */
+    public void encodeFields(ByteBuffer buffer)
+    {
+        buffer.put((byte) (isTargetFound ? 1 : 0));
+        buffer.putDouble(portDistance);
+        buffer.putDouble(angleToTurn);
+        buffer.putDouble(portPositionInFrame);
+        for (int idx = 0; idx < CORNERS; idx++)
+        {
+            buffer.putFloat((float) boundingBoxX[idx]);
+            buffer.putFloat((float) boundingBoxY[idx]);
+        }
+        buffer.putShort((short) imageWidth);
+        buffer.putShort((short) imageHeight);
+    }
+
+    /**
+     * This method gets the target fields from a binary TargetMessage.
+     */
+    public void decodeFields(ByteBuffer buffer)
+    {
+        isTargetFound = (buffer.get() & 1) != 0;
+        portDistance = buffer.getDouble();
+        angleToTurn = buffer.getDouble();
+        portPositionInFrame = buffer.getDouble();
+        for (int idx = 0; idx < CORNERS; idx++)
+        {
+            boundingBoxX[idx] = buffer.getFloat();
+            boundingBoxY[idx] = buffer.getFloat();
+        }
+        imageWidth = buffer.getShort();
+        imageHeight = buffer.getShort();
+    }
+
+    /**
+     * This method converts the data to a string format for output.
+     *
+     * @return The string to display.
+     */
+    public String toString()
+    {
+       return String.format("Frame = %d, %s, boundingBox = [{%f, %f}, {%f, %f}, {%f, %f}, {%f, %f}],\nimageWidth = %d, imageHeight = %d,\nportPositionInFrame = %f, portDistance = %f,\nangleToTurn = %f,\ncapture to processed %d us, capture to send %d us",
+            frameNumber, isTargetFound ? "target" : "no target",
+            boundingBoxX[0], boundingBoxY[0], boundingBoxX[1], boundingBoxY[1],
+            boundingBoxX[2], boundingBoxY[2], boundingBoxX[3], boundingBoxY[3],
+            imageWidth, imageHeight, portPositionInFrame, portDistance, angleToTurn,
+            processedTime - captureTime, sendTime - captureTime);
+    }
+}
@@ -0,0 +1,257 @@
+package visionClient;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The target data of the Intake camera (stream 'E') - the Power Cells.
+ *
+ * The RPi's TargetDataE as the robot needs it.  Change both classes and TargetMessage.VERSION
+ * together.
+ *
+ * @author FRC Team 4237
+ */
+public class TargetDataE implements TargetData<TargetDataE>
+{
+    // Target data of the nearest Power Cell
+    private double center; // pixels right of the center of the frame (negative is left)
+    private double distance; // inches
+
+    // Power Cells tracked, nearest first; only the first ballCount of each array are used
+    public static final int MAX_BALLS = 5;
+    private int ballCount;
+    private final int[] ballId = new int[MAX_BALLS]; // same ball keeps the same id from frame to frame
+    private final double[] ballX = new double[MAX_BALLS]; // pixels of the center - predicted if not seen this frame
+    private final double[] ballY = new double[MAX_BALLS];
+    private final double[] ballVelocityX = new double[MAX_BALLS]; // pixels per second
+    private final double[] ballVelocityY = new double[MAX_BALLS];
+    private final double[] ballDistance = new double[MAX_BALLS]; // inches
+    private final int[] ballAge = new int[MAX_BALLS]; // frames since the ball was first seen
+
+    // These fields are used to track the validity of the data.
+    private int frameNumber; // Number of the camera frame
+    private boolean isTargetFound;
+
+    // These fields are used to track the age of the data (microseconds in the WPIUtilJNI.now() time base of the RPi).
+    // The clocks of the RPi and roboRIO differ so use the differences such as sendTime - captureTime.
+    private long captureTime; // Camera frame time from CvSink.grabFrame; 0 if the grab failed
+    private long processedTime; // Time the target selection finished with the frame
+    private long sendTime; // Time the message was sent to the roboRIO
+
+    /**
+     * Default constructor - resets all of the target data.
+     */
+    public TargetDataE()
+    {
+        reset();
+        frameNumber = 0;
+    }
+
+    /**
+     * This method resets all of the target data, except the frameNumber.
+     */
+    public void reset()
+    {
+        center = -1;
+        distance = -1;
+        ballCount = 0;
+        isTargetFound = false;
+        captureTime = 0;
+        processedTime = 0;
+        sendTime = 0;
+    }
+
+    /**
+     * This method stores all of the target data.
+     *
+     * @param targetData
+     *                       The new target data to store.
+     */
+    public void set(TargetDataE targetData)
+    {
+        center = targetData.center;
+        distance = targetData.distance;
+        int count = targetData.ballCount;
+        ballCount = count;
+        System.arraycopy(targetData.ballId, 0, ballId, 0, count);
+        System.arraycopy(targetData.ballX, 0, ballX, 0, count);
+        System.arraycopy(targetData.ballY, 0, ballY, 0, count);
+        System.arraycopy(targetData.ballVelocityX, 0, ballVelocityX, 0, count);
+        System.arraycopy(targetData.ballVelocityY, 0, ballVelocityY, 0, count);
+        System.arraycopy(targetData.ballDistance, 0, ballDistance, 0, count);
+        System.arraycopy(targetData.ballAge, 0, ballAge, 0, count);
+        isTargetFound = targetData.isTargetFound;
+        frameNumber = targetData.frameNumber;
+        captureTime = targetData.captureTime;
+        processedTime = targetData.processedTime;
+        sendTime = targetData.sendTime;
+    }
+
+    public double getCenter()
+    {
+        return center;
+    }
+
+    public double getDistance()
+    {
+        return distance;
+    }
+
+    /**
+     * @return number of Power Cells tracked
+     */
+    public int getBallCount()
+    {
+        return ballCount;
+    }
+
+    /**
+     * @param ball 0 to getBallCount() - 1, nearest first
+     */
+    public int getBallId(int ball)
+    {
+        return ballId[ball];
+    }
+
+    public double getBallX(int ball)
+    {
+        return ballX[ball];
+    }
+
+    public double getBallY(int ball)
+    {
+        return ballY[ball];
+    }
+
+    public double getBallVelocityX(int ball)
+    {
+        return ballVelocityX[ball];
+    }
+
+    public double getBallVelocityY(int ball)
+    {
+        return ballVelocityY[ball];
+    }
+
+    public double getBallDistance(int ball)
+    {
+        return ballDistance[ball];
+    }
+
+    public int getBallAge(int ball)
+    {
+        return ballAge[ball];
+    }
+
+    public void setFrameNumber(int frameNumber)
+    {
+        this.frameNumber = frameNumber;
+    }
+
+    public int getFrameNumber()
+    {
+        return frameNumber;
+    }
+
+    public void setCaptureTime(long captureTime)
+    {
+        this.captureTime = captureTime;
+    }
+
+    public long getCaptureTime()
+    {
+        return captureTime;
+    }
+
+    public void setProcessedTime(long processedTime)
+    {
+        this.processedTime = processedTime;
+    }
+
+    public long getProcessedTime()
+    {
+        return processedTime;
+    }
+
+    public void setSendTime(long sendTime)
+    {
+        this.sendTime = sendTime;
+    }
+
+    public long getSendTime()
+    {
+        return sendTime;
+    }
+
+    public boolean isTargetFound()
+    {
+        return isTargetFound;
+    }
+
+    /**
+     * This method puts the target fields in a binary TargetMessage - 18 bytes plus 28 for each ball:
+     * flags (1 if the target is found), center, distance (doubles), ballCount (byte) then for each
+     * ball ballId (int), ballX, ballY, ballVelocityX, ballVelocityY, ballDistance (floats) and ballAge (int).
+     */
+    public void encodeFields(ByteBuffer buffer)
+    {
+        buffer.put((byte) (isTargetFound ? 1 : 0));
+        buffer.putDouble(center);
+        buffer.putDouble(distance);
+        buffer.put((byte) ballCount);
+        for (int idx = 0; idx < ballCount; idx++)
+        {
+            buffer.putInt(ballId[idx]);
+            buffer.putFloat((float) ballX[idx]);
+            buffer.putFloat((float) ballY[idx]);
+            buffer.putFloat((float) ballVelocityX[idx]);
+            buffer.putFloat((float) ballVelocityY[idx]);
+            buffer.putFloat((float) ballDistance[idx]);
+            buffer.putInt(ballAge[idx]);
+        }
+    }
+
+    /**
+     * This method gets the target fields from a binary TargetMessage.
+     */
+    public void decodeFields(ByteBuffer buffer)
+    {
+        isTargetFound = (buffer.get() & 1) != 0;
+        center = buffer.getDouble();
+        distance = buffer.getDouble();
+        int count = buffer.get();
+        if (count < 0 || count > MAX_BALLS)
+        {
+            throw new IllegalArgumentException("ball count " + count);
+        }
+        ballCount = count;
+        for (int idx = 0; idx < count; idx++)
+        {
+            ballId[idx] = buffer.getInt();
+            ballX[idx] = buffer.getFloat();
+            ballY[idx] = buffer.getFloat();
+            ballVelocityX[idx] = buffer.getFloat();
+            ballVelocityY[idx] = buffer.getFloat();
+            ballDistance[idx] = buffer.getFloat();
+            ballAge[idx] = buffer.getInt();
+        }
+    }
+
+    /**
+     * This method converts the data to a string format for output.
+     *
+     * @return The string to display.
+     */
+    public String toString()
+    {
+        StringBuilder balls = new StringBuilder();
+        for (int idx = 0; idx < ballCount; idx++)
+        {
+            balls.append(String.format(" [id %d (%.0f, %.0f) v (%.0f, %.0f) %.0f in age %d]", ballId[idx],
+                ballX[idx], ballY[idx], ballVelocityX[idx], ballVelocityY[idx], ballDistance[idx], ballAge[idx]));
+        }
+
+        return String.format("Frame = %d, %s, center = %f, distance = %f, %d balls%s, capture to processed %d us, capture to send %d us",
+            frameNumber, isTargetFound ? "target" : "no target", center, distance, ballCount, balls,
+            processedTime - captureTime, sendTime - captureTime);
+    }
+}
@@ -0,0 +1,106 @@
+package visionClient;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Hands the newest target data from the thread that makes it to any number of threads that use it
+ * without a lock - a sequence lock (seqlock) around one shared copy.
+ *
+ * The writer copies into the shared copy between two increments of the sequence number so it is odd
+ * while the copy is being made.  A reader copies out into its own target data and checks the sequence
+ * number didn't change while it copied; if it did, it copies again.  The writer never waits and
+ * readers never lock or allocate.  The copy is a few dozen fields so a reader almost never has to
+ * copy twice.
+ *
+ * Fresh data is a newer sequence number than the reader last copied instead of a flag that the
+ * first reader clears for everybody.
+ *
+ * Only one thread at a time may write; any number may read.
+ */
+public class TargetDataExchange<T extends TargetData<T>>
+{
+    private static final VarHandle SEQUENCE;
+    static
+    {
+        try
+        {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(TargetDataExchange.class, "sequence", long.class);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final T shared; // only changed between the sequence increments
+    @SuppressWarnings("unused") // accessed through SEQUENCE
+    private long sequence = 0; // twice the number of writes; odd while writing
+
+    /**
+     * @param shared an unused target data object for the shared copy
+     */
+    public TargetDataExchange(T shared)
+    {
+        this.shared = shared;
+    }
+
+    /**
+     * Make a copy of target data the newest.  Never waits.  One writer at a time.
+     *
+     * @param targetData the target data to copy; still the caller's
+     */
+    public void write(T targetData)
+    {
+        long start = (long) SEQUENCE.getOpaque(this); // only the writer changes it
+        SEQUENCE.setOpaque(this, start + 1L);
+        VarHandle.storeStoreFence(); // readers see the odd sequence before any of the copy
+
+        shared.set(targetData);
+
+        SEQUENCE.setRelease(this, start + 2L); // readers see all of the copy before the even sequence
+    }
+
+    /**
+     * Copy the newest target data.  Never locks or allocates.
+     *
+     * @param targetData where to copy the target data
+     * @return the number of the write copied - 0 if there hasn't been one yet (and the target data
+     *         is whatever the shared copy started as)
+     */
+    public long read(T targetData)
+    {
+        while (true)
+        {
+            long before = (long) SEQUENCE.getAcquire(this);
+            if ((before & 1L) == 0L)
+            {
+                targetData.set(shared);
+
+                VarHandle.loadLoadFence(); // all of the copy is read before the sequence is checked again
+                if ((long) SEQUENCE.getOpaque(this) == before)
+                {
+                    return before >>> 1;
+                }
+            }
+            Thread.onSpinWait(); // the writer is in the middle of a copy
+        }
+    }
+
+    /**
+     * @return the number of writes completed
+     */
+    public long getWrites()
+    {
+        return (long) SEQUENCE.getAcquire(this) >>> 1;
+    }
+
+    /**
+     * @param write the number of the write last read
+     * @return true if there has been a write since
+     */
+    public boolean isNewerThan(long write)
+    {
+        return getWrites() > write;
+    }
+}
@@ -0,0 +1,256 @@
+package visionClient;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * The binary UDP message of target data from the RPi to the roboRIO - the one codec of both; the
+ * RPi encodes with it and the roboRIO (VisionClient) and the RPi's test UdpReceive decode with it.
+ *
+ * A fixed header then the target data's own fields (TargetData.encodeFields()), big-endian
+ * (Java and ByteBuffer order):
+ *
+ *  offset  size  field
+ *     0     2    magic 0x4237 - tells a binary message from a text one ("Turret {...")
+ *     2     1    version of the layout - VERSION; a receiver ignores versions it doesn't know
+ *     3     1    stream id - the camera's CameraStage id such as 'B' for the Turret, 'E' for the Intake
+ *     4     4    sequence number of the message in its stream, starting at 1
+ *     8     4    run id - RUN, random each time the RPi program starts, so a receiver can tell a
+ *                restart from a late message
+ *    12     4    camera frame number
+ *    16     8    capture time - microseconds, RPi WPIUtilJNI.now() time base
+ *    24     8    processed time
+ *    32     8    send time
+ *    40          the target data fields; see TargetDataB and TargetDataE encodeFields()
+ *
+ * Encoding writes into a reused ByteBuffer and decoding reads into a reused TargetData so neither
+ * allocates.  Change VERSION whenever the layout of the header or any target data changes.
+ *
+ * If the RPi's Main.coalesceMessagesMillis is set its UdpSend sends a bundle instead, every that many
+ * milliseconds, of the newest message of every camera:
+ *
+ *  offset  size  field
+ *     0     2    magic 0x4237
+ *     2     1    version
+ *     3     1    stream id BUNDLE '*'
+ *     4     4    sequence number of the bundle, starting at 1
+ *     8     8    send time - microseconds, RPi WPIUtilJNI.now() time base
+ *    16     1    number of messages
+ *    17          the messages, each:
+ *                   4    age - microseconds from when the camera's message was made to the send time
+ *                   2    length of the message
+ *                        the message, binary with its own stream id and sequence number or text
+ *
+ * The same message is in each bundle, older each time, until the camera makes a newer one.  A
+ * camera that hasn't made a message for a second is left out.
+ *
+ * Text (JSON) messages are still sent instead if the RPi's Main.sendBinaryTargetData is false, for
+ * watching them with receiveUDP.ps1; VisionClient ignores them.
+ *
+ * The target data fields of each camera are written by the RPi's TargetDataB and TargetDataE and
+ * read by this module's - change both and VERSION together.  TargetMessageBenchmark on the RPi
+ * checks they still agree.
+ */
+public final class TargetMessage
+{
+    public static final short MAGIC = 0x4237;
+    public static final byte VERSION = 2;
+    public static final int HEADER_LENGTH = 40;
+
+    // this run of the program; only the RPi's is sent - its sequence numbers start again when it restarts
+    public static final int RUN = new Random().nextInt();
+
+    public static final byte BUNDLE = '*';
+    public static final int BUNDLE_HEADER_LENGTH = 17;
+    public static final int BUNDLE_ENTRY_HEADER_LENGTH = 6;
+    private static final int BUNDLE_COUNT = 16; // offset of the number of messages
+
+    private TargetMessage()
+    {
+    }
+
+    /**
+     * Make the message of target data.
+     *
+     * @param buffer where to write the message; cleared first and flipped after so its position is 0 and limit is the length
+     * @param stream the camera's stream id such as 'B'
+     * @param sequence message number in the stream
+     * @param targetData the target data
+     */
+    public static <T extends TargetData<T>> void encode(ByteBuffer buffer, byte stream, int sequence, T targetData)
+    {
+        buffer.clear();
+        buffer.putShort(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(stream);
+        buffer.putInt(sequence);
+        buffer.putInt(RUN);
+        buffer.putInt(targetData.getFrameNumber());
+        buffer.putLong(targetData.getCaptureTime());
+        buffer.putLong(targetData.getProcessedTime());
+        buffer.putLong(targetData.getSendTime());
+        targetData.encodeFields(buffer);
+        buffer.flip();
+    }
+
+    /**
+     * @param buffer a received message from its position to its limit
+     * @return true if it's a binary message of a version this program knows; false if it's text or unknown
+     */
+    public static boolean isTargetMessage(ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        return buffer.remaining() >= HEADER_LENGTH && buffer.getShort(start) == MAGIC && buffer.get(start + 2) == VERSION
+            && buffer.get(start + 3) != BUNDLE;
+    }
+
+    /**
+     * Start a bundle of messages.
+     *
+     * @param buffer where to write the bundle; cleared first
+     * @param sequence bundle number
+     * @param sendTime microseconds, WPIUtilJNI.now() time base
+     */
+    public static void beginBundle(ByteBuffer buffer, int sequence, long sendTime)
+    {
+        buffer.clear();
+        buffer.putShort(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(BUNDLE);
+        buffer.putInt(sequence);
+        buffer.putLong(sendTime);
+        buffer.put((byte) 0);
+    }
+
+    /**
+     * Add a message to a bundle if there's room.
+     *
+     * @param buffer the bundle started by beginBundle()
+     * @param message the message from its position to its limit; its position is moved to its limit
+     * @param age microseconds since the message was made
+     * @return true if added; false if the bundle is full
+     */
+    public static boolean addToBundle(ByteBuffer buffer, ByteBuffer message, int age)
+    {
+        if (buffer.remaining() < BUNDLE_ENTRY_HEADER_LENGTH + message.remaining() || buffer.get(BUNDLE_COUNT) == -1)
+        {
+            return false;
+        }
+        buffer.putInt(age);
+        buffer.putShort((short) message.remaining());
+        buffer.put(message);
+        buffer.put(BUNDLE_COUNT, (byte) (buffer.get(BUNDLE_COUNT) + 1));
+        return true;
+    }
+
+    /**
+     * Finish a bundle.
+     *
+     * @param buffer the bundle; flipped so its position is 0 and limit is the length
+     * @return the number of messages in the bundle
+     */
+    public static int endBundle(ByteBuffer buffer)
+    {
+        buffer.flip();
+        return getBundleCount(buffer);
+    }
+
+    /**
+     * @param buffer a received message from its position to its limit
+     * @return true if it's a bundle of a version this program knows
+     */
+    public static boolean isBundle(ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        return buffer.remaining() >= BUNDLE_HEADER_LENGTH && buffer.getShort(start) == MAGIC && buffer.get(start + 2) == VERSION
+            && buffer.get(start + 3) == BUNDLE;
+    }
+
+    /**
+     * @param buffer a bundle
+     * @return the number of messages in the bundle
+     */
+    public static int getBundleCount(ByteBuffer buffer)
+    {
+        return buffer.get(buffer.position() + BUNDLE_COUNT) & 0xFF;
+    }
+
+    /**
+     * @param buffer a bundle
+     * @param entry offset in the buffer of a message's entry; the first is position + BUNDLE_HEADER_LENGTH
+     *     and each next one is after the message
+     * @return microseconds from when the message was made to when the bundle was sent
+     */
+    public static int getEntryAge(ByteBuffer buffer, int entry)
+    {
+        return buffer.getInt(entry);
+    }
+
+    /**
+     * @param buffer a bundle
+     * @param entry offset in the buffer of a message's entry
+     * @return length of the message, which starts at entry + BUNDLE_ENTRY_HEADER_LENGTH
+     */
+    public static int getEntryLength(ByteBuffer buffer, int entry)
+    {
+        return buffer.getShort(entry + 4) & 0xFFFF;
+    }
+
+    /**
+     * @param buffer a binary message
+     * @return the stream id such as 'B'
+     */
+    public static byte getStream(ByteBuffer buffer)
+    {
+        return buffer.get(buffer.position() + 3);
+    }
+
+    /**
+     * @param buffer a binary message
+     * @return the sequence number of the message in its stream
+     */
+    public static int getSequence(ByteBuffer buffer)
+    {
+        return buffer.getInt(buffer.position() + 4);
+    }
+
+    /**
+     * @param buffer a binary message
+     * @return the run id of the program that sent the message - changes if it restarted
+     */
+    public static int getRun(ByteBuffer buffer)
+    {
+        return buffer.getInt(buffer.position() + 8);
+    }
+
+    /**
+     * Read the target data from a binary message.  Doesn't allocate.
+     *
+     * @param buffer a binary message from its position to its limit; its position is moved past the message
+     * @param targetData where to put the target data; partly changed if the message is bad
+     * @return true if the message was read; false if it isn't a binary message of this version or it's too short
+     */
+    public static <T extends TargetData<T>> boolean decode(ByteBuffer buffer, T targetData)
+    {
+        if (!isTargetMessage(buffer))
+        {
+            return false;
+        }
+
+        try
+        {
+            buffer.position(buffer.position() + 12); // magic, version, stream, sequence and run
+            targetData.setFrameNumber(buffer.getInt());
+            targetData.setCaptureTime(buffer.getLong());
+            targetData.setProcessedTime(buffer.getLong());
+            targetData.setSendTime(buffer.getLong());
+            targetData.decodeFields(buffer);
+            return true;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+}
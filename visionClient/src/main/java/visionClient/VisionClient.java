@@ -0,0 +1,238 @@
+package visionClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Receives the target data of the RPi vision on the roboRIO.
+ *
+ * A background thread receives the UDP packets on a DatagramChannel into one direct buffer and
+ * decodes each message in place into its stream's (camera's) preallocated target data.  The robot
+ * loop polls each stream for the newest target data without a lock and without allocating, so
+ * receiving never adds garbage collection pauses to the loop:
+ *
+ * <pre>
+ *    private final VisionClient vision = new VisionClient(5800); // port the RPi sends to
+ *    private final TargetDataB turretData = new TargetDataB();
+ *
+ *    public void robotInit()
+ *    {
+ *        vision.start();
+ *    }
+ *
+ *    public void robotPeriodic()
+ *    {
+ *        if (vision.turret.poll(turretData)) // new target data
+ *        {
+ *            if (turretData.isTargetFound()) {double a = turretData.getAngleToTurn(); ...}
+ *        }
+ *        else if (vision.turret.getMillisSinceReceived() > 100) // stale; RPi may be down
+ *        {
+ *            ...
+ *        }
+ *    }
+ * </pre>
+ *
+ * Each stream counts lost, late and duplicate messages and its rate, latency and jitter; see
+ * ReceivedStream.  Print vision (toString()) to see them.
+ *
+ * Only binary messages and bundles are received - the RPi's default (Main.sendBinaryTargetData).
+ */
+public class VisionClient implements Runnable
+{
+    private static final String pId = new String("[VisionClient]");
+
+    public static final int MAXIMUM_MESSAGE_LENGTH = 1024; // at least the RPi's Main.MAXIMUM_MESSAGE_LENGTH
+    private static final long SILENCE_INTERVAL = 500; // milliseconds without a message in case RPi is dead
+    private static final Consumer<SelectionKey> NOTHING = key -> {}; // the only key is the channel's
+
+    // the newest target data of each stream; poll every robot loop
+    public final ReceivedStream<TargetDataB> turret = new ReceivedStream<>("Turret", 'B', new TargetDataB(), new TargetDataB());
+    public final ReceivedStream<TargetDataE> intake = new ReceivedStream<>("Intake", 'E', new TargetDataE(), new TargetDataE());
+    private final ReceivedStream<?>[] streams = {turret, intake};
+
+    private final int port;
+    private volatile Thread receiver = null;
+
+    // the receive thread's own storage; messages are read in place
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(MAXIMUM_MESSAGE_LENGTH);
+    private boolean isSilent = true; // only used by the receive thread
+
+    // racy counts but good enough for statistics
+    private volatile long packets = 0;
+    private volatile long bundles = 0;
+    private volatile long badPackets = 0; // bad bundles and unknown messages
+
+    /**
+     * @param port port the RPi sends to - 5800
+     */
+    public VisionClient(int port)
+    {
+        this.port = port;
+    }
+
+    /**
+     * Start the receive thread.  A daemon so it never keeps the robot program running.
+     */
+    public synchronized void start()
+    {
+        if (receiver != null)
+        {
+            return;
+        }
+        receiver = new Thread(this, "4237VisionClient");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Stop the receive thread and close its channel.
+     */
+    public synchronized void stop()
+    {
+        if (receiver != null)
+        {
+            receiver.interrupt(); // wakes the selector; the thread then closes its channel
+            receiver = null;
+        }
+    }
+
+    public void run()
+    {
+        System.out.println(pId + " Receiving UDP messages on port " + port);
+
+        try (DatagramChannel channel = DatagramChannel.open(); Selector selector = Selector.open())
+        {
+            // Setting the port address to reuse can sometimes help if the robot program is restarted
+            // quickly and the operating system hasn't freed the port yet.
+            // Example: channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false); // waits in the selector instead so it can time out
+            channel.register(selector, SelectionKey.OP_READ);
+
+            while (!Thread.currentThread().isInterrupted())
+            {
+                // the action form of select() doesn't add to the selected-key set so it doesn't allocate
+                if (selector.select(NOTHING, SILENCE_INTERVAL) == 0)
+                {
+                    if (!isSilent)
+                    {
+                        isSilent = true;
+                        System.out.println(pId + " hasn't heard from any vision pipeline for awhile; " + this);
+                    }
+                    continue;
+                }
+                if (isSilent)
+                {
+                    isSilent = false;
+                    System.out.println(pId + " hearing from the vision pipelines");
+                }
+
+                // receive every packet waiting
+                while (true)
+                {
+                    packet.clear();
+                    if (channel.receive(packet) == null)
+                    {
+                        break;
+                    }
+                    packet.flip();
+                    receivePacket(System.nanoTime());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // such as the port in use or the channel closed by stop()
+            if (!Thread.currentThread().isInterrupted())
+            {
+                e.printStackTrace();
+            }
+        }
+        System.out.println(pId + " Stopped");
+    }
+
+    /**
+     * Receive one packet - a message or a bundle of them.
+     *
+     * @param receiveTime System.nanoTime() the packet was received
+     */
+    private void receivePacket(long receiveTime)
+    {
+        packets++;
+        int packetLength = packet.limit();
+        if (!TargetMessage.isBundle(packet))
+        {
+            receive(0, packetLength, receiveTime, 0, false);
+            return;
+        }
+
+        // the newest message of each camera together - receive each as if it came alone
+        bundles++;
+        int count = TargetMessage.getBundleCount(packet);
+        int entry = TargetMessage.BUNDLE_HEADER_LENGTH;
+        for (int idx = 0; idx < count; idx++)
+        {
+            if (entry + TargetMessage.BUNDLE_ENTRY_HEADER_LENGTH > packetLength)
+            {
+                badPackets++;
+                return;
+            }
+            int age = TargetMessage.getEntryAge(packet, entry); // microseconds old when sent
+            int start = entry + TargetMessage.BUNDLE_ENTRY_HEADER_LENGTH;
+            int length = TargetMessage.getEntryLength(packet, entry);
+            if (start + length > packetLength)
+            {
+                badPackets++;
+                return;
+            }
+            receive(start, length, receiveTime, age, true);
+            entry = start + length;
+            packet.limit(packetLength);
+        }
+    }
+
+    /**
+     * Receive one message into its stream.
+     *
+     * @param offset where the message starts in the packet
+     * @param length length of the message
+     * @param receiveTime System.nanoTime() the packet was received
+     * @param bundleAge microseconds the message waited for its bundle; 0 if not in one
+     * @param isInBundle if the message came in a bundle
+     */
+    private void receive(int offset, int length, long receiveTime, int bundleAge, boolean isInBundle)
+    {
+        packet.limit(offset + length).position(offset);
+        if (TargetMessage.isTargetMessage(packet))
+        {
+            byte id = TargetMessage.getStream(packet);
+            for (ReceivedStream<?> stream : streams)
+            {
+                if (stream.getId() == id)
+                {
+                    stream.receive(packet, receiveTime, bundleAge, isInBundle);
+                    return;
+                }
+            }
+        }
+        badPackets++; // unknown stream, text message or another version
+    }
+
+    public String toString()
+    {
+        StringBuilder statistics = new StringBuilder(
+            String.format("packets %d, bundles %d, bad %d", packets, bundles, badPackets));
+        for (ReceivedStream<?> stream : streams)
+        {
+            statistics.append("; ").append(stream);
+        }
+        return statistics.toString();
+    }
+}